@@ -22,17 +22,26 @@ import java.util.Arrays;
 import java.util.HashMap;
 
 public class ByteBuffer {
+    /**
+     * Receives the ranges of bytes that are written to a buffer.
+     */
+    public interface WriteListener {
+        public void written(int pos, int len);
+    }
+    
     protected byte[] buffer;
     protected int position;
     protected ByteOrder endianness;
     protected HashMap<String, Integer> marks;
-    
-    private static final Charset CHARSET = Charset.forName("SJIS");
+    protected WriteListener listener;
+    protected TextCodec codec;
+    protected final StringBuilder text = new StringBuilder();
     
     public ByteBuffer() {
         buffer = new byte[0];
         endianness = ByteOrder.LITTLE_ENDIAN;
         marks = new HashMap();
+        codec = TextCodec.DEFAULT;
     }
     
     public ByteBuffer(int length) {
@@ -101,6 +110,41 @@ public class ByteBuffer {
         buffer = bytes;
         position = 0;
         marks.clear();
+        fireWritten(0, bytes.length);
+    }
+    
+    /**
+     * Sets the listener that is told about every write to this buffer.
+     * @param l the listener or {@code null}
+     */
+    public void setWriteListener(WriteListener l) {
+        listener = l;
+    }
+    
+    /**
+     * Tells the write listener that bytes were written.
+     * @param pos the position of the first written byte
+     * @param len the number of written bytes
+     */
+    protected void fireWritten(int pos, int len) {
+        if (listener != null && len > 0)
+            listener.written(pos, len);
+    }
+    
+    /**
+     * Returns the codec used by the String methods without a charset.
+     * @return the text codec.
+     */
+    public TextCodec getTextCodec() {
+        return codec;
+    }
+    
+    /**
+     * Sets the codec used by the String methods without a charset.
+     * @param c the text codec
+     */
+    public void setTextCodec(TextCodec c) {
+        codec = c;
     }
     
     /**
@@ -257,6 +301,7 @@ public class ByteBuffer {
         buffer = new byte[size];
         position = 0;
         marks.clear();
+        fireWritten(0, size);
     }
     
     /**
@@ -278,6 +323,7 @@ public class ByteBuffer {
         if (end < start)
             throw new IllegalArgumentException("end index > start index");
         
+        fireWritten(start, end - start + 1);
         for ( ; start <= end ; start++)
             buffer[start] = (byte) 0x0;
     }
@@ -569,7 +615,21 @@ public class ByteBuffer {
      * @return the String.
      */
     public String readString(int len) {
-        return readString(CHARSET, len);
+        len = Math.max(Math.min(len, remaining()), 0);
+        String ret = decodeText(position, len);
+        position += len;
+        return ret;
+    }
+    
+    /**
+     * Decodes bytes of this buffer with the text codec, straight from the
+     * backing array.
+     * @param pos the position of the first byte
+     * @param len the maximum number of bytes
+     * @return the text.
+     */
+    protected String decodeText(int pos, int len) {
+        return codec.decode(buffer, pos, len, text);
     }
     
     /**
@@ -608,7 +668,8 @@ public class ByteBuffer {
      * @return A string.
      */
     public String readString() {
-        return readString(CHARSET);
+        int end = indexOf((byte) 0, position);
+        return readString(end >= 0 ? end - position : remaining());
     }
     
     /**
@@ -646,6 +707,7 @@ public class ByteBuffer {
     public void writeBytes(byte[] val) {
         if (position + val.length > buffer.length)
             extend(val.length);
+        fireWritten(position, val.length);
         for (byte b : val)
             buffer[position++] = b;
     }
@@ -667,6 +729,7 @@ public class ByteBuffer {
     public void writeByte(byte val) {
         if (position + 1 > buffer.length)
             extend(1);
+        fireWritten(position, 1);
         buffer[position++] = val;
     }
     
@@ -891,7 +954,10 @@ public class ByteBuffer {
      * @return the offset to this String.
      */
     public int writeString(String val) {
-        return writeString(val, CHARSET);
+        int pos = position;
+        writeBytes(codec.encode(val));
+        writeByte((byte) 0x0);
+        return pos;
     }
     
     /**
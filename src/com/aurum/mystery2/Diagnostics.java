@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2;
+
+import java.awt.EventQueue;
+import java.awt.Window;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects timings of editor interactions and ROM IO, and watches the event
+ * dispatch thread for stalls. Results are kept in memory for the diagnostics
+ * window and appended to a rolling log file.
+ */
+public class Diagnostics {
+    public static class Timing {
+        public final String name;
+        public long count, totalNanos, maxNanos, lastNanos;
+        
+        private Timing(String name) {
+            this.name = name;
+        }
+        
+        public double getAverageMillis() {
+            return count > 0 ? totalNanos / (double) count / 1e6 : 0;
+        }
+    }
+    
+    public static class Stall {
+        public final long time, durationMillis;
+        public final StackTraceElement[] stack;
+        
+        private Stall(long time, long durationMillis, StackTraceElement[] stack) {
+            this.time = time;
+            this.durationMillis = durationMillis;
+            this.stack = stack;
+        }
+    }
+    
+    // Static fields
+    public static File logFile = new File(System.getProperty("user.home"), ".pmde/diagnostics.log");
+    public static long logLimit = 1 << 20;
+    public static final int MAX_PENDING = 1024;
+    
+    private static final Map<String, Timing> timings = new LinkedHashMap();
+    private static final List<Stall> stalls = new ArrayList();
+    private static final int MAX_STALLS = 100;
+    private static volatile long dropped;
+    private static final ThreadPoolExecutor logger = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue(MAX_PENDING), (Runnable r) -> {
+        Thread t = new Thread(r, "Diagnostics logger");
+        t.setDaemon(true);
+        return t;
+    }, (Runnable r, ThreadPoolExecutor executor) -> {
+        synchronized (Diagnostics.class) {
+            dropped++;
+        }
+    });
+    
+    // Only used by the logger thread
+    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private static Writer out;
+    private static File outFile;
+    private static long outLength;
+    
+    private static volatile Thread watchdog;
+    private static volatile Thread dispatchThread;
+    private static volatile long heartbeat;
+    
+    /**
+     * Starts a measurement.
+     * @return the start time to pass to {@link #end(String, long)}.
+     */
+    public static long begin() {
+        return System.nanoTime();
+    }
+    
+    /**
+     * Ends a measurement and records its duration under {@code name}.
+     * @param name the name of the measured operation
+     * @param start the value returned by {@link #begin()}
+     */
+    public static void end(String name, long start) {
+        long duration = System.nanoTime() - start;
+        
+        synchronized (timings) {
+            Timing timing = timings.get(name);
+            if (timing == null)
+                timings.put(name, timing = new Timing(name));
+            timing.count++;
+            timing.totalNanos += duration;
+            timing.lastNanos = duration;
+            timing.maxNanos = Math.max(timing.maxNanos, duration);
+        }
+        
+        log(String.format("%s %.3f ms", name, duration / 1e6));
+    }
+    
+    /**
+     * Returns a snapshot of all recorded timings.
+     * @return the timings.
+     */
+    public static List<Timing> getTimings() {
+        List<Timing> ret = new ArrayList();
+        synchronized (timings) {
+            for (Timing timing : timings.values()) {
+                Timing copy = new Timing(timing.name);
+                copy.count = timing.count;
+                copy.totalNanos = timing.totalNanos;
+                copy.maxNanos = timing.maxNanos;
+                copy.lastNanos = timing.lastNanos;
+                ret.add(copy);
+            }
+        }
+        return ret;
+    }
+    
+    /**
+     * Returns a snapshot of the most recent event dispatch thread stalls.
+     * @return the stalls, oldest first.
+     */
+    public static List<Stall> getStalls() {
+        synchronized (stalls) {
+            return new ArrayList(stalls);
+        }
+    }
+    
+    /**
+     * Returns the number of log lines that were dropped because more than
+     * {@link #MAX_PENDING} lines were waiting to be written.
+     * @return the number of dropped lines.
+     */
+    public static long getDropped() {
+        return dropped;
+    }
+    
+    /**
+     * Clears all recorded timings and stalls.
+     */
+    public static void reset() {
+        synchronized (timings) {
+            timings.clear();
+        }
+        synchronized (stalls) {
+            stalls.clear();
+        }
+        synchronized (Diagnostics.class) {
+            dropped = 0;
+        }
+    }
+    
+    /**
+     * Starts a daemon thread that records every stall of the event dispatch
+     * thread that takes longer than {@code threshold} milliseconds, together
+     * with the stack of the dispatch thread at that moment.
+     * @param threshold the stall threshold in milliseconds
+     */
+    public static synchronized void startWatchdog(long threshold) {
+        if (watchdog != null)
+            return;
+        
+        watchdog = new Thread(() -> {
+            long interval = Math.max(threshold / 4, 10);
+            
+            while (true) {
+                // Posting events without any windows would keep AWT from shutting down
+                if (!hasWindows()) {
+                    try {
+                        Thread.sleep(interval);
+                        continue;
+                    }
+                    catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                
+                long posted = System.nanoTime();
+                heartbeat = 0;
+                EventQueue.invokeLater(() -> {
+                    dispatchThread = Thread.currentThread();
+                    heartbeat = System.nanoTime();
+                });
+                
+                boolean reported = false;
+                try {
+                    do {
+                        Thread.sleep(interval);
+                        long waited = (System.nanoTime() - posted) / 1000000;
+                        
+                        // Only report each stall once, with the stack at the time it crossed the threshold
+                        if (heartbeat == 0 && waited >= threshold && !reported && dispatchThread != null) {
+                            reported = true;
+                            recordStall(waited, dispatchThread.getStackTrace());
+                        }
+                    } while (heartbeat == 0);
+                    
+                    Thread.sleep(interval);
+                }
+                catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }, "EDT watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+    
+    private static boolean hasWindows() {
+        for (Window window : Window.getWindows()) {
+            if (window.isDisplayable())
+                return true;
+        }
+        return false;
+    }
+    
+    private static void recordStall(long duration, StackTraceElement[] stack) {
+        Stall stall = new Stall(System.currentTimeMillis(), duration, stack);
+        synchronized (stalls) {
+            if (stalls.size() >= MAX_STALLS)
+                stalls.remove(0);
+            stalls.add(stall);
+        }
+        
+        StringBuilder sb = new StringBuilder("EDT stall >= ").append(duration).append(" ms");
+        for (StackTraceElement element : stack)
+            sb.append("\n\tat ").append(element);
+        log(sb.toString());
+    }
+    
+    private static void log(String message) {
+        final long time = System.currentTimeMillis();
+        
+        // File IO never happens on the calling thread, and lines are dropped while too many are waiting
+        logger.execute(() -> {
+            try {
+                write(dateFormat.format(new Date(time)) + ' ' + message);
+            }
+            catch (IOException ex) {
+                System.err.println(ex);
+                closeLog();
+            }
+        });
+    }
+    
+    private static void write(String line) throws IOException {
+        // The file stays open and is only flushed once no more lines are waiting
+        if (out != null && (!logFile.equals(outFile) || outLength > logLimit))
+            closeLog();
+        if (out == null) {
+            if (logFile.length() > logLimit) {
+                File old = new File(logFile.getPath() + ".1");
+                old.delete();
+                logFile.renameTo(old);
+            }
+            logFile.getParentFile().mkdirs();
+            outFile = logFile;
+            outLength = logFile.length();
+            out = new BufferedWriter(new FileWriter(logFile, true));
+        }
+        
+        out.write(line);
+        out.write(System.lineSeparator());
+        outLength += line.length() + System.lineSeparator().length();
+        if (logger.getQueue().isEmpty())
+            out.flush();
+    }
+    
+    private static void closeLog() {
+        if (out == null)
+            return;
+        try {
+            out.close();
+        }
+        catch (IOException ex) {
+            System.err.println(ex);
+        }
+        out = null;
+    }
+}
\ No newline at end of file
@@ -18,17 +18,32 @@
 package com.aurum.mystery2;
 
 import com.aurum.mystery2.exception.UncaughtExceptionHandler;
+import java.awt.Font;
 import java.awt.Image;
 import java.awt.Toolkit;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.prefs.Preferences;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.SwingWorker;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import com.aurum.mystery2.game.Item;
+import com.aurum.mystery2.game.Move;
+import com.aurum.mystery2.game.PointerIndex;
+import com.aurum.mystery2.game.Pokemon;
 import com.aurum.mystery2.game.RomFile;
+import com.aurum.mystery2.patch.PatchApplier;
+import com.aurum.mystery2.patch.PatchWriter;
 import com.aurum.mystery2.swing.*;
 
 public class Main extends javax.swing.JFrame {
@@ -49,6 +64,7 @@ public class Main extends javax.swing.JFrame {
         }
         
         Thread.setDefaultUncaughtExceptionHandler(new UncaughtExceptionHandler());
+        Diagnostics.startWatchdog(200);
         
         new Main().setVisible(true);
     }
@@ -76,12 +92,35 @@ public class Main extends javax.swing.JFrame {
         jMenuBar1 = new javax.swing.JMenuBar();
         mnuFile = new javax.swing.JMenu();
         mnuOpen = new javax.swing.JMenuItem();
+        mnuOpenPatched = new javax.swing.JMenuItem();
         mnuSave = new javax.swing.JMenuItem();
         mnuSaveAs = new javax.swing.JMenuItem();
+        mnuExportPatch = new javax.swing.JMenuItem();
+        mnuExportText = new javax.swing.JMenuItem();
+        mnuImportText = new javax.swing.JMenuItem();
         sep1 = new javax.swing.JPopupMenu.Separator();
         mnuClose = new javax.swing.JMenuItem();
         mnuTools = new javax.swing.JMenu();
         mnuCalcRecruitment = new javax.swing.JMenuItem();
+        sepTablePokemon = new javax.swing.JPopupMenu.Separator();
+        mnuTablePokemon = new javax.swing.JMenuItem();
+        mnuTableMoves = new javax.swing.JMenuItem();
+        mnuTableItems = new javax.swing.JMenuItem();
+        sepDiagnostics = new javax.swing.JPopupMenu.Separator();
+        mnuDiagnostics = new javax.swing.JMenuItem();
+        sepSpawnSimulator = new javax.swing.JPopupMenu.Separator();
+        mnuSpawnSimulator = new javax.swing.JMenuItem();
+        mnuRecruitment = new javax.swing.JMenuItem();
+        mnuDamageMatrix = new javax.swing.JMenuItem();
+        sepRandomizer = new javax.swing.JPopupMenu.Separator();
+        mnuRandomizer = new javax.swing.JMenuItem();
+        sepApplyPatches = new javax.swing.JPopupMenu.Separator();
+        mnuApplyPatches = new javax.swing.JMenuItem();
+        sepFindReferences = new javax.swing.JPopupMenu.Separator();
+        mnuFindReferences = new javax.swing.JMenuItem();
+        mnuDetectOffsets = new javax.swing.JMenuItem();
+        mnuSearch = new javax.swing.JMenuItem();
+        mnuHexViewer = new javax.swing.JMenuItem();
         mnuHelp = new javax.swing.JMenu();
         mnuAbout = new javax.swing.JMenuItem();
 
@@ -207,6 +246,14 @@ public class Main extends javax.swing.JFrame {
         });
         mnuFile.add(mnuOpen);
 
+        mnuOpenPatched.setText("Open with patches...");
+        mnuOpenPatched.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuOpenPatchedActionPerformed(evt);
+            }
+        });
+        mnuFile.add(mnuOpenPatched);
+
         mnuSave.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_S, java.awt.event.InputEvent.CTRL_MASK));
         mnuSave.setIcon(new javax.swing.ImageIcon(getClass().getResource("/res/tl_save.png"))); // NOI18N
         mnuSave.setMnemonic('S');
@@ -228,6 +275,30 @@ public class Main extends javax.swing.JFrame {
             }
         });
         mnuFile.add(mnuSaveAs);
+
+        mnuExportPatch.setText("Export patch...");
+        mnuExportPatch.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuExportPatchActionPerformed(evt);
+            }
+        });
+        mnuFile.add(mnuExportPatch);
+
+        mnuExportText.setText("Export text...");
+        mnuExportText.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuExportTextActionPerformed(evt);
+            }
+        });
+        mnuFile.add(mnuExportText);
+
+        mnuImportText.setText("Import text...");
+        mnuImportText.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuImportTextActionPerformed(evt);
+            }
+        });
+        mnuFile.add(mnuImportText);
         mnuFile.add(sep1);
 
         mnuClose.setIcon(new javax.swing.ImageIcon(getClass().getResource("/res/tl_cancel.png"))); // NOI18N
@@ -253,6 +324,122 @@ public class Main extends javax.swing.JFrame {
         });
         mnuTools.add(mnuCalcRecruitment);
 
+        mnuTools.add(sepTablePokemon);
+
+        mnuTablePokemon.setText("Pokémon table");
+        mnuTablePokemon.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuTablePokemonActionPerformed(evt);
+            }
+        });
+        mnuTools.add(mnuTablePokemon);
+
+        mnuTableMoves.setText("Move table");
+        mnuTableMoves.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuTableMovesActionPerformed(evt);
+            }
+        });
+        mnuTools.add(mnuTableMoves);
+
+        mnuTableItems.setText("Item table");
+        mnuTableItems.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuTableItemsActionPerformed(evt);
+            }
+        });
+        mnuTools.add(mnuTableItems);
+
+        mnuTools.add(sepDiagnostics);
+
+        mnuDiagnostics.setText("Diagnostics");
+        mnuDiagnostics.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuDiagnosticsActionPerformed(evt);
+            }
+        });
+        mnuTools.add(mnuDiagnostics);
+
+        mnuTools.add(sepSpawnSimulator);
+
+        mnuSpawnSimulator.setText("Spawn simulator");
+        mnuSpawnSimulator.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuSpawnSimulatorActionPerformed(evt);
+            }
+        });
+        mnuTools.add(mnuSpawnSimulator);
+
+        mnuRecruitment.setText("Recruitment table");
+        mnuRecruitment.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuRecruitmentActionPerformed(evt);
+            }
+        });
+        mnuTools.add(mnuRecruitment);
+
+        mnuDamageMatrix.setText("Damage matrix");
+        mnuDamageMatrix.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuDamageMatrixActionPerformed(evt);
+            }
+        });
+        mnuTools.add(mnuDamageMatrix);
+
+        mnuTools.add(sepRandomizer);
+
+        mnuRandomizer.setText("Randomizer");
+        mnuRandomizer.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuRandomizerActionPerformed(evt);
+            }
+        });
+        mnuTools.add(mnuRandomizer);
+
+        mnuTools.add(sepApplyPatches);
+
+        mnuApplyPatches.setText("Apply patches in batch...");
+        mnuApplyPatches.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuApplyPatchesActionPerformed(evt);
+            }
+        });
+        mnuTools.add(mnuApplyPatches);
+
+        mnuTools.add(sepFindReferences);
+
+        mnuFindReferences.setText("Find references...");
+        mnuFindReferences.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuFindReferencesActionPerformed(evt);
+            }
+        });
+        mnuTools.add(mnuFindReferences);
+
+        mnuDetectOffsets.setText("Detect offsets...");
+        mnuDetectOffsets.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuDetectOffsetsActionPerformed(evt);
+            }
+        });
+        mnuTools.add(mnuDetectOffsets);
+
+        mnuSearch.setText("Search ROM...");
+        mnuSearch.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuSearchActionPerformed(evt);
+            }
+        });
+        mnuTools.add(mnuSearch);
+
+        mnuHexViewer.setText("Hex viewer...");
+        mnuHexViewer.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                mnuHexViewerActionPerformed(evt);
+            }
+        });
+        mnuTools.add(mnuHexViewer);
+
         jMenuBar1.add(mnuTools);
 
         mnuHelp.setMnemonic('H');
@@ -351,36 +538,72 @@ public class Main extends javax.swing.JFrame {
         Preferences.userRoot().put("mystery_lastDir", file.getPath());
         
         try {
+            AbstractEditor.closeAll();
             RomFile.current = new RomFile(file);
             RomFile.current.load();
-            
-            btnStarterEditor.setEnabled(RomFile.current.isLoaded());
-            btnDungeonEditor.setEnabled(RomFile.current.isLoaded());
-            btnPokemonEditor.setEnabled(RomFile.current.isLoaded());
-            btnItemEditor.setEnabled(RomFile.current.isLoaded());
-            btnMoveEditor.setEnabled(RomFile.current.isLoaded());
-            btnMapEditor.setEnabled(RomFile.current.isLoaded());
-            btnAreaEditor.setEnabled(RomFile.current.isLoaded());
-            btnExclusivePokemonEditor.setEnabled(RomFile.current.isLoaded());
-            btnMoneyEditor.setEnabled(RomFile.current.isLoaded());
-            
-            lblGameTitle.setText(RomFile.current.getRomDescription());
-            lblGameInternal.setText(RomFile.current.toString());
+            updateGameInfo();
         }
         catch (IOException ex) {
             System.err.print(ex);
         }
     }//GEN-LAST:event_mnuOpenActionPerformed
 
+    private void mnuOpenPatchedActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuOpenPatchedActionPerformed
+        final JFileChooser fc = new JFileChooser() {{
+            setDialogTitle("Open original ROM file");
+            setFileFilter(new FileNameExtensionFilter("GBA files (*.gba)", ".gba", "gba"));
+            addChoosableFileFilter(new FileNameExtensionFilter("ROM files (*.rom)", ".rom", "rom"));
+        }};
+        
+        String lastdir = Preferences.userRoot().get("mystery_lastDir", null);
+        if (lastdir != null)
+            fc.setSelectedFile(new File(lastdir));
+        if (fc.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        File source = fc.getSelectedFile();
+        
+        // Patches are applied in the order of their file names
+        final JFileChooser fcPatches = new JFileChooser(source.getParentFile()) {{
+            setDialogTitle("Select patches");
+            setMultiSelectionEnabled(true);
+            setFileFilter(new FileNameExtensionFilter("Patches (*.ips, *.ups, *.bps)", "ips", "ups", "bps"));
+        }};
+        if (fcPatches.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        List<File> patches = new ArrayList(Arrays.asList(fcPatches.getSelectedFiles()));
+        patches.sort(Comparator.comparing(File::getName));
+        
+        final JFileChooser fcTarget = new JFileChooser(source.getParentFile()) {{
+            setDialogTitle("Save patched ROM file as");
+            setFileFilter(new FileNameExtensionFilter("GBA files (*.gba)", ".gba", "gba"));
+        }};
+        if (fcTarget.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        
+        Preferences.userRoot().put("mystery_lastDir", fcTarget.getSelectedFile().getPath());
+        
+        try {
+            AbstractEditor.closeAll();
+            RomFile.current = new RomFile(fcTarget.getSelectedFile());
+            RomFile.current.load(source, patches);
+            RomFile.current.save();
+            updateGameInfo();
+        }
+        catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, ex.getMessage(), "Open with patches", JOptionPane.ERROR_MESSAGE);
+        }
+    }//GEN-LAST:event_mnuOpenPatchedActionPerformed
+
     private void mnuSaveActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuSaveActionPerformed
         if (RomFile.current == null) return;
         if (!RomFile.current.isLoaded()) return;
         
         try {
             RomFile.current.save();
+            HexFrame.refresh();
         }
         catch (IOException ex) {
-            System.err.print(ex);
+            JOptionPane.showMessageDialog(this, ex.getMessage(), "Save", JOptionPane.ERROR_MESSAGE);
         }
     }//GEN-LAST:event_mnuSaveActionPerformed
 
@@ -406,12 +629,100 @@ public class Main extends javax.swing.JFrame {
         
         try {
             RomFile.current.save();
+            HexFrame.refresh();
         }
         catch (IOException ex) {
-            System.err.print(ex);
+            JOptionPane.showMessageDialog(this, ex.getMessage(), "Save as", JOptionPane.ERROR_MESSAGE);
         }
     }//GEN-LAST:event_mnuSaveAsActionPerformed
 
+    private void mnuExportPatchActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuExportPatchActionPerformed
+        if (RomFile.current == null) return;
+        if (!RomFile.current.isLoaded()) return;
+        
+        // The patch is made against a clean ROM, which is the opened file unless it was saved over
+        final JFileChooser fcOriginal = new JFileChooser() {{
+            setDialogTitle("Select original ROM file");
+            setFileFilter(new FileNameExtensionFilter("GBA files (*.gba)", ".gba", "gba"));
+            addChoosableFileFilter(new FileNameExtensionFilter("ROM files (*.rom)", ".rom", "rom"));
+        }};
+        fcOriginal.setSelectedFile(RomFile.current.getFile());
+        if (fcOriginal.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        
+        final FileNameExtensionFilter bps = new FileNameExtensionFilter("BPS patches (*.bps)", "bps");
+        final FileNameExtensionFilter ups = new FileNameExtensionFilter("UPS patches (*.ups)", "ups");
+        final FileNameExtensionFilter ips = new FileNameExtensionFilter("IPS patches (*.ips)", "ips");
+        final JFileChooser fcPatch = new JFileChooser() {{
+            setDialogTitle("Export patch");
+            setAcceptAllFileFilterUsed(false);
+            addChoosableFileFilter(bps);
+            addChoosableFileFilter(ups);
+            addChoosableFileFilter(ips);
+            setFileFilter(bps);
+        }};
+        fcPatch.setCurrentDirectory(RomFile.current.getFile().getParentFile());
+        if (fcPatch.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        
+        File patch = fcPatch.getSelectedFile();
+        if (PatchWriter.Format.forFile(patch) == null)
+            patch = new File(patch.getPath() + '.' + ((FileNameExtensionFilter) fcPatch.getFileFilter()).getExtensions()[0]);
+        
+        try {
+            RomFile.current.exportPatch(fcOriginal.getSelectedFile(), patch);
+        }
+        catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, ex.getMessage(), "Export patch", JOptionPane.ERROR_MESSAGE);
+        }
+    }//GEN-LAST:event_mnuExportPatchActionPerformed
+
+    private void mnuExportTextActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuExportTextActionPerformed
+        if (RomFile.current == null || !RomFile.current.isLoaded())
+            return;
+        
+        final JFileChooser fc = new JFileChooser() {{
+            setDialogTitle("Export text");
+            setFileFilter(new FileNameExtensionFilter("Text files (*.txt)", "txt"));
+        }};
+        fc.setCurrentDirectory(RomFile.current.getFile().getParentFile());
+        if (fc.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        
+        File file = fc.getSelectedFile();
+        if (!file.getName().contains("."))
+            file = new File(file.getPath() + ".txt");
+        
+        try {
+            RomFile.current.exportText(file);
+        }
+        catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, ex.getMessage(), "Export text", JOptionPane.ERROR_MESSAGE);
+        }
+    }//GEN-LAST:event_mnuExportTextActionPerformed
+
+    private void mnuImportTextActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuImportTextActionPerformed
+        if (RomFile.current == null || !RomFile.current.isLoaded())
+            return;
+        
+        final JFileChooser fc = new JFileChooser() {{
+            setDialogTitle("Import text");
+            setFileFilter(new FileNameExtensionFilter("Text files (*.txt)", "txt"));
+        }};
+        fc.setCurrentDirectory(RomFile.current.getFile().getParentFile());
+        if (fc.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        
+        try {
+            RomFile.current.importText(fc.getSelectedFile());
+            HexFrame.refresh();
+            AbstractEditor.fireChanged();
+        }
+        catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, ex.getMessage(), "Import text", JOptionPane.ERROR_MESSAGE);
+        }
+    }//GEN-LAST:event_mnuImportTextActionPerformed
+
     private void mnuCloseActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuCloseActionPerformed
         dispose();
     }//GEN-LAST:event_mnuCloseActionPerformed
@@ -423,37 +734,37 @@ public class Main extends javax.swing.JFrame {
     private void btnStarterEditorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnStarterEditorActionPerformed
         if (RomFile.current.starters == null || RomFile.current.partners == null)
             RomFile.current.loadStarters();
-        new StarterEditor().setVisible(true);
+        AbstractEditor.track(new StarterEditor()).setVisible(true);
     }//GEN-LAST:event_btnStarterEditorActionPerformed
 
     private void btnDungeonEditorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnDungeonEditorActionPerformed
         if (RomFile.current.dungeons == null)
             RomFile.current.loadDungeons();
-        new DungeonEditor().setVisible(true);
+        AbstractEditor.open(DungeonEditor.class, DungeonEditor::new);
     }//GEN-LAST:event_btnDungeonEditorActionPerformed
 
     private void btnPokemonEditorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnPokemonEditorActionPerformed
         if (RomFile.current.pokemon == null)
             RomFile.current.loadPokemon();
-        new PokemonEditor().setVisible(true);
+        AbstractEditor.open(PokemonEditor.class, PokemonEditor::new);
     }//GEN-LAST:event_btnPokemonEditorActionPerformed
 
     private void btnMapEditorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnMapEditorActionPerformed
         if (RomFile.current.dungeons == null)
             RomFile.current.loadDungeons();
-        new MapEditor().setVisible(true);
+        AbstractEditor.open(MapEditor.class, MapEditor::new);
     }//GEN-LAST:event_btnMapEditorActionPerformed
 
     private void btnMoneyEditorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnMoneyEditorActionPerformed
         if (RomFile.current.moneyfactors == null)
             RomFile.current.loadMoneyFactors();
-        new MoneyEditor().setVisible(true);
+        AbstractEditor.track(new MoneyEditor()).setVisible(true);
     }//GEN-LAST:event_btnMoneyEditorActionPerformed
 
     private void btnItemEditorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnItemEditorActionPerformed
         if (RomFile.current.items == null)
             RomFile.current.loadItems();
-        new ItemEditor().setVisible(true);
+        AbstractEditor.open(ItemEditor.class, ItemEditor::new);
     }//GEN-LAST:event_btnItemEditorActionPerformed
 
     private void mnuCalcRecruitmentActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuCalcRecruitmentActionPerformed
@@ -463,21 +774,242 @@ public class Main extends javax.swing.JFrame {
     private void btnMoveEditorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnMoveEditorActionPerformed
         if (RomFile.current.moves == null)
             RomFile.current.loadMoves();
-        new MoveEditor().setVisible(true);
+        AbstractEditor.open(MoveEditor.class, MoveEditor::new);
     }//GEN-LAST:event_btnMoveEditorActionPerformed
 
     private void btnAreaEditorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnAreaEditorActionPerformed
         if (RomFile.current.areas == null)
             RomFile.current.loadAreas();
-        new AreaEditor().setVisible(true);
+        AbstractEditor.open(AreaEditor.class, AreaEditor::new);
     }//GEN-LAST:event_btnAreaEditorActionPerformed
 
     private void btnExclusivePokemonEditorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnExclusivePokemonEditorActionPerformed
         if (RomFile.current.exclusivePokemon == null)
             RomFile.current.loadExclusivePokemon();
-        new ExclusivePokemonEditor().setVisible(true);
+        AbstractEditor.open(ExclusivePokemonEditor.class, ExclusivePokemonEditor::new);
     }//GEN-LAST:event_btnExclusivePokemonEditorActionPerformed
 
+    private void mnuTablePokemonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuTablePokemonActionPerformed
+        if (RomFile.current == null || !RomFile.current.isLoaded())
+            return;
+        if (RomFile.current.pokemon == null)
+            RomFile.current.loadPokemon();
+        TableEditor.open("Pokémon table", () -> new RecordTableModel(Pokemon.class, RomFile.current.pokemon, Lists.pokemon));
+    }//GEN-LAST:event_mnuTablePokemonActionPerformed
+
+    private void mnuTableMovesActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuTableMovesActionPerformed
+        if (RomFile.current == null || !RomFile.current.isLoaded())
+            return;
+        if (RomFile.current.moves == null)
+            RomFile.current.loadMoves();
+        TableEditor.open("Move table", () -> new RecordTableModel(Move.class, RomFile.current.moves, Lists.moves));
+    }//GEN-LAST:event_mnuTableMovesActionPerformed
+
+    private void mnuTableItemsActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuTableItemsActionPerformed
+        if (RomFile.current == null || !RomFile.current.isLoaded())
+            return;
+        if (RomFile.current.items == null)
+            RomFile.current.loadItems();
+        TableEditor.open("Item table", () -> new RecordTableModel(Item.class, RomFile.current.items, Lists.items));
+    }//GEN-LAST:event_mnuTableItemsActionPerformed
+
+    private void mnuDiagnosticsActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuDiagnosticsActionPerformed
+        DiagnosticsFrame.open();
+    }//GEN-LAST:event_mnuDiagnosticsActionPerformed
+
+    private void mnuSpawnSimulatorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuSpawnSimulatorActionPerformed
+        if (RomFile.current == null || !RomFile.current.isLoaded())
+            return;
+        if (RomFile.current.dungeons == null)
+            RomFile.current.loadDungeons();
+        AbstractEditor.track(new SpawnSimulatorFrame()).setVisible(true);
+    }//GEN-LAST:event_mnuSpawnSimulatorActionPerformed
+
+    private void mnuRecruitmentActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuRecruitmentActionPerformed
+        if (RomFile.current == null || !RomFile.current.isLoaded())
+            return;
+        if (RomFile.current.pokemon == null)
+            RomFile.current.loadPokemon();
+        if (RomFile.current.dungeons == null)
+            RomFile.current.loadDungeons();
+        AbstractEditor.track(new RecruitmentFrame()).setVisible(true);
+    }//GEN-LAST:event_mnuRecruitmentActionPerformed
+
+    private void mnuDamageMatrixActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuDamageMatrixActionPerformed
+        if (RomFile.current == null || !RomFile.current.isLoaded())
+            return;
+        if (RomFile.current.pokemon == null)
+            RomFile.current.loadPokemon();
+        if (RomFile.current.moves == null)
+            RomFile.current.loadMoves();
+        if (RomFile.current.dungeons == null)
+            RomFile.current.loadDungeons();
+        AbstractEditor.track(new DamageMatrixFrame()).setVisible(true);
+    }//GEN-LAST:event_mnuDamageMatrixActionPerformed
+
+    private void mnuRandomizerActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuRandomizerActionPerformed
+        if (RomFile.current == null || !RomFile.current.isLoaded())
+            return;
+        new RandomizerDialog(this).setVisible(true);
+    }//GEN-LAST:event_mnuRandomizerActionPerformed
+
+    private void updateGameInfo() {
+        btnStarterEditor.setEnabled(RomFile.current.isLoaded());
+        btnDungeonEditor.setEnabled(RomFile.current.isLoaded());
+        btnPokemonEditor.setEnabled(RomFile.current.isLoaded());
+        btnItemEditor.setEnabled(RomFile.current.isLoaded());
+        btnMoveEditor.setEnabled(RomFile.current.isLoaded());
+        btnMapEditor.setEnabled(RomFile.current.isLoaded());
+        btnAreaEditor.setEnabled(RomFile.current.isLoaded());
+        btnExclusivePokemonEditor.setEnabled(RomFile.current.isLoaded());
+        btnMoneyEditor.setEnabled(RomFile.current.isLoaded());
+        
+        lblGameTitle.setText(RomFile.current.getRomDescription());
+        lblGameInternal.setText(RomFile.current.toString());
+    }
+    
+    private void mnuApplyPatchesActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuApplyPatchesActionPerformed
+        final JFileChooser fc = new JFileChooser() {{
+            setDialogTitle("Open original ROM file");
+            setFileFilter(new FileNameExtensionFilter("GBA files (*.gba)", ".gba", "gba"));
+        }};
+        String lastdir = Preferences.userRoot().get("mystery_lastDir", null);
+        if (lastdir != null)
+            fc.setSelectedFile(new File(lastdir));
+        if (fc.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        final File source = fc.getSelectedFile();
+        
+        final JFileChooser fcPatches = new JFileChooser(source.getParentFile()) {{
+            setDialogTitle("Select patches");
+            setMultiSelectionEnabled(true);
+            setFileFilter(new FileNameExtensionFilter("Patches (*.ips, *.ups, *.bps)", "ips", "ups", "bps"));
+        }};
+        if (fcPatches.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        final List<File> patches = Arrays.asList(fcPatches.getSelectedFiles());
+        
+        final JFileChooser fcFolder = new JFileChooser(source.getParentFile()) {{
+            setDialogTitle("Select output folder");
+            setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        }};
+        if (fcFolder.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        final File folder = fcFolder.getSelectedFile();
+        
+        // Every patch is applied to its own copy of the original ROM
+        new SwingWorker<List<PatchApplier.Result>, Void>() {
+            @Override
+            protected List<PatchApplier.Result> doInBackground() throws IOException {
+                return PatchApplier.applyEach(source, patches, folder);
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    StringBuilder sb = new StringBuilder();
+                    int failed = 0;
+                    for (PatchApplier.Result result : get()) {
+                        if (result.error == null)
+                            continue;
+                        failed++;
+                        sb.append('\n').append(result.patch.getName()).append(": ").append(result.error.getMessage());
+                    }
+                    JOptionPane.showMessageDialog(Main.this, (patches.size() - failed) + " of " + patches.size() + " patches applied." + sb, "Apply patches", failed > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+                }
+                catch (InterruptedException | ExecutionException ex) {
+                    JOptionPane.showMessageDialog(Main.this, ex.getMessage(), "Apply patches", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }//GEN-LAST:event_mnuApplyPatchesActionPerformed
+
+    private void mnuFindReferencesActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuFindReferencesActionPerformed
+        if (RomFile.current == null || !RomFile.current.isLoaded())
+            return;
+        String input = JOptionPane.showInputDialog(this, "Offset or range (e.g. 0x1234 or 0x1000-0x2000):", "Find references", JOptionPane.QUESTION_MESSAGE);
+        if (input == null || input.trim().isEmpty())
+            return;
+        
+        final int start, end;
+        try {
+            String[] parts = input.trim().split("\\s*-\\s*", 2);
+            start = BitConverter.pointerToOffset(BitConverter.stringToInt(parts[0]));
+            end = parts.length > 1 ? BitConverter.pointerToOffset(BitConverter.stringToInt(parts[1])) : start + 1;
+        }
+        catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(this, "Invalid offset: " + input, "Find references", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        // The first scan takes a moment on a full ROM, so it runs on a copy of the ROM in the background
+        final PointerIndex index = RomFile.current.getPointerIndex();
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                index.scan();
+                return null;
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    int[] sources = index.getReferences(start, end);
+                    StringBuilder sb = new StringBuilder();
+                    for (int source : sources)
+                        sb.append(String.format("0x%08X -> 0x%08X%n", source, index.getTarget(source)));
+                    JTextArea text = new JTextArea(sb.toString(), 16, 30);
+                    text.setEditable(false);
+                    text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+                    JOptionPane.showMessageDialog(Main.this, new Object[] { sources.length + " references found.", new JScrollPane(text) }, "Find references", JOptionPane.INFORMATION_MESSAGE);
+                }
+                catch (InterruptedException | ExecutionException ex) {
+                    JOptionPane.showMessageDialog(Main.this, ex.getMessage(), "Find references", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }//GEN-LAST:event_mnuFindReferencesActionPerformed
+
+    private void mnuDetectOffsetsActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuDetectOffsetsActionPerformed
+        if (RomFile.current == null)
+            return;
+        
+        // Unknown builds are not loaded, but can still be searched
+        final RomFile rom = RomFile.current;
+        new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() {
+                return rom.detectOffsets();
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    JTextArea text = new JTextArea(get(), 18, 50);
+                    text.setEditable(false);
+                    text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+                    JOptionPane.showMessageDialog(Main.this, new Object[] { "Copy this section into B24_offsets.ini to use it:", new JScrollPane(text) }, "Detect offsets", JOptionPane.INFORMATION_MESSAGE);
+                }
+                catch (InterruptedException | ExecutionException ex) {
+                    JOptionPane.showMessageDialog(Main.this, ex.getMessage(), "Detect offsets", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }//GEN-LAST:event_mnuDetectOffsetsActionPerformed
+
+    private void mnuSearchActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuSearchActionPerformed
+        if (RomFile.current == null || RomFile.current.getBuffer() == null)
+            return;
+        new SearchFrame().setVisible(true);
+    }//GEN-LAST:event_mnuSearchActionPerformed
+
+    private void mnuHexViewerActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_mnuHexViewerActionPerformed
+        if (RomFile.current == null || RomFile.current.getBuffer() == null)
+            return;
+        HexFrame.open(0);
+    }//GEN-LAST:event_mnuHexViewerActionPerformed
+
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton btnAreaEditor;
     private javax.swing.JButton btnDungeonEditor;
@@ -492,15 +1024,38 @@ public class Main extends javax.swing.JFrame {
     private javax.swing.JLabel lblGameInternal;
     private javax.swing.JLabel lblGameTitle;
     private javax.swing.JMenuItem mnuAbout;
+    private javax.swing.JMenuItem mnuApplyPatches;
     private javax.swing.JMenuItem mnuCalcRecruitment;
     private javax.swing.JMenuItem mnuClose;
+    private javax.swing.JMenuItem mnuDamageMatrix;
+    private javax.swing.JMenuItem mnuDetectOffsets;
+    private javax.swing.JMenuItem mnuDiagnostics;
+    private javax.swing.JMenuItem mnuExportPatch;
+    private javax.swing.JMenuItem mnuExportText;
     private javax.swing.JMenu mnuFile;
+    private javax.swing.JMenuItem mnuFindReferences;
     private javax.swing.JMenu mnuHelp;
+    private javax.swing.JMenuItem mnuHexViewer;
+    private javax.swing.JMenuItem mnuImportText;
     private javax.swing.JMenuItem mnuOpen;
+    private javax.swing.JMenuItem mnuOpenPatched;
+    private javax.swing.JMenuItem mnuRandomizer;
+    private javax.swing.JMenuItem mnuRecruitment;
     private javax.swing.JMenuItem mnuSave;
     private javax.swing.JMenuItem mnuSaveAs;
+    private javax.swing.JMenuItem mnuSearch;
+    private javax.swing.JMenuItem mnuSpawnSimulator;
+    private javax.swing.JMenuItem mnuTableItems;
+    private javax.swing.JMenuItem mnuTableMoves;
+    private javax.swing.JMenuItem mnuTablePokemon;
     private javax.swing.JMenu mnuTools;
     private javax.swing.JPanel pnlGameInfo;
     private javax.swing.JPopupMenu.Separator sep1;
+    private javax.swing.JPopupMenu.Separator sepApplyPatches;
+    private javax.swing.JPopupMenu.Separator sepDiagnostics;
+    private javax.swing.JPopupMenu.Separator sepFindReferences;
+    private javax.swing.JPopupMenu.Separator sepRandomizer;
+    private javax.swing.JPopupMenu.Separator sepSpawnSimulator;
+    private javax.swing.JPopupMenu.Separator sepTablePokemon;
     // End of variables declaration//GEN-END:variables
 }
\ No newline at end of file
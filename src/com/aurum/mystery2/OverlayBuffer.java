@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A copy-on-write buffer on top of a shared base array. The base is never
+ * modified; written bytes go to pages that are copied from the base on first
+ * write, so the memory used by this buffer grows with its edits only.
+ */
+public class OverlayBuffer extends ByteBuffer {
+    public static final int PAGE_SIZE = 0x1000;
+    private static final int PAGE_SHIFT = 12, PAGE_MASK = PAGE_SIZE - 1;
+    
+    private final HashMap<Integer, byte[]> pages = new HashMap();
+    private int length;
+    
+    // Most accesses are sequential, so the last page is kept at hand
+    private int lastIndex = -1;
+    private byte[] lastPage;
+    
+    // The merged content is kept until the next write
+    private byte[] merged;
+    
+    public OverlayBuffer(byte[] base, ByteOrder endian) {
+        super(base, endian);
+        length = base.length;
+    }
+    
+    /**
+     * Creates an overlay that shares the base of another overlay and starts
+     * with copies of its pages.
+     * @param other the other overlay
+     */
+    public OverlayBuffer(OverlayBuffer other) {
+        this(other.buffer, other.endianness);
+        length = other.length;
+        for (Integer index : other.pages.keySet())
+            pages.put(index, other.pages.get(index).clone());
+    }
+    
+    /**
+     * Returns the base array. It must not be modified.
+     * @return the base array.
+     */
+    public byte[] getBase() {
+        return buffer;
+    }
+    
+    /**
+     * Returns the sorted indexes of all pages that were written to. Page
+     * {@code i} covers the bytes from {@code i * PAGE_SIZE} on.
+     * @return the page indexes.
+     */
+    public int[] getPageIndexes() {
+        int[] indexes = pages.keySet().stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(indexes);
+        return indexes;
+    }
+    
+    /**
+     * Returns the number of bytes held by the overlay pages.
+     * @return the overlay size.
+     */
+    public int getOverlaySize() {
+        return pages.size() * PAGE_SIZE;
+    }
+    
+    /**
+     * Returns a merged copy of the base and all overlay pages. Building it
+     * copies the whole buffer, so it is kept and returned again until the next
+     * write. The returned array must not be modified, and later writes are not
+     * reflected in it. Use {@link #readBytesAt(int, int)} to look at a small
+     * part of the buffer.
+     * @return the content of this buffer.
+     */
+    @Override
+    public byte[] getBuffer() {
+        byte[] ret = merged;
+        if (ret != null)
+            return ret;
+        
+        ret = Arrays.copyOf(buffer, length);
+        for (Integer index : pages.keySet()) {
+            int start = index << PAGE_SHIFT;
+            if (start < length)
+                System.arraycopy(pages.get(index), 0, ret, start, Math.min(PAGE_SIZE, length - start));
+        }
+        merged = ret;
+        return ret;
+    }
+    
+    @Override
+    public void setBuffer(byte[] bytes) {
+        super.setBuffer(bytes);
+        reset(bytes.length);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(getBuffer());
+    }
+    
+    @Override
+    public int size() {
+        return length;
+    }
+    
+    @Override
+    public int remaining() {
+        return (position < length) ? length - position : 0;
+    }
+    
+    @Override
+    public int indexOf(byte val, int off) {
+        if (off < 0)
+            throw new IllegalArgumentException("offset " + off + " is < than 0");
+        
+        // Scan whole pages, or spans of the base where nothing was written
+        while (off < length) {
+            int index = off >> PAGE_SHIFT, end = Math.min((index + 1) << PAGE_SHIFT, length);
+            byte[] page = getPage(index, false);
+            
+            if (page != null) {
+                for (int base = index << PAGE_SHIFT ; off < end ; off++) {
+                    if (page[off - base] == val)
+                        return off;
+                }
+            }
+            else if (off < buffer.length) {
+                for (end = Math.min(end, buffer.length) ; off < end ; off++) {
+                    if (buffer[off] == val)
+                        return off;
+                }
+            }
+            else if (val == 0)
+                return off;
+            else
+                off = end;
+        }
+        
+        return -1;
+    }
+    
+    @Override
+    public void allocate(int size) {
+        super.allocate(size);
+        reset(size);
+    }
+    
+    @Override
+    public void clear(int start, int end) {
+        if (start >= length || end >= length)
+            throw new IllegalArgumentException("indexes out-of-bounds");
+        if (end < start)
+            throw new IllegalArgumentException("end index > start index");
+        
+        fireWritten(start, end - start + 1);
+        for ( ; start <= end ; start++)
+            set(start, (byte) 0x0);
+    }
+    
+    @Override
+    public void extend(int addsize) {
+        if (addsize < 0)
+            throw new IllegalArgumentException("addsize " + addsize + " < 0");
+        length += addsize;
+        merged = null;
+    }
+    
+    @Override
+    public byte[] readBytes(int len) {
+        if (len < 0)
+            throw new IllegalArgumentException("negative length " + len);
+        
+        byte[] b = new byte[len];
+        if (remaining() >= len && len != 0) {
+            for (int c = 0 ; c < len ; ) {
+                int index = position >> PAGE_SHIFT, off = position & PAGE_MASK;
+                int count = Math.min(len - c, PAGE_SIZE - off);
+                byte[] page = getPage(index, false);
+                if (page != null)
+                    System.arraycopy(page, off, b, c, count);
+                else if (position < buffer.length)
+                    System.arraycopy(buffer, position, b, c, Math.min(count, buffer.length - position));
+                position += count;
+                c += count;
+            }
+        }
+        return b;
+    }
+    
+    @Override
+    protected String decodeText(int pos, int len) {
+        // Strings rarely cross a page, so they are usually decoded in place
+        int index = pos >> PAGE_SHIFT, off = pos & PAGE_MASK;
+        if (off + len <= PAGE_SIZE) {
+            byte[] page = getPage(index, false);
+            if (page != null)
+                return codec.decode(page, off, len, text);
+            if (pos + len <= buffer.length)
+                return codec.decode(buffer, pos, len, text);
+        }
+        
+        int old = position;
+        position = pos;
+        byte[] bytes = readBytes(len);
+        position = old;
+        return codec.decode(bytes, 0, len, text);
+    }
+    
+    @Override
+    public byte readByte() {
+        return (remaining() >= Byte.BYTES) ? get(position++) : 0;
+    }
+    
+    @Override
+    public void writeBytes(byte[] val) {
+        if (position + val.length > length)
+            length = position + val.length;
+        merged = null;
+        fireWritten(position, val.length);
+        for (int c = 0 ; c < val.length ; ) {
+            int off = position & PAGE_MASK;
+            int count = Math.min(val.length - c, PAGE_SIZE - off);
+            System.arraycopy(val, c, getPage(position >> PAGE_SHIFT, true), off, count);
+            position += count;
+            c += count;
+        }
+    }
+    
+    @Override
+    public void writeByte(byte val) {
+        if (position + 1 > length)
+            length = position + 1;
+        fireWritten(position, 1);
+        set(position++, val);
+    }
+    
+    /**
+     * Writes the content of this buffer to a channel. Unchanged spans are
+     * transferred from {@code source}, which must hold the same bytes as the
+     * base, or taken from the base array if {@code source} is {@code null}.
+     * @param source the file the base was read from, or {@code null}
+     * @param target the target channel
+     * @throws IOException if reading or writing failed.
+     */
+    public void writeTo(FileChannel source, FileChannel target) throws IOException {
+        long pos = 0;
+        for (int index : getPageIndexes()) {
+            long start = (long) index << PAGE_SHIFT;
+            if (start >= length)
+                break;
+            
+            writeBase(source, target, pos, start);
+            int count = (int) Math.min(PAGE_SIZE, length - start);
+            writeFully(target, java.nio.ByteBuffer.wrap(pages.get(index), 0, count));
+            pos = start + count;
+        }
+        writeBase(source, target, pos, length);
+    }
+    
+    private void writeBase(FileChannel source, FileChannel target, long from, long to) throws IOException {
+        long end = Math.min(to, buffer.length);
+        if (from < end) {
+            if (source != null) {
+                while (from < end) {
+                    long count = source.transferTo(from, end - from, target);
+                    if (count <= 0)
+                        throw new IOException("source is shorter than the base");
+                    from += count;
+                }
+            }
+            else {
+                writeFully(target, java.nio.ByteBuffer.wrap(buffer, (int) from, (int) (end - from)));
+                from = end;
+            }
+        }
+        
+        // Bytes past the end of the base that were never written are zero
+        if (from < to)
+            writeFully(target, java.nio.ByteBuffer.allocate((int) (to - from)));
+    }
+    
+    private static void writeFully(FileChannel target, java.nio.ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining())
+            target.write(bytes);
+    }
+    
+    private void reset(int size) {
+        pages.clear();
+        length = size;
+        lastIndex = -1;
+        lastPage = null;
+        merged = null;
+    }
+    
+    private byte get(int pos) {
+        byte[] page = getPage(pos >> PAGE_SHIFT, false);
+        if (page != null)
+            return page[pos & PAGE_MASK];
+        return pos < buffer.length ? buffer[pos] : 0;
+    }
+    
+    private void set(int pos, byte val) {
+        merged = null;
+        getPage(pos >> PAGE_SHIFT, true)[pos & PAGE_MASK] = val;
+    }
+    
+    private byte[] getPage(int index, boolean create) {
+        if (index == lastIndex)
+            return lastPage;
+        
+        byte[] page = pages.get(index);
+        if (page == null) {
+            if (!create)
+                return null;
+            
+            page = new byte[PAGE_SIZE];
+            int start = index << PAGE_SHIFT;
+            if (start < buffer.length)
+                System.arraycopy(buffer, start, page, 0, Math.min(PAGE_SIZE, buffer.length - start));
+            pages.put(index, page);
+        }
+        
+        lastIndex = index;
+        lastPage = page;
+        return page;
+    }
+}
\ No newline at end of file
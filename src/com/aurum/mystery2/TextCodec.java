@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2;
+
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The text encoding of the game. Bytes and two-byte sequences are decoded by
+ * table lookups that are built once per codec. Control codes and any bytes
+ * without a character are written as {@code {XX}} with the hexadecimal value,
+ * so every string survives decoding and encoding unchanged. A literal brace
+ * is escaped the same way.
+ */
+public class TextCodec {
+    // Static fields
+    public static final TextCodec DEFAULT = new TextCodec("SJIS", true);
+    public static final TextCodec EUROPEAN = new TextCodec("windows-1252", false);
+    
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    
+    // Fields
+    private final char[] singles = new char[0x100];
+    private final boolean[] plain = new boolean[0x100];
+    private final boolean[] leads = new boolean[0x100];
+    private final char[] pairs;
+    private final char[] codes = new char[0x10000];
+    
+    private TextCodec(String charset, boolean doubleByte) {
+        // Printable ASCII and line breaks are the same in every version
+        for (int b = 0x20 ; b < 0x7F ; b++)
+            map(b, (char) b);
+        map(0x0A, '\n');
+        singles['{'] = 0;
+        for (int b = 0 ; b < 0x80 ; b++)
+            plain[b] = singles[b] == b;
+        plain[0] = false;
+        
+        CharsetDecoder decoder = Charset.forName(charset).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        pairs = doubleByte ? new char[0x10000] : null;
+        
+        for (int b = 0x80 ; b < 0x100 ; b++) {
+            if (doubleByte && ((b >= 0x81 && b <= 0x9F) || (b >= 0xE0 && b <= 0xFC))) {
+                leads[b] = true;
+                for (int t = 0x40 ; t <= 0xFC ; t++) {
+                    // A character with another code already would not decode back to this pair
+                    char c = decode(decoder, b, t);
+                    if (t != 0x7F && c != 0 && codes[c] == 0) {
+                        pairs[b << 8 | t] = c;
+                        codes[c] = (char) (b << 8 | t);
+                    }
+                }
+            }
+            else {
+                char c = decode(decoder, b);
+                if (c != 0 && codes[c] == 0)
+                    map(b, c);
+            }
+        }
+    }
+    
+    private void map(int b, char c) {
+        singles[b] = c;
+        codes[c] = (char) b;
+    }
+    
+    private static char decode(CharsetDecoder decoder, int... bytes) {
+        byte[] data = new byte[bytes.length];
+        for (int i = 0 ; i < bytes.length ; i++)
+            data[i] = (byte) bytes[i];
+        try {
+            CharBuffer chars = decoder.decode(java.nio.ByteBuffer.wrap(data));
+            return chars.length() == 1 && chars.get(0) >= 0x20 ? chars.get(0) : 0;
+        }
+        catch (CharacterCodingException ex) {
+            return 0;
+        }
+    }
+    
+    /**
+     * Returns the codec for a ROM.
+     * @param romId the ID of the ROM
+     * @return the codec.
+     */
+    public static TextCodec forRomId(String romId) {
+        return romId != null && romId.length() > 3 && romId.charAt(3) == 'P' ? EUROPEAN : DEFAULT;
+    }
+    
+    /**
+     * Decodes bytes into a String. Decoding stops at a zero byte.
+     * @param src the bytes
+     * @param off the offset of the first byte
+     * @param len the maximum number of bytes
+     * @param scratch a StringBuilder that may be reused for the text
+     * @return the text.
+     */
+    public String decode(byte[] src, int off, int len, StringBuilder scratch) {
+        // Bytes that stand for themselves are copied in bulk, which covers most strings
+        int end = off + len, run = off;
+        while (run < end && plain[src[run] & 0xFF])
+            run++;
+        if (run == end || src[run] == 0)
+            return new String(src, off, run - off, StandardCharsets.ISO_8859_1);
+        
+        scratch.setLength(0);
+        scratch.append(new String(src, off, run - off, StandardCharsets.ISO_8859_1));
+        append(src, run, end - run, scratch);
+        return scratch.toString();
+    }
+    
+    /**
+     * Decodes bytes and appends the text to a StringBuilder. Decoding stops at
+     * a zero byte.
+     * @param src the bytes
+     * @param off the offset of the first byte
+     * @param len the maximum number of bytes
+     * @param out the StringBuilder
+     * @return the offset after the last decoded byte.
+     */
+    public int append(byte[] src, int off, int len, StringBuilder out) {
+        int end = off + len;
+        char[] singles = this.singles;
+        
+        while (off < end) {
+            int b = src[off] & 0xFF;
+            if (b == 0)
+                break;
+            
+            // Plain characters make up most of the text
+            char c = singles[b];
+            if (c != 0) {
+                out.append(c);
+                off++;
+                continue;
+            }
+            
+            if (leads[b] && off + 1 < end) {
+                c = pairs[b << 8 | (src[off + 1] & 0xFF)];
+                if (c != 0) {
+                    out.append(c);
+                    off += 2;
+                    continue;
+                }
+            }
+            out.append('{').append(HEX[b >> 4]).append(HEX[b & 0xF]).append('}');
+            off++;
+        }
+        return off;
+    }
+    
+    /**
+     * Encodes text without a terminating zero.
+     * @param text the text
+     * @return the encoded bytes.
+     * @throws IllegalArgumentException if a character has no code.
+     */
+    public byte[] encode(CharSequence text) {
+        byte[] out = new byte[text.length() * 2];
+        int n = 0;
+        
+        for (int i = 0 ; i < text.length() ; i++) {
+            char c = text.charAt(i);
+            
+            // Escaped bytes
+            if (c == '{' && i + 3 < text.length() && text.charAt(i + 3) == '}') {
+                int hi = Character.digit(text.charAt(i + 1), 16), lo = Character.digit(text.charAt(i + 2), 16);
+                if (hi >= 0 && lo >= 0) {
+                    out[n++] = (byte) (hi << 4 | lo);
+                    i += 3;
+                    continue;
+                }
+            }
+            
+            int code = c == '{' ? '{' : codes[c];
+            if (code == 0)
+                throw new IllegalArgumentException(String.format("character U+%04X cannot be encoded", (int) c));
+            if (code > 0xFF)
+                out[n++] = (byte) (code >> 8);
+            out[n++] = (byte) code;
+        }
+        
+        byte[] ret = new byte[n];
+        System.arraycopy(out, 0, ret, 0, n);
+        return ret;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.analysis;
+
+import java.util.SplittableRandom;
+
+/**
+ * Draws indices from a discrete distribution in constant time using Vose's
+ * alias method. Instances are immutable and may be shared between threads.
+ */
+public class AliasSampler {
+    private final int[] alias;
+    private final long[] threshold;
+    
+    private AliasSampler(int[] alias, long[] threshold) {
+        this.alias = alias;
+        this.threshold = threshold;
+    }
+    
+    /**
+     * Builds a sampler for the given weights. Entries with a weight of zero
+     * are never drawn.
+     * @param weights the non-negative weights
+     * @return the sampler or {@code null} if all weights are zero.
+     */
+    public static AliasSampler build(int[] weights) {
+        int n = weights.length;
+        long total = 0;
+        int heaviest = 0;
+        for (int i = 0 ; i < n ; i++) {
+            total += Math.max(weights[i], 0);
+            if (weights[i] > weights[heaviest])
+                heaviest = i;
+        }
+        if (total == 0)
+            return null;
+        
+        double[] scaled = new double[n];
+        int[] small = new int[n], large = new int[n];
+        int smallCount = 0, largeCount = 0;
+        for (int i = 0 ; i < n ; i++) {
+            scaled[i] = Math.max(weights[i], 0) * (double) n / total;
+            if (scaled[i] < 1.0)
+                small[smallCount++] = i;
+            else
+                large[largeCount++] = i;
+        }
+        
+        int[] alias = new int[n];
+        long[] threshold = new long[n];
+        while (smallCount > 0 && largeCount > 0) {
+            int s = small[--smallCount], l = large[--largeCount];
+            threshold[s] = toThreshold(scaled[s]);
+            alias[s] = l;
+            scaled[l] -= 1.0 - scaled[s];
+            if (scaled[l] < 1.0)
+                small[smallCount++] = l;
+            else
+                large[largeCount++] = l;
+        }
+        
+        // Whatever is left over is full up to rounding errors
+        while (largeCount > 0) {
+            int l = large[--largeCount];
+            threshold[l] = 1L << 32;
+            alias[l] = l;
+        }
+        while (smallCount > 0) {
+            int s = small[--smallCount];
+            threshold[s] = weights[s] > 0 ? 1L << 32 : 0;
+            alias[s] = weights[s] > 0 ? s : heaviest;
+        }
+        
+        return new AliasSampler(alias, threshold);
+    }
+    
+    private static long toThreshold(double probability) {
+        return Math.min((long) (probability * (1L << 32)), 1L << 32);
+    }
+    
+    /**
+     * Draws an index. A single random long supplies both the column and the
+     * coin flip.
+     * @param random the random number generator to use
+     * @return the drawn index.
+     */
+    public int sample(SplittableRandom random) {
+        long bits = random.nextLong();
+        int column = (int) (((bits >>> 32) * alias.length) >>> 32);
+        return (bits & 0xFFFFFFFFL) < threshold[column] ? column : alias[column];
+    }
+    
+    public int size() {
+        return alias.length;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.analysis;
+
+import com.aurum.mystery2.Diagnostics;
+import com.aurum.mystery2.game.Move;
+import com.aurum.mystery2.game.Pokemon;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Expected damage of every attacker x move x defender combination, relative to
+ * a neutral hit of equal attack and defense. The move tables carry no base
+ * power, so the value combines the attacker's attack stat, same-type bonus,
+ * accuracy and critical chance with the type effectiveness against the
+ * defender and its defense stat. Whether a move uses the physical or special
+ * stats depends on its type.
+ * <p>
+ * Since the damage factors into an attacker x move part and a defender x type
+ * part, the matrix is kept as those two tables and every cell costs a single
+ * multiplication. Changed moves or species only recompute their own rows.
+ */
+public class DamageMatrix {
+    // Static fields
+    public static final int TYPES = 18;
+    public static final float STAB = 1.5F;
+    public static final float CRITICAL = 1.5F;
+    
+    /** Multipliers for neutral, super effective, not very effective and no effect. */
+    public static final float[] MULTIPLIERS = { 1.0F, 1.4F, 0.7F, 0.0F };
+    
+    private static final byte[] CHART = new byte[TYPES * TYPES];
+    private static final boolean[] PHYSICAL = new boolean[TYPES];
+    
+    static {
+        // Attacking types from Normal to Steel, defending types in the same order
+        String[] rows = {
+            "............-0..-", ".--+.+.....+-.-.+", ".+--....+...+.-..", ".-+-...-+-.-+.-.-",
+            "..+--...0+....-..", ".--+.-..++....+.-", "+....+.-.---+0.++", "...+...--...--..0",
+            ".+.-+..+.0.-+...+", "...+-.+....+-...-", "......++..-....0-", ".-.+..--.-+..-.+-",
+            ".+...+-.-+.+....-", "0.........+..+.--", "..............+.-", "......-...+..+.--",
+            ".--.-+......+...-"
+        };
+        for (int a = 0 ; a < rows.length ; a++) {
+            for (int d = 0 ; d < rows[a].length() ; d++)
+                CHART[(a + 1) * TYPES + d + 1] = (byte) ".+-0".indexOf(rows[a].charAt(d));
+        }
+        
+        // Normal, Fighting, Poison, Ground, Flying, Bug, Rock, Ghost and Steel
+        for (int type : new int[] { 1, 7, 8, 9, 10, 12, 13, 14, 17 })
+            PHYSICAL[type] = true;
+    }
+    
+    private final List<Pokemon> pokemon;
+    private final List<Move> moves;
+    private final float[] offense, defense;
+    private final int[][] pokemonKeys, moveKeys;
+    private final int[] moveTypes;
+    
+    public DamageMatrix(List<Pokemon> pokemon, List<Move> moves) {
+        this.pokemon = pokemon;
+        this.moves = moves;
+        this.offense = new float[pokemon.size() * moves.size()];
+        this.defense = new float[pokemon.size() * TYPES];
+        this.pokemonKeys = new int[pokemon.size()][];
+        this.moveKeys = new int[moves.size()][];
+        this.moveTypes = new int[moves.size()];
+        
+        long start = Diagnostics.begin();
+        for (int m = 0 ; m < moveTypes.length ; m++) {
+            moveKeys[m] = key(moves.get(m));
+            moveTypes[m] = clampType(moves.get(m).type);
+        }
+        for (int p = 0 ; p < pokemonKeys.length ; p++)
+            pokemonKeys[p] = key(pokemon.get(p));
+        IntStream.range(0, pokemon.size()).parallel().forEach((int p) -> {
+            updateOffenseRow(p);
+            updateDefenseRow(p);
+        });
+        Diagnostics.end("DamageMatrix.build", start);
+    }
+    
+    /**
+     * Returns the effectiveness class of an attacking type against a defending
+     * type, as an index into {@link #MULTIPLIERS}.
+     * @param attack the attacking type
+     * @param defend the defending type
+     * @return the effectiveness class.
+     */
+    public static int getEffectiveness(int attack, int defend) {
+        return CHART[clampType(attack) * TYPES + clampType(defend)];
+    }
+    
+    public static boolean isPhysical(int type) {
+        return PHYSICAL[clampType(type)];
+    }
+    
+    /**
+     * Returns the expected damage of an attacker's move against a defender.
+     * @param attacker the attacking species
+     * @param move the move
+     * @param defender the defending species
+     * @return the expected damage relative to a neutral hit.
+     */
+    public float get(int attacker, int move, int defender) {
+        return offense[attacker * moveTypes.length + move] * defense[defender * TYPES + moveTypes[move]];
+    }
+    
+    public int getMoveType(int move) {
+        return moveTypes[move];
+    }
+    
+    public int getPokemonCount() {
+        return pokemonKeys.length;
+    }
+    
+    public int getMoveCount() {
+        return moveKeys.length;
+    }
+    
+    /**
+     * Recomputes the rows and columns of moves and species that changed since
+     * the matrix was built or last refreshed.
+     * @return the number of changed moves and species.
+     */
+    public int refresh() {
+        long start = Diagnostics.begin();
+        int changed = 0;
+        
+        for (int m = 0 ; m < moveKeys.length ; m++) {
+            int[] key = key(moves.get(m));
+            if (Arrays.equals(key, moveKeys[m]))
+                continue;
+            moveKeys[m] = key;
+            moveTypes[m] = clampType(moves.get(m).type);
+            updateOffenseColumn(m);
+            changed++;
+        }
+        for (int p = 0 ; p < pokemonKeys.length ; p++) {
+            int[] key = key(pokemon.get(p));
+            if (Arrays.equals(key, pokemonKeys[p]))
+                continue;
+            pokemonKeys[p] = key;
+            updateOffenseRow(p);
+            updateDefenseRow(p);
+            changed++;
+        }
+        
+        Diagnostics.end("DamageMatrix.refresh", start);
+        return changed;
+    }
+    
+    /**
+     * Averages the expected damage of every move of an attacker over all
+     * defenders.
+     * @param attacker the attacking species
+     * @return the mean expected damage per move.
+     */
+    public float[] rankMoves(int attacker) {
+        float[] mean = getMeanDefense();
+        float[] ret = new float[moveTypes.length];
+        for (int m = 0 ; m < ret.length ; m++)
+            ret[m] = offense[attacker * moveTypes.length + m] * mean[moveTypes[m]];
+        return ret;
+    }
+    
+    /**
+     * Returns the expected damage of the best same-type attack an attacker can
+     * land on a defender. Movesets are not part of the tables, so every type of
+     * the attacker counts as a move it knows.
+     * @param attacker the attacking species
+     * @param defender the defending species
+     * @return the expected damage relative to a neutral hit.
+     */
+    public float getThreat(int attacker, int defender) {
+        Pokemon mon = pokemon.get(attacker);
+        float best = 0;
+        for (int type : new int[] { mon.type1, mon.type2 }) {
+            type = clampType(type);
+            if (type == 0)
+                continue;
+            float attack = Math.max(isPhysical(type) ? mon.atk : mon.spatk, 1);
+            best = Math.max(best, attack * STAB * defense[defender * TYPES + type]);
+        }
+        return best;
+    }
+    
+    private float[] getMeanDefense() {
+        float[] ret = new float[TYPES];
+        for (int p = 0 ; p < pokemonKeys.length ; p++) {
+            for (int t = 0 ; t < TYPES ; t++)
+                ret[t] += defense[p * TYPES + t];
+        }
+        for (int t = 0 ; t < TYPES ; t++)
+            ret[t] /= Math.max(pokemonKeys.length, 1);
+        return ret;
+    }
+    
+    private void updateOffenseRow(int p) {
+        for (int m = 0 ; m < moveTypes.length ; m++)
+            offense[p * moveTypes.length + m] = computeOffense(pokemon.get(p), moves.get(m), moveTypes[m]);
+    }
+    
+    private void updateOffenseColumn(int m) {
+        for (int p = 0 ; p < pokemonKeys.length ; p++)
+            offense[p * moveTypes.length + m] = computeOffense(pokemon.get(p), moves.get(m), moveTypes[m]);
+    }
+    
+    private void updateDefenseRow(int p) {
+        Pokemon mon = pokemon.get(p);
+        for (int t = 0 ; t < TYPES ; t++) {
+            float effectiveness = MULTIPLIERS[getEffectiveness(t, mon.type1)];
+            if (clampType(mon.type2) != 0 && mon.type2 != mon.type1)
+                effectiveness *= MULTIPLIERS[getEffectiveness(t, mon.type2)];
+            defense[p * TYPES + t] = effectiveness / Math.max(isPhysical(t) ? mon.def : mon.spdef, 1);
+        }
+    }
+    
+    private static float computeOffense(Pokemon mon, Move move, int type) {
+        if (type == 0)
+            return 0;
+        
+        float attack = Math.max(isPhysical(type) ? mon.atk : mon.spatk, 1);
+        float stab = type == clampType(mon.type1) || type == clampType(mon.type2) ? STAB : 1;
+        
+        // Accuracies above 100 are sure hits
+        float hit = move.accuracy1 < 0 || move.accuracy1 > 100 ? 1 : move.accuracy1 / 100F;
+        float critical = 1 + Math.max(0, Math.min(move.critical, 100)) / 100F * (CRITICAL - 1);
+        return attack * stab * hit * critical;
+    }
+    
+    private static int clampType(int type) {
+        return type >= 0 && type < TYPES ? type : 0;
+    }
+    
+    private static int[] key(Move move) {
+        return new int[] { move.type, move.accuracy1, move.critical };
+    }
+    
+    private static int[] key(Pokemon mon) {
+        return new int[] { mon.type1, mon.type2, mon.atk, mon.spatk, mon.def, mon.spdef };
+    }
+}
\ No newline at end of file
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.analysis;
+
+import com.aurum.mystery2.Diagnostics;
+import com.aurum.mystery2.game.Dungeon;
+import com.aurum.mystery2.game.DungeonLayout;
+import com.aurum.mystery2.game.DungeonPokemon;
+import com.aurum.mystery2.game.Floor;
+import com.aurum.mystery2.game.RomFile;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the expected enemy level, species mix and trap and item densities
+ * of every floor. The curves of all dungeons are cached; editors report the
+ * entries they changed, and {@link #refresh()} only recomputes the dungeons
+ * that use one of them.
+ */
+public class DifficultyCurves {
+    public static class Point {
+        public final int floor;
+        public double expectedLevel;
+        public int minLevel, maxLevel, species, topSpecies;
+        public double topShare;
+        public int enemies, traps, items;
+        
+        private Point(int floor) {
+            this.floor = floor;
+        }
+    }
+    
+    // Static fields
+    public static final int DUNGEONS = 64;
+    
+    private final RomFile rom;
+    private final Point[][] curves = new Point[DUNGEONS][];
+    private final BitSet changedDungeons = new BitSet(), changedPokemon = new BitSet(), changedLayouts = new BitSet();
+    
+    public DifficultyCurves(RomFile rom) {
+        this.rom = rom;
+        
+        long start = Diagnostics.begin();
+        IntStream.range(0, Math.min(DUNGEONS, rom.dungeons.size())).parallel().forEach((int d) -> {
+            curves[d] = compute(rom, rom.dungeons.get(d));
+        });
+        Diagnostics.end("DifficultyCurves.build", start);
+    }
+    
+    /**
+     * Returns the cached curve of a dungeon.
+     * @param dungeon the dungeon index
+     * @return the points of floor 1 and above.
+     */
+    public synchronized Point[] get(int dungeon) {
+        return curves[dungeon];
+    }
+    
+    /**
+     * Marks a dungeon whose floors changed.
+     * @param index the dungeon index
+     */
+    public synchronized void dungeonChanged(int index) {
+        changedDungeons.set(index);
+    }
+    
+    /**
+     * Marks every dungeon, e.g. after the data was changed outside of an
+     * editor.
+     */
+    public synchronized void allChanged() {
+        changedDungeons.set(0, DUNGEONS);
+    }
+    
+    /**
+     * Marks a changed Pokémon spawn list.
+     * @param index the spawn list index
+     */
+    public synchronized void pokemonChanged(int index) {
+        changedPokemon.set(index);
+    }
+    
+    /**
+     * Marks a changed floor layout.
+     * @param index the layout index
+     */
+    public synchronized void layoutChanged(int index) {
+        changedLayouts.set(index);
+    }
+    
+    /**
+     * Recomputes the curves of every dungeon that was marked as changed, or
+     * that uses a marked spawn list or layout.
+     * @return the indices of the recomputed dungeons.
+     */
+    public synchronized int[] refresh() {
+        if (changedDungeons.isEmpty() && changedPokemon.isEmpty() && changedLayouts.isEmpty())
+            return new int[0];
+        
+        long start = Diagnostics.begin();
+        int[] ret = IntStream.range(0, Math.min(DUNGEONS, rom.dungeons.size())).filter((int d) -> {
+            Dungeon dungeon = rom.dungeons.get(d);
+            boolean changed = changedDungeons.get(d);
+            for (int f = 1 ; f < dungeon.floors.size() && !changed ; f++) {
+                Floor floor = dungeon.floors.get(f);
+                changed = floor.pokemon >= 0 && changedPokemon.get(floor.pokemon) || floor.layout >= 0 && changedLayouts.get(floor.layout);
+            }
+            return changed;
+        }).toArray();
+        changedDungeons.clear();
+        changedPokemon.clear();
+        changedLayouts.clear();
+        
+        IntStream.of(ret).parallel().forEach((int d) -> {
+            curves[d] = compute(rom, rom.dungeons.get(d));
+        });
+        
+        Diagnostics.end("DifficultyCurves.refresh", start);
+        return ret;
+    }
+    
+    /**
+     * Computes the curve of a dungeon without caching it. This also works on
+     * copies that are being edited.
+     * @param rom the ROM the floor indices refer to
+     * @param dungeon the dungeon
+     * @return the points of floor 1 and above.
+     */
+    public static Point[] compute(RomFile rom, Dungeon dungeon) {
+        Point[] ret = new Point[Math.max(dungeon.floors.size() - 1, 0)];
+        
+        for (int f = 1 ; f < dungeon.floors.size() ; f++) {
+            Floor floor = dungeon.floors.get(f);
+            Point point = ret[f - 1] = new Point(f);
+            
+            DungeonLayout layout = get(rom.dungeonLayouts, floor.layout);
+            if (layout != null) {
+                point.enemies = layout.pokemonDensity;
+                point.traps = layout.trapDensity;
+                point.items = layout.itemDensity;
+            }
+            
+            DungeonPokemon pokemon = get(rom.dungeonPokemon, floor.pokemon);
+            if (pokemon == null)
+                continue;
+            
+            long total = 0, levels = 0;
+            Map<Integer, Long> shares = new HashMap();
+            point.minLevel = Integer.MAX_VALUE;
+            for (DungeonPokemon.Entry entry : pokemon.entries) {
+                if (entry.probability <= 0)
+                    continue;
+                total += entry.probability;
+                levels += (long) entry.probability * entry.level;
+                point.minLevel = Math.min(point.minLevel, entry.level);
+                point.maxLevel = Math.max(point.maxLevel, entry.level);
+                shares.merge(entry.species, (long) entry.probability, Long::sum);
+            }
+            if (total == 0) {
+                point.minLevel = 0;
+                continue;
+            }
+            
+            point.expectedLevel = levels / (double) total;
+            point.species = shares.size();
+            for (Map.Entry<Integer, Long> share : shares.entrySet()) {
+                if (share.getValue() / (double) total > point.topShare) {
+                    point.topShare = share.getValue() / (double) total;
+                    point.topSpecies = share.getKey();
+                }
+            }
+        }
+        
+        return ret;
+    }
+    
+    private static <T> T get(List<T> list, int index) {
+        return index >= 0 && index < list.size() ? list.get(index) : null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.analysis;
+
+import com.aurum.mystery2.game.DungeonLayout;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Generates sample floors from the generator settings of a dungeon layout.
+ * The game's own generator is not part of the editable data, so this is an
+ * approximation in the same spirit: rooms and crossings on a grid of cells,
+ * joined by corridors, with optional terrain, a Kecleon Shop and a Monster
+ * House. The same settings and seed always produce the same floor.
+ * <p>
+ * The meaning of the individual bits of the "General" and "Crossings" values
+ * is not known. Here the low bits of {@code layout1} pick the grid size and
+ * the next ones the share of cells that hold a room, and {@code layout2}
+ * adds extra corridors between neighbouring cells.
+ */
+public class FloorGenerator {
+    public static final class Parameters {
+        public final int layout1, layout2, terrainDensity, shopsFactor, monstersFactor;
+        public final boolean hasTerrainPond, hasTerrainTiles;
+        
+        public Parameters(int layout1, int layout2, int terrainDensity, boolean hasTerrainPond, boolean hasTerrainTiles, int shopsFactor, int monstersFactor) {
+            this.layout1 = layout1;
+            this.layout2 = layout2;
+            this.terrainDensity = terrainDensity;
+            this.hasTerrainPond = hasTerrainPond;
+            this.hasTerrainTiles = hasTerrainTiles;
+            this.shopsFactor = shopsFactor;
+            this.monstersFactor = monstersFactor;
+        }
+        
+        public static Parameters of(DungeonLayout layout) {
+            return new Parameters(layout.layout1, layout.layout2, layout.terrainDensity, layout.hasTerrainPond, layout.hasTerrainTiles, layout.shopsFactor, layout.monstersFactor);
+        }
+        
+        private int[] values() {
+            return new int[] { layout1, layout2, terrainDensity, hasTerrainPond ? 1 : 0, hasTerrainTiles ? 1 : 0, shopsFactor, monstersFactor };
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Parameters && Arrays.equals(values(), ((Parameters) o).values());
+        }
+        
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values());
+        }
+    }
+    
+    // Static fields
+    public static final int WIDTH = 56, HEIGHT = 32;
+    public static final byte WALL = 0, ROOM = 1, CORRIDOR = 2, WATER = 3, SHOP = 4, MONSTER_HOUSE = 5, STAIRS = 6;
+    public static final int CACHE_SIZE = 1024;
+    
+    private static final int[] COLORS = { 0x303030, 0xD8D0B0, 0xA89870, 0x4070D0, 0x40B040, 0xD04040, 0xF0E020 };
+    private static final Map<List<Object>, BufferedImage> cache = new LinkedHashMap(CACHE_SIZE, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    
+    /**
+     * Generates a floor.
+     * @param params the generator settings
+     * @param seed the seed
+     * @return the tiles, row by row.
+     */
+    public static byte[] generate(Parameters params, long seed) {
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + params.hashCode());
+        byte[] tiles = new byte[WIDTH * HEIGHT];
+        
+        int cols = 2 + (params.layout1 & 0x7) % 5;
+        int rows = 2 + (params.layout1 >> 3 & 0x3) % 3;
+        int roomChance = 40 + (params.layout1 >> 5 & 0xF) * 4;
+        int cellW = WIDTH / cols, cellH = HEIGHT / rows;
+        
+        // Rooms and crossings, stored as x, y, width, height
+        int[][] cells = new int[cols * rows][];
+        boolean[] isRoom = new boolean[cells.length];
+        for (int i = 0 ; i < cells.length ; i++)
+            isRoom[i] = random.nextInt(100) < roomChance;
+        isRoom[random.nextInt(cells.length)] = true;
+        isRoom[random.nextInt(cells.length)] = true;
+        
+        for (int cy = 0 ; cy < rows ; cy++) {
+            for (int cx = 0 ; cx < cols ; cx++) {
+                int i = cy * cols + cx, x0 = cx * cellW, y0 = cy * cellH;
+                if (isRoom[i]) {
+                    int w = 3 + random.nextInt(Math.max(cellW - 6, 1)), h = 3 + random.nextInt(Math.max(cellH - 6, 1));
+                    int x = x0 + 1 + random.nextInt(Math.max(cellW - w - 2, 1)), y = y0 + 1 + random.nextInt(Math.max(cellH - h - 2, 1));
+                    cells[i] = new int[] { x, y, w, h };
+                    fill(tiles, x, y, w, h, ROOM);
+                }
+                else
+                    cells[i] = new int[] { x0 + 2 + random.nextInt(Math.max(cellW - 4, 1)), y0 + 2 + random.nextInt(Math.max(cellH - 4, 1)), 1, 1 };
+            }
+        }
+        
+        // A random spanning tree keeps every cell reachable, the crossings add loops
+        boolean[] visited = new boolean[cells.length];
+        List<Integer> stack = new ArrayList();
+        int first = random.nextInt(cells.length);
+        stack.add(first);
+        visited[first] = true;
+        while (!stack.isEmpty()) {
+            int i = stack.get(stack.size() - 1);
+            int[] next = unvisitedNeighbours(i, cols, rows, visited);
+            if (next.length == 0) {
+                stack.remove(stack.size() - 1);
+                continue;
+            }
+            int n = next[random.nextInt(next.length)];
+            visited[n] = true;
+            connect(tiles, cells[i], cells[n], random);
+            stack.add(n);
+        }
+        int extra = Math.min(Integer.bitCount(params.layout2), cells.length * 2);
+        for (int e = 0 ; e < extra ; e++) {
+            int i = random.nextInt(cells.length);
+            int[] next = unvisitedNeighbours(i, cols, rows, new boolean[cells.length]);
+            connect(tiles, cells[i], cells[next[random.nextInt(next.length)]], random);
+        }
+        
+        // Special rooms
+        List<int[]> rooms = new ArrayList();
+        for (int i = 0 ; i < cells.length ; i++) {
+            if (isRoom[i])
+                rooms.add(cells[i]);
+        }
+        if (rooms.size() > 1 && random.nextInt(100) < params.shopsFactor) {
+            int[] room = rooms.remove(random.nextInt(rooms.size()));
+            fill(tiles, room[0] + 1, room[1] + 1, Math.max(room[2] - 2, 1), Math.max(room[3] - 2, 1), SHOP);
+        }
+        if (rooms.size() > 1 && random.nextInt(100) < params.monstersFactor) {
+            int[] room = rooms.remove(random.nextInt(rooms.size()));
+            fill(tiles, room[0], room[1], room[2], room[3], MONSTER_HOUSE);
+        }
+        
+        // Terrain grows into the walls so it never cuts off a path
+        if (params.hasTerrainPond) {
+            for (int p = 0 ; p < Math.min(params.terrainDensity, 64) ; p++) {
+                int x = random.nextInt(WIDTH), y = random.nextInt(HEIGHT);
+                for (int step = 0 ; step < 24 ; step++) {
+                    if (tiles[y * WIDTH + x] == WALL)
+                        tiles[y * WIDTH + x] = WATER;
+                    x = Math.max(0, Math.min(WIDTH - 1, x + random.nextInt(3) - 1));
+                    y = Math.max(0, Math.min(HEIGHT - 1, y + random.nextInt(3) - 1));
+                }
+            }
+        }
+        if (params.hasTerrainTiles) {
+            for (int t = 0 ; t < params.terrainDensity * 4 ; t++) {
+                int i = random.nextInt(tiles.length);
+                if (tiles[i] == WALL)
+                    tiles[i] = WATER;
+            }
+        }
+        
+        int[] room = rooms.get(random.nextInt(rooms.size()));
+        tiles[(room[1] + random.nextInt(room[3])) * WIDTH + room[0] + random.nextInt(room[2])] = STAIRS;
+        return tiles;
+    }
+    
+    /**
+     * Renders a floor with one square of {@code scale} pixels per tile.
+     * @param tiles the tiles returned by {@link #generate(Parameters, long)}
+     * @param scale the size of a tile in pixels
+     * @return the image.
+     */
+    public static BufferedImage render(byte[] tiles, int scale) {
+        BufferedImage image = new BufferedImage(WIDTH * scale, HEIGHT * scale, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[WIDTH * scale];
+        for (int y = 0 ; y < HEIGHT ; y++) {
+            for (int x = 0 ; x < WIDTH ; x++)
+                Arrays.fill(row, x * scale, (x + 1) * scale, COLORS[tiles[y * WIDTH + x]]);
+            for (int s = 0 ; s < scale ; s++)
+                image.setRGB(0, y * scale + s, row.length, 1, row, 0, row.length);
+        }
+        return image;
+    }
+    
+    /**
+     * Returns a rendered floor, generating it only if it is not cached yet.
+     * @param params the generator settings
+     * @param seed the seed
+     * @param scale the size of a tile in pixels
+     * @return the image, which must not be modified.
+     */
+    public static BufferedImage getThumbnail(Parameters params, long seed, int scale) {
+        List<Object> key = Arrays.asList(params, seed, scale);
+        synchronized (cache) {
+            BufferedImage image = cache.get(key);
+            if (image != null)
+                return image;
+        }
+        
+        BufferedImage image = render(generate(params, seed), scale);
+        synchronized (cache) {
+            cache.put(key, image);
+        }
+        return image;
+    }
+    
+    private static int[] unvisitedNeighbours(int i, int cols, int rows, boolean[] visited) {
+        int x = i % cols, y = i / cols;
+        int[] ret = new int[4];
+        int count = 0;
+        if (x > 0 && !visited[i - 1]) ret[count++] = i - 1;
+        if (x < cols - 1 && !visited[i + 1]) ret[count++] = i + 1;
+        if (y > 0 && !visited[i - cols]) ret[count++] = i - cols;
+        if (y < rows - 1 && !visited[i + cols]) ret[count++] = i + cols;
+        return Arrays.copyOf(ret, count);
+    }
+    
+    private static void connect(byte[] tiles, int[] a, int[] b, SplittableRandom random) {
+        int x1 = a[0] + random.nextInt(a[2]), y1 = a[1] + random.nextInt(a[3]);
+        int x2 = b[0] + random.nextInt(b[2]), y2 = b[1] + random.nextInt(b[3]);
+        
+        // L-shaped corridor, bending at a random column
+        int bend = Math.min(x1, x2) + random.nextInt(Math.abs(x2 - x1) + 1);
+        line(tiles, x1, y1, bend, y1);
+        line(tiles, bend, y1, bend, y2);
+        line(tiles, bend, y2, x2, y2);
+    }
+    
+    private static void line(byte[] tiles, int x1, int y1, int x2, int y2) {
+        for (int x = Math.min(x1, x2) ; x <= Math.max(x1, x2) ; x++) {
+            for (int y = Math.min(y1, y2) ; y <= Math.max(y1, y2) ; y++) {
+                if (tiles[y * WIDTH + x] == WALL)
+                    tiles[y * WIDTH + x] = CORRIDOR;
+            }
+        }
+    }
+    
+    private static void fill(byte[] tiles, int x, int y, int w, int h, byte tile) {
+        for (int ty = y ; ty < y + h && ty < HEIGHT ; ty++)
+            Arrays.fill(tiles, ty * WIDTH + x, ty * WIDTH + Math.min(x + w, WIDTH), tile);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.analysis;
+
+import com.aurum.mystery2.Diagnostics;
+import com.aurum.mystery2.game.Dungeon;
+import com.aurum.mystery2.game.DungeonLayout;
+import com.aurum.mystery2.game.DungeonPokemon;
+import com.aurum.mystery2.game.Floor;
+import com.aurum.mystery2.game.RomFile;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates recruitment chances in bulk. A chance is the sum of the species'
+ * recruit rate, a bonus depending on the player's level and the Friend Bow
+ * bonus, all in tenths of a percent.
+ */
+public class RecruitmentEngine {
+    public static class Summary {
+        public final int species;
+        public final int floors;
+        public final double bestFloorChance, expectedFloors;
+        
+        private Summary(int species, int floors, double bestFloorChance, double expectedFloors) {
+            this.species = species;
+            this.floors = floors;
+            this.bestFloorChance = bestFloorChance;
+            this.expectedFloors = expectedFloors;
+        }
+    }
+    
+    // Static fields
+    public static final int MAX_LEVEL = 100;
+    public static final int FRIEND_BOW_BONUS = 100;
+    
+    private static final int[] LEVEL_FACTORS = new int[MAX_LEVEL + 1];
+    
+    static {
+        for (int level = 30 ; level <= MAX_LEVEL ; level++)
+            LEVEL_FACTORS[level] = level >= 90 ? 240 : 50 + (level / 10 - 3) * 25;
+    }
+    
+    private final RomFile rom;
+    private final short[] recruitRates;
+    
+    public RecruitmentEngine(RomFile rom) {
+        this.rom = rom;
+        this.recruitRates = new short[rom.pokemon.size()];
+        for (int i = 0 ; i < recruitRates.length ; i++)
+            recruitRates[i] = rom.pokemon.get(i).recruit;
+    }
+    
+    /**
+     * Returns the recruitment bonus for the player's level.
+     * @param level the player's level
+     * @return the bonus in tenths of a percent.
+     */
+    public static int getLevelFactor(int level) {
+        return level >= 0 && level <= MAX_LEVEL ? LEVEL_FACTORS[level] : 0;
+    }
+    
+    /**
+     * Calculates a single recruitment chance.
+     * @param recruit the recruit rate of the species
+     * @param level the player's level
+     * @param friendBow whether the Friend Bow is equipped
+     * @return the chance in percent, clamped to 0 - 100.
+     */
+    public static float getChance(int recruit, int level, boolean friendBow) {
+        int sum = getLevelFactor(level) + recruit + (friendBow ? FRIEND_BOW_BONUS : 0);
+        return Math.max(0, Math.min(sum, 1000)) / 10F;
+    }
+    
+    /**
+     * Evaluates the chances of all entries at every player level.
+     * @param entries the entries to evaluate
+     * @param friendBow whether the Friend Bow is equipped
+     * @return the chances in percent, {@code MAX_LEVEL} per entry and indexed
+     * by {@code entry * MAX_LEVEL + level - 1}.
+     */
+    public float[] evaluate(List<DungeonPokemon.Entry> entries, boolean friendBow) {
+        int bonus = friendBow ? FRIEND_BOW_BONUS : 0;
+        float[] ret = new float[entries.size() * MAX_LEVEL];
+        
+        for (int e = 0 ; e < entries.size() ; e++) {
+            int base = getRecruitRate(entries.get(e).species) + bonus;
+            int row = e * MAX_LEVEL;
+            for (int level = 1 ; level <= MAX_LEVEL ; level++)
+                ret[row + level - 1] = Math.max(0, Math.min(base + LEVEL_FACTORS[level], 1000)) / 10F;
+        }
+        
+        return ret;
+    }
+    
+    /**
+     * Summarizes how quickly every species of a dungeon can be recruited. A
+     * floor's chance is the probability that at least one of its spawns is
+     * recruited when all of them are defeated. The expected floors count every
+     * floor cleared until the first recruitment, restarting the dungeon after
+     * each failed run.
+     * @param dungeon the dungeon
+     * @param level the player's level
+     * @param friendBow whether the Friend Bow is equipped
+     * @return the summaries in order of first appearance.
+     */
+    public List<Summary> summarize(Dungeon dungeon, int level, boolean friendBow) {
+        long start = Diagnostics.begin();
+        int floorCount = Math.max(dungeon.floors.size() - 1, 0);
+        Map<Integer, double[]> perFloor = new LinkedHashMap();
+        
+        for (int f = 1 ; f < dungeon.floors.size() ; f++) {
+            Floor floor = dungeon.floors.get(f);
+            if (floor.pokemon >= rom.dungeonPokemon.size() || floor.layout >= rom.dungeonLayouts.size())
+                continue;
+            DungeonPokemon pokemon = rom.dungeonPokemon.get(floor.pokemon);
+            DungeonLayout layout = rom.dungeonLayouts.get(floor.layout);
+            float[] chances = evaluate(pokemon.entries, friendBow);
+            
+            // Chance that a single spawn is a recruited member of the species
+            Map<Integer, Double> single = new LinkedHashMap();
+            for (int e = 0 ; e < pokemon.entries.size() ; e++) {
+                DungeonPokemon.Entry entry = pokemon.entries.get(e);
+                if (entry.probability <= 0)
+                    continue;
+                double p = entry.probability / 10000.0 * chances[e * MAX_LEVEL + Math.max(1, Math.min(level, MAX_LEVEL)) - 1] / 100.0;
+                single.merge(entry.species, p, Double::sum);
+            }
+            
+            for (Map.Entry<Integer, Double> entry : single.entrySet()) {
+                double[] floors = perFloor.get(entry.getKey());
+                if (floors == null)
+                    perFloor.put(entry.getKey(), floors = new double[floorCount]);
+                floors[f - 1] = 1 - Math.pow(1 - Math.min(entry.getValue(), 1), layout.pokemonDensity);
+            }
+        }
+        
+        List<Summary> ret = new ArrayList();
+        for (Map.Entry<Integer, double[]> entry : perFloor.entrySet()) {
+            double[] floors = entry.getValue();
+            int present = 0;
+            double best = 0, missed = 1, visited = 0;
+            for (double chance : floors) {
+                if (chance > 0)
+                    present++;
+                best = Math.max(best, chance);
+                visited += missed;
+                missed *= 1 - chance;
+            }
+            double expected = missed < 1 ? visited / (1 - missed) : Double.POSITIVE_INFINITY;
+            ret.add(new Summary(entry.getKey(), present, best, expected));
+        }
+        
+        Diagnostics.end("RecruitmentEngine.summarize", start);
+        return ret;
+    }
+    
+    /**
+     * Returns the recruit rate of a species.
+     * @param species the species ID
+     * @return the recruit rate or {@code Short.MIN_VALUE} for invalid IDs.
+     */
+    public int getRecruitRate(int species) {
+        return species >= 0 && species < recruitRates.length ? recruitRates[species] : Short.MIN_VALUE;
+    }
+}
\ No newline at end of file
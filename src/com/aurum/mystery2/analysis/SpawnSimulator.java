@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.analysis;
+
+import com.aurum.mystery2.Diagnostics;
+import com.aurum.mystery2.game.Dungeon;
+import com.aurum.mystery2.game.DungeonLayout;
+import com.aurum.mystery2.game.DungeonPokemon;
+import com.aurum.mystery2.game.DungeonTraps;
+import com.aurum.mystery2.game.Floor;
+import com.aurum.mystery2.game.RomFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Samples floor spawns of a dungeon from its Pokémon and trap tables. Every
+ * floor draws as many Pokémon and traps as its layout's densities specify.
+ * Work is split into fixed-size chunks with their own random streams that are
+ * derived from the seed up front, so a seed always yields the same histograms
+ * regardless of the number of threads.
+ */
+public class SpawnSimulator {
+    public static class FloorResult {
+        public final int floor;
+        public final DungeonPokemon pokemon;
+        public final DungeonTraps traps;
+        public final long[] entryCounts, trapCounts;
+        public long samples, pokemonSpawns, trapSpawns;
+        
+        private FloorResult(int floor, DungeonPokemon pokemon, DungeonTraps traps) {
+            this.floor = floor;
+            this.pokemon = pokemon;
+            this.traps = traps;
+            this.entryCounts = new long[pokemon != null ? pokemon.entries.size() : 0];
+            this.trapCounts = new long[traps != null ? traps.traps.length : 0];
+        }
+        
+        /**
+         * Sums the spawns of all entries by species.
+         * @return the spawns per species ID.
+         */
+        public Map<Integer, Long> getSpeciesCounts() {
+            Map<Integer, Long> ret = new TreeMap();
+            for (int i = 0 ; i < entryCounts.length ; i++)
+                ret.merge(pokemon.entries.get(i).species, entryCounts[i], Long::sum);
+            return ret;
+        }
+        
+        /**
+         * Sums the spawns of all entries by level.
+         * @return the spawns per level.
+         */
+        public Map<Integer, Long> getLevelCounts() {
+            Map<Integer, Long> ret = new TreeMap();
+            for (int i = 0 ; i < entryCounts.length ; i++)
+                ret.merge(pokemon.entries.get(i).level, entryCounts[i], Long::sum);
+            return ret;
+        }
+        
+        private void add(FloorResult other) {
+            for (int i = 0 ; i < entryCounts.length ; i++)
+                entryCounts[i] += other.entryCounts[i];
+            for (int i = 0 ; i < trapCounts.length ; i++)
+                trapCounts[i] += other.trapCounts[i];
+            samples += other.samples;
+            pokemonSpawns += other.pokemonSpawns;
+            trapSpawns += other.trapSpawns;
+        }
+    }
+    
+    // Static fields
+    public static final int CHUNK_SIZE = 8192;
+    
+    private final RomFile rom;
+    
+    public SpawnSimulator(RomFile rom) {
+        this.rom = rom;
+    }
+    
+    /**
+     * Simulates {@code samples} spawns of every floor of a dungeon.
+     * @param dungeon the dungeon
+     * @param samples the number of generated floors per floor entry
+     * @param seed the seed of the random streams
+     * @return the histograms of every floor, excluding the unused floor 0.
+     * @throws InterruptedException if the calling thread was interrupted
+     */
+    public List<FloorResult> simulate(Dungeon dungeon, int samples, long seed) throws InterruptedException {
+        long start = Diagnostics.begin();
+        SplittableRandom root = new SplittableRandom(seed);
+        List<FloorResult> results = new ArrayList();
+        List<List<Future<FloorResult>>> pending = new ArrayList();
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        
+        try {
+            for (int f = 1 ; f < dungeon.floors.size() ; f++) {
+                Floor floor = dungeon.floors.get(f);
+                DungeonLayout layout = get(rom.dungeonLayouts, floor.layout);
+                DungeonPokemon pokemon = get(rom.dungeonPokemon, floor.pokemon);
+                DungeonTraps traps = get(rom.dungeonTraps, floor.traps);
+                
+                AliasSampler pokemonSampler = pokemon != null ? AliasSampler.build(probabilities(pokemon)) : null;
+                AliasSampler trapSampler = traps != null ? AliasSampler.build(traps.traps) : null;
+                int pokemonDensity = layout != null && pokemonSampler != null ? layout.pokemonDensity : 0;
+                int trapDensity = layout != null && trapSampler != null ? layout.trapDensity : 0;
+                
+                results.add(new FloorResult(f, pokemon, traps));
+                List<Future<FloorResult>> chunks = new ArrayList();
+                for (int done = 0 ; done < samples ; done += CHUNK_SIZE) {
+                    final int floorIndex = f, count = Math.min(CHUNK_SIZE, samples - done);
+                    final SplittableRandom random = root.split();
+                    chunks.add(pool.submit(() -> {
+                        FloorResult chunk = new FloorResult(floorIndex, pokemon, traps);
+                        for (int s = 0 ; s < count ; s++) {
+                            for (int i = 0 ; i < pokemonDensity ; i++)
+                                chunk.entryCounts[pokemonSampler.sample(random)]++;
+                            for (int i = 0 ; i < trapDensity ; i++)
+                                chunk.trapCounts[trapSampler.sample(random)]++;
+                        }
+                        chunk.samples = count;
+                        chunk.pokemonSpawns = (long) count * pokemonDensity;
+                        chunk.trapSpawns = (long) count * trapDensity;
+                        return chunk;
+                    }));
+                }
+                pending.add(chunks);
+            }
+            
+            for (int i = 0 ; i < results.size() ; i++) {
+                for (Future<FloorResult> chunk : pending.get(i))
+                    results.get(i).add(chunk.get());
+            }
+        }
+        catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        
+        Diagnostics.end("SpawnSimulator.simulate", start);
+        return results;
+    }
+    
+    private static int[] probabilities(DungeonPokemon pokemon) {
+        int[] ret = new int[pokemon.entries.size()];
+        for (int i = 0 ; i < ret.length ; i++)
+            ret[i] = pokemon.entries.get(i).probability;
+        return ret;
+    }
+    
+    private static <T> T get(List<T> list, int index) {
+        return index >= 0 && index < list.size() ? list.get(index) : null;
+    }
+}
\ No newline at end of file
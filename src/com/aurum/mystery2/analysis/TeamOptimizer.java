@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.analysis;
+
+import com.aurum.mystery2.Diagnostics;
+import com.aurum.mystery2.game.Dungeon;
+import com.aurum.mystery2.game.DungeonPokemon;
+import com.aurum.mystery2.game.Floor;
+import com.aurum.mystery2.game.Pokemon;
+import com.aurum.mystery2.game.RomFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Searches starter x partner pairs for the best type matchup against the
+ * species that spawn in a set of dungeons. Each candidate gets two bitsets
+ * over those enemies: the enemies its own types hit super effectively and the
+ * enemies whose types hit it super effectively. A pair scores two points per
+ * covered enemy, loses two per enemy that threatens both members and one per
+ * weakness of either member. Pairs are visited in order of an upper bound of
+ * their score, so most of them are never scored at all.
+ */
+public class TeamOptimizer {
+    public static class Pair {
+        public final int starter, partner, score, covered, shared;
+        
+        private Pair(int starter, int partner, int score, int covered, int shared) {
+            this.starter = starter;
+            this.partner = partner;
+            this.score = score;
+            this.covered = covered;
+            this.shared = shared;
+        }
+    }
+    
+    private static final Comparator<Pair> ORDER = Comparator.comparingInt((Pair p) -> p.score).thenComparingInt((Pair p) -> -p.starter).thenComparingInt((Pair p) -> -p.partner);
+    
+    private final List<Pokemon> pokemon;
+    private final int[] enemies;
+    private final int words;
+    
+    /**
+     * Collects the enemies of the given dungeons.
+     * @param rom the ROM with loaded Pokémon and dungeons
+     * @param dungeons the indices of the dungeons to consider
+     */
+    public TeamOptimizer(RomFile rom, int[] dungeons) {
+        this.pokemon = rom.pokemon;
+        
+        Set<Integer> species = new LinkedHashSet();
+        for (int index : dungeons) {
+            Dungeon dungeon = rom.dungeons.get(index);
+            for (int f = 1 ; f < dungeon.floors.size() ; f++) {
+                Floor floor = dungeon.floors.get(f);
+                if (floor.pokemon >= rom.dungeonPokemon.size())
+                    continue;
+                for (DungeonPokemon.Entry entry : rom.dungeonPokemon.get(floor.pokemon).entries) {
+                    if (entry.probability > 0 && entry.species < pokemon.size())
+                        species.add(entry.species);
+                }
+            }
+        }
+        
+        this.enemies = new int[species.size()];
+        int i = 0;
+        for (int s : species)
+            enemies[i++] = s;
+        this.words = (enemies.length + 63) / 64;
+    }
+    
+    public int getEnemyCount() {
+        return enemies.length;
+    }
+    
+    /**
+     * Finds the best pairs.
+     * @param starters the candidate starters
+     * @param partners the candidate partners
+     * @param count the number of pairs to return
+     * @return the best pairs, best first.
+     */
+    public List<Pair> search(int[] starters, int[] partners, int count) {
+        long start = Diagnostics.begin();
+        
+        // Bitsets of every candidate, indexed by species
+        long[][] cover = new long[pokemon.size()][];
+        long[][] weak = new long[pokemon.size()][];
+        for (int s : concat(starters, partners)) {
+            if (cover[s] == null) {
+                cover[s] = coverage(s);
+                weak[s] = weaknesses(s);
+            }
+        }
+        
+        // Partners sorted by the best score they could contribute on their own
+        Integer[] sorted = new Integer[partners.length];
+        for (int i = 0 ; i < sorted.length ; i++)
+            sorted[i] = partners[i];
+        Arrays.sort(sorted, Comparator.comparingInt((Integer p) -> -bound(cover[p], weak[p])));
+        
+        List<PriorityQueue<Pair>> results = IntStream.range(0, starters.length).parallel().mapToObj((int i) -> {
+            int a = starters[i];
+            int boundA = bound(cover[a], weak[a]);
+            PriorityQueue<Pair> best = new PriorityQueue(ORDER);
+            
+            for (int b : sorted) {
+                if (b == a)
+                    continue;
+                if (best.size() >= count && Math.min(boundA + bound(cover[b], weak[b]), 2 * enemies.length) < best.peek().score)
+                    break;
+                
+                int covered = 0, shared = 0;
+                for (int w = 0 ; w < words ; w++) {
+                    covered += Long.bitCount(cover[a][w] | cover[b][w]);
+                    shared += Long.bitCount(weak[a][w] & weak[b][w]);
+                }
+                int score = 2 * covered - 2 * shared - count(weak[a]) - count(weak[b]);
+                
+                best.add(new Pair(a, b, score, covered, shared));
+                if (best.size() > count)
+                    best.poll();
+            }
+            return best;
+        }).collect(Collectors.toList());
+        
+        List<Pair> ret = new ArrayList();
+        for (PriorityQueue<Pair> best : results)
+            ret.addAll(best);
+        Collections.sort(ret, ORDER.reversed());
+        if (ret.size() > count)
+            ret = new ArrayList(ret.subList(0, count));
+        
+        Diagnostics.end("TeamOptimizer.search", start);
+        return ret;
+    }
+    
+    private long[] coverage(int species) {
+        Pokemon mon = pokemon.get(species);
+        long[] ret = new long[words];
+        for (int e = 0 ; e < enemies.length ; e++) {
+            Pokemon enemy = pokemon.get(enemies[e]);
+            if (hitsHard(mon.type1, enemy) || hitsHard(mon.type2, enemy))
+                ret[e >> 6] |= 1L << e;
+        }
+        return ret;
+    }
+    
+    private long[] weaknesses(int species) {
+        Pokemon mon = pokemon.get(species);
+        long[] ret = new long[words];
+        for (int e = 0 ; e < enemies.length ; e++) {
+            Pokemon enemy = pokemon.get(enemies[e]);
+            if (hitsHard(enemy.type1, mon) || hitsHard(enemy.type2, mon))
+                ret[e >> 6] |= 1L << e;
+        }
+        return ret;
+    }
+    
+    private static boolean hitsHard(int type, Pokemon target) {
+        if (type == 0)
+            return false;
+        float multiplier = DamageMatrix.MULTIPLIERS[DamageMatrix.getEffectiveness(type, target.type1)];
+        if (target.type2 != 0 && target.type2 != target.type1)
+            multiplier *= DamageMatrix.MULTIPLIERS[DamageMatrix.getEffectiveness(type, target.type2)];
+        return multiplier > 1;
+    }
+    
+    private static int bound(long[] cover, long[] weak) {
+        // Assumes the other member neither overlaps in coverage nor shares a weakness
+        return 2 * count(cover) - count(weak);
+    }
+    
+    private static int count(long[] bits) {
+        int ret = 0;
+        for (long word : bits)
+            ret += Long.bitCount(word);
+        return ret;
+    }
+    
+    private static int[] concat(int[] a, int[] b) {
+        int[] ret = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, ret, a.length, b.length);
+        return ret;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2.compression;
+
+import com.aurum.mystery2.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The LZ77 format of the GBA BIOS (type 0x10). A four byte header holds the
+ * type and the decompressed size, followed by groups of eight tokens behind a
+ * flag byte. A token is either a literal byte or a two byte reference to 3 to
+ * 18 earlier bytes at a distance of up to 4096.
+ */
+public class Lz77 {
+    // Static fields
+    public static final int TYPE = 0x10;
+    public static final int MIN_MATCH = 3, MAX_MATCH = 18, WINDOW = 0x1000;
+    
+    private static final int HASH_BITS = 14;
+    private static final int MAX_CHAIN = 256;
+    private static final int LITERAL_COST = 9, MATCH_COST = 17;
+    
+    /**
+     * Decompresses the data at the position of a buffer. The position is moved
+     * behind the compressed data.
+     * @param buffer the buffer
+     * @return the decompressed bytes.
+     * @throws IllegalArgumentException if the data is no valid LZ77 data.
+     */
+    public static byte[] decompress(ByteBuffer buffer) {
+        int start = buffer.position();
+        int header = buffer.readInt();
+        if ((header & 0xFF) != TYPE)
+            throw new IllegalArgumentException(String.format("no LZ77 data at 0x%08X", start));
+        
+        byte[] out = new byte[header >>> 8];
+        int n = 0;
+        while (n < out.length) {
+            if (buffer.remaining() == 0)
+                throw new IllegalArgumentException(String.format("LZ77 data at 0x%08X is truncated", start));
+            int flags = buffer.readByte() & 0xFF;
+            
+            for (int bit = 0x80 ; bit != 0 && n < out.length ; bit >>= 1) {
+                if ((flags & bit) == 0) {
+                    out[n++] = buffer.readByte();
+                    continue;
+                }
+                
+                int hi = buffer.readByte() & 0xFF, lo = buffer.readByte() & 0xFF;
+                int length = (hi >> 4) + MIN_MATCH;
+                int from = n - (((hi & 0xF) << 8 | lo) + 1);
+                if (from < 0)
+                    throw new IllegalArgumentException(String.format("LZ77 data at 0x%08X refers before its start", start));
+                
+                // References may overlap the bytes they produce, so they are copied one by one
+                for (int end = Math.min(n + length, out.length) ; n < end ; )
+                    out[n++] = out[from++];
+            }
+        }
+        return out;
+    }
+    
+    /**
+     * Decompresses the data at an offset of a buffer.
+     * @param buffer the buffer
+     * @param offset the offset of the header
+     * @return the decompressed bytes.
+     * @throws IllegalArgumentException if the data is no valid LZ77 data.
+     */
+    public static byte[] decompressAt(ByteBuffer buffer, int offset) {
+        int pos = buffer.position();
+        buffer.seek(offset);
+        try {
+            return decompress(buffer);
+        }
+        finally {
+            buffer.seek(pos);
+        }
+    }
+    
+    /**
+     * Compresses data with the shortest possible encoding. References never
+     * point to the previous byte, so the result can also be decompressed
+     * straight to VRAM, and the result is padded to a multiple of four bytes.
+     * @param data the data, at most 16 MiB
+     * @return the compressed bytes.
+     */
+    public static byte[] compress(byte[] data) {
+        int n = data.length;
+        if (n >= 1 << 24)
+            throw new IllegalArgumentException("data too large: " + n);
+        
+        // Longest match at every position, found through hash chains
+        int[] matchLength = new int[n], matchDistance = new int[n];
+        int[] head = new int[1 << HASH_BITS];
+        int[] prev = new int[n];
+        Arrays.fill(head, -1);
+        
+        for (int i = 0 ; i + MIN_MATCH <= n ; i++) {
+            int hash = hash(data, i);
+            int max = Math.min(MAX_MATCH, n - i);
+            int best = 0, distance = 0;
+            
+            for (int j = head[hash], chain = 0 ; j >= 0 && i - j <= WINDOW && chain < MAX_CHAIN ; j = prev[j], chain++) {
+                // A distance of one would read a half-written halfword in VRAM
+                if (i - j < 2 || data[j + best] != data[i + best])
+                    continue;
+                int length = 0;
+                while (length < max && data[j + length] == data[i + length])
+                    length++;
+                if (length > best) {
+                    best = length;
+                    distance = i - j;
+                    if (length == max)
+                        break;
+                }
+            }
+            if (best >= MIN_MATCH) {
+                matchLength[i] = best;
+                matchDistance[i] = distance;
+            }
+            prev[i] = head[hash];
+            head[hash] = i;
+        }
+        
+        // Cheapest encoding of every suffix, in bits; any prefix of a match is a match too
+        int[] cost = new int[n + 1], choice = new int[n];
+        for (int i = n - 1 ; i >= 0 ; i--) {
+            cost[i] = cost[i + 1] + LITERAL_COST;
+            choice[i] = 1;
+            for (int length = MIN_MATCH ; length <= matchLength[i] ; length++) {
+                if (cost[i + length] + MATCH_COST < cost[i]) {
+                    cost[i] = cost[i + length] + MATCH_COST;
+                    choice[i] = length;
+                }
+            }
+        }
+        
+        // Write the tokens
+        byte[] out = new byte[4 + n + (n + 7) / 8 + 3];
+        out[0] = TYPE;
+        out[1] = (byte) n;
+        out[2] = (byte) (n >> 8);
+        out[3] = (byte) (n >> 16);
+        int o = 4, flagPos = 0, bit = 0;
+        
+        for (int i = 0 ; i < n ; ) {
+            if (bit == 0) {
+                flagPos = o++;
+                out[flagPos] = 0;
+                bit = 0x80;
+            }
+            int length = choice[i];
+            if (length == 1)
+                out[o++] = data[i];
+            else {
+                int disp = matchDistance[i] - 1;
+                out[flagPos] |= bit;
+                out[o++] = (byte) ((length - MIN_MATCH) << 4 | disp >> 8);
+                out[o++] = (byte) disp;
+            }
+            i += length;
+            bit >>= 1;
+        }
+        return Arrays.copyOf(out, (o + 3) & ~3);
+    }
+    
+    /**
+     * Compresses independent blocks in parallel.
+     * @param blocks the blocks
+     * @return the compressed blocks, in the same order.
+     */
+    public static List<byte[]> compressAll(List<byte[]> blocks) {
+        return blocks.parallelStream().map(Lz77::compress).collect(Collectors.toList());
+    }
+    
+    private static int hash(byte[] data, int i) {
+        int key = (data[i] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF);
+        return (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+}
\ No newline at end of file
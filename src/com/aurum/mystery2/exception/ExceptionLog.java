@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.exception;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A bounded log of uncaught exceptions. Exceptions with the same stack
+ * signature are merged into a single entry with a counter. Formatting happens
+ * on a background thread so that reporting is cheap for the caller; if that
+ * thread falls behind, further exceptions are only counted.
+ */
+public class ExceptionLog {
+    public static class Entry {
+        public final String signature, title, text;
+        public volatile int count;
+        public volatile long first, last;
+        
+        private Entry(String signature, String title, String text) {
+            this.signature = signature;
+            this.title = title;
+            this.text = text;
+        }
+        
+        @Override
+        public String toString() {
+            return count + "x " + title;
+        }
+    }
+    
+    // Static fields
+    public static final int CAPACITY = 64;
+    public static final int MAX_PENDING = 256;
+    
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap();
+    private static volatile long version, dropped;
+    private static final ExecutorService formatter = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue(MAX_PENDING), (Runnable r) -> {
+        Thread t = new Thread(r, "Exception formatter");
+        t.setDaemon(true);
+        return t;
+    }, (Runnable r, ThreadPoolExecutor executor) -> {
+        synchronized (entries) {
+            dropped++;
+            version++;
+        }
+    });
+    private static volatile Consumer<Entry> listener;
+    
+    /**
+     * Queues an exception for formatting and aggregation. While
+     * {@link #MAX_PENDING} exceptions are waiting, further ones are only
+     * counted as dropped.
+     * @param t the thread that threw the exception
+     * @param e the exception
+     */
+    public static void report(Thread t, Throwable e) {
+        final String thread = t.getName();
+        final long time = System.currentTimeMillis();
+        formatter.execute(() -> { add(thread, e, time); });
+    }
+    
+    /**
+     * Sets the listener that is called on the formatting thread whenever an
+     * exception with a new signature was logged.
+     * @param l the listener or {@code null}
+     */
+    public static void setListener(Consumer<Entry> l) {
+        listener = l;
+    }
+    
+    /**
+     * Returns a number that changes whenever the log changes.
+     * @return the version number.
+     */
+    public static long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Returns the number of exceptions that were not logged because too many
+     * were waiting to be formatted.
+     * @return the number of dropped exceptions.
+     */
+    public static long getDropped() {
+        return dropped;
+    }
+    
+    /**
+     * Returns a snapshot of the logged entries, most recent last.
+     * @return the entries.
+     */
+    public static List<Entry> getEntries() {
+        synchronized (entries) {
+            return new ArrayList(entries.values());
+        }
+    }
+    
+    /**
+     * Removes all entries.
+     */
+    public static void clear() {
+        synchronized (entries) {
+            entries.clear();
+            dropped = 0;
+            version++;
+        }
+    }
+    
+    private static String getSignature(Throwable e) {
+        StringBuilder sb = new StringBuilder();
+        for (Throwable cause = e ; cause != null ; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            sb.append(cause.getClass().getName()).append('\n');
+            for (StackTraceElement element : cause.getStackTrace())
+                sb.append(element).append('\n');
+        }
+        return sb.toString();
+    }
+    
+    private static void add(String thread, Throwable e, long time) {
+        String signature = getSignature(e);
+        Entry entry;
+        boolean added = false;
+        
+        synchronized (entries) {
+            // Re-inserting moves the entry to the end, so the eldest one is evicted first
+            entry = entries.remove(signature);
+            if (entry == null) {
+                StringWriter sw = new StringWriter();
+                e.printStackTrace(new PrintWriter(sw, true));
+                entry = new Entry(signature, e.getClass().getSimpleName() + ": " + e.getMessage() + " [" + thread + ']', sw.toString());
+                entry.first = time;
+                added = true;
+            }
+            entry.count++;
+            entry.last = time;
+            entries.put(signature, entry);
+            
+            Iterator<String> it = entries.keySet().iterator();
+            while (entries.size() > CAPACITY) {
+                it.next();
+                it.remove();
+            }
+            version++;
+        }
+        
+        if (added) {
+            System.err.println("Exception in thread " + thread);
+            System.err.print(entry.text);
+            
+            Consumer<Entry> l = listener;
+            if (l != null)
+                l.accept(entry);
+        }
+    }
+}
\ No newline at end of file
@@ -18,42 +18,138 @@
 package com.aurum.mystery2.exception;
 
 import com.aurum.mystery2.Main;
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.awt.BorderLayout;
+import java.awt.EventQueue;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
 import javax.swing.JTextArea;
+import javax.swing.JToolBar;
+import javax.swing.ListSelectionModel;
+import javax.swing.Timer;
 
 public class UncaughtExceptionHandler implements Thread.UncaughtExceptionHandler {
+    private final AtomicBoolean showPending = new AtomicBoolean();
+    private UncaughtExceptionForm form;
+    
+    public UncaughtExceptionHandler() {
+        // Only new kinds of exceptions bring the window up, repeats just bump the counter
+        ExceptionLog.setListener((ExceptionLog.Entry entry) -> {
+            if (showPending.compareAndSet(false, true))
+                EventQueue.invokeLater(this::showForm);
+        });
+    }
+    
     @Override
     public void uncaughtException(Thread t, Throwable e) {
-        String thread = "Exception in thread " + t.getName();
-        System.err.println(thread);
-        e.printStackTrace(System.err);
-        
-        new UncaughtExceptionForm(t, e).setVisible(true);
+        ExceptionLog.report(t, e);
+    }
+    
+    private void showForm() {
+        showPending.set(false);
+        if (form == null || !form.isDisplayable())
+            form = new UncaughtExceptionForm();
+        form.setVisible(true);
+        form.refresh();
     }
     
     private final class UncaughtExceptionForm extends JFrame {
-        public UncaughtExceptionForm(Thread t, Throwable e) {
-            JScrollPane pane = new JScrollPane();
-            JTextArea text = new JTextArea();
+        private final DefaultListModel<ExceptionLog.Entry> model = new DefaultListModel();
+        private final JList<ExceptionLog.Entry> list = new JList(model);
+        private final JTextArea text = new JTextArea();
+        private final JLabel status = new JLabel(" ");
+        private final Timer refresher;
+        private long version = -1;
+        
+        public UncaughtExceptionForm() {
+            list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+            list.addListSelectionListener((javax.swing.event.ListSelectionEvent evt) -> {
+                if (!evt.getValueIsAdjusting())
+                    showSelected();
+            });
+            text.setEditable(false);
             
-            final StringWriter sw = new StringWriter();
-            final PrintWriter pw = new PrintWriter(sw, true);
-            e.printStackTrace(pw);
+            JButton clear = new JButton("Clear");
+            clear.addActionListener((java.awt.event.ActionEvent evt) -> {
+                ExceptionLog.clear();
+                refresh();
+            });
+            JToolBar toolbar = new JToolBar();
+            toolbar.setFloatable(false);
+            toolbar.setRollover(true);
+            toolbar.add(clear);
             
-            text.setText(sw.getBuffer().toString());
-            text.setEditable(false);
-            text.setCaretPosition(0);
-            pane.setViewportView(text);
+            JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(list), new JScrollPane(text));
+            split.setDividerLocation(180);
             
-            this.setResizable(false);
             this.setIconImage(Main.icon);
-            this.setTitle(Main.name);
+            this.setTitle(Main.name + " - Errors");
+            this.setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+            this.getContentPane().setLayout(new BorderLayout());
+            this.getContentPane().add(toolbar, BorderLayout.NORTH);
+            this.getContentPane().add(split, BorderLayout.CENTER);
+            this.getContentPane().add(status, BorderLayout.SOUTH);
             this.setSize(600, 700);
             this.setLocationRelativeTo(null);
-            this.add(pane);
+            
+            // Bursts of exceptions are coalesced into at most two repaints per second
+            refresher = new Timer(500, (java.awt.event.ActionEvent evt) -> {
+                refresh();
+            });
+            refresher.start();
+        }
+        
+        @Override
+        public void dispose() {
+            refresher.stop();
+            super.dispose();
+        }
+        
+        private void refresh() {
+            long current = ExceptionLog.getVersion();
+            if (current == version)
+                return;
+            version = current;
+            
+            ExceptionLog.Entry selected = list.getSelectedValue();
+            List<ExceptionLog.Entry> entries = ExceptionLog.getEntries();
+            int total = 0;
+            
+            model.clear();
+            for (int i = entries.size() - 1 ; i >= 0 ; i--) {
+                ExceptionLog.Entry entry = entries.get(i);
+                model.addElement(entry);
+                total += entry.count;
+            }
+            
+            if (selected != null && model.contains(selected))
+                list.setSelectedValue(selected, true);
+            else if (!model.isEmpty())
+                list.setSelectedIndex(0);
+            else
+                text.setText("");
+            list.repaint();
+            
+            long dropped = ExceptionLog.getDropped();
+            status.setText(total + " exception(s), " + entries.size() + " distinct" + (dropped > 0 ? ", " + dropped + " more not logged" : ""));
+        }
+        
+        private void showSelected() {
+            ExceptionLog.Entry entry = list.getSelectedValue();
+            if (entry == null)
+                return;
+            
+            SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss");
+            text.setText("Occurred " + entry.count + " time(s), first at " + format.format(new Date(entry.first)) + ", last at " + format.format(new Date(entry.last)) + "\n\n" + entry.text);
+            text.setCaretPosition(0);
         }
     }
 }
\ No newline at end of file
@@ -31,6 +31,7 @@ public class DungeonPokemon implements Cloneable {
     
     // Other fields
     public int offset;
+    int allocated;
     
     // Static fields
     public static final int SIZE = 0x8;
@@ -104,6 +105,7 @@ public class DungeonPokemon implements Cloneable {
             buffer.skip(0x4);
             storedoffset = buffer.position();
         }
+        pokemon.allocated = buffer.position() - pokemon.offset;
         
         return pokemon;
     }
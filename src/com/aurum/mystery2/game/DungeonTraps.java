@@ -29,6 +29,10 @@ public class DungeonTraps implements Cloneable {
     
     // Static fields
     public static final int SIZE = 0x28;
+    public static final String[] NAMES = {
+        "Trip trap", "Mud trap", "Sticky trap", "Grimy trap", "Summon trap", "Pitfall trap", "Warp trap", "Gust trap", "Spin trap", "Slumber trap",
+        "Slow trap", "Seal trap", "Poison trap", "Selfdestruct trap", "Explosion trap", "PP-Zero trap", "Chestnut trap", "Wonder trap", "Pokémon trap", "Spiked trap"
+    };
     
     @Override
     public Object clone() {
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2.game;
+
+import com.aurum.mystery2.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A map of the unused regions of a ROM with a best-fit allocator. Regions are
+ * found by scanning for long runs of 0xFF or 0x00 bytes, and data that is
+ * moved elsewhere gives its old region back to the map.
+ */
+public class FreeSpace {
+    // Static fields
+    public static final int MIN_RUN = 0x100;
+    public static final int MIN_ZERO_RUN = 0x400;
+    public static final int GUARD = 0x10;
+    
+    // Fields
+    private final TreeMap<Integer, Integer> regions = new TreeMap();
+    private final TreeSet<Long> bySize = new TreeSet();
+    
+    /**
+     * Finds the free regions of a buffer. A run does not count as free if a
+     * pointer refers into it, as it is most likely a table of empty entries,
+     * and runs of zeros must be longer than runs of 0xFF. A few bytes are left
+     * at the start of each run in case they end the data before it.
+     * @param buffer the ROM bytes
+     * @param index the pointers of the ROM, or {@code null}
+     * @return the free space map.
+     */
+    public static FreeSpace scan(ByteBuffer buffer, PointerIndex index) {
+        FreeSpace ret = new FreeSpace();
+        byte[] bytes = buffer.getBuffer();
+        int size = buffer.size();
+        
+        for (int i = 0 ; i < size ; ) {
+            byte b = bytes[i];
+            if (b != (byte) 0xFF && b != 0x00) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < size && bytes[i] == b)
+                i++;
+            if (i - start < (b == 0x00 ? MIN_ZERO_RUN : MIN_RUN))
+                continue;
+            if (index != null && index.getReferences(start, i).length > 0)
+                continue;
+            
+            ret.add((start + GUARD + 3) & ~3, i);
+        }
+        return ret;
+    }
+    
+    /**
+     * Creates a copy of this map, so that allocations can be tried without
+     * changing this map.
+     * @return the copy.
+     */
+    public synchronized FreeSpace copy() {
+        FreeSpace ret = new FreeSpace();
+        ret.regions.putAll(regions);
+        ret.bySize.addAll(bySize);
+        return ret;
+    }
+    
+    /**
+     * Takes the smallest free region that can hold the requested bytes.
+     * @param size the number of bytes
+     * @param align the alignment of the returned offset, a power of two
+     * @return the offset of the allocated bytes, or -1 if no region is large
+     * enough.
+     */
+    public synchronized int allocate(int size, int align) {
+        // Padding for the alignment may make the first candidate too small
+        for (Long key : bySize.tailSet((long) size << 32)) {
+            int start = (int) (long) key;
+            int end = regions.get(start);
+            int offset = (start + align - 1) & -align;
+            if (end - offset < size)
+                continue;
+            
+            remove(start);
+            if (offset > start)
+                add(start, offset);
+            if (offset + size < end)
+                add(offset + size, end);
+            return offset;
+        }
+        return -1;
+    }
+    
+    /**
+     * Gives a region back to the map, merging it with its neighbours.
+     * @param start the offset of the region
+     * @param size the number of bytes
+     */
+    public synchronized void free(int start, int size) {
+        int end = start + size;
+        
+        Map.Entry<Integer, Integer> prev = regions.floorEntry(start);
+        if (prev != null && prev.getValue() >= start) {
+            start = prev.getKey();
+            end = Math.max(end, prev.getValue());
+            remove(prev.getKey());
+        }
+        Map.Entry<Integer, Integer> next;
+        while ((next = regions.ceilingEntry(start)) != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            remove(next.getKey());
+        }
+        add(start, end);
+    }
+    
+    /**
+     * Returns the number of free bytes.
+     * @return the total size of all free regions.
+     */
+    public synchronized int getTotal() {
+        int total = 0;
+        for (Map.Entry<Integer, Integer> region : regions.entrySet())
+            total += region.getValue() - region.getKey();
+        return total;
+    }
+    
+    /**
+     * Returns the size of the largest free region.
+     * @return the largest size that can be allocated.
+     */
+    public synchronized int getLargest() {
+        return bySize.isEmpty() ? 0 : (int) (bySize.last() >>> 32);
+    }
+    
+    private void add(int start, int end) {
+        regions.put(start, end);
+        bySize.add((long) (end - start) << 32 | start);
+    }
+    
+    private void remove(int start) {
+        int end = regions.remove(start);
+        bySize.remove((long) (end - start) << 32 | start);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,544 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2.game;
+
+import com.aurum.mystery2.BitConverter;
+import com.aurum.mystery2.ByteBuffer;
+import com.aurum.mystery2.Diagnostics;
+import com.aurum.mystery2.compression.Lz77;
+import com.aurum.mystery2.graphics.Tiles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the offsets of the data tables in ROM builds that are missing from the
+ * offset file. Every table is recognized by its structure, for example records
+ * whose string pointers resolve to text or spawn lists whose cumulative chances
+ * end at 10000. Apart from the starter lists, a table must also start at an
+ * offset that a pointer refers to. Offsets with no or several candidates are
+ * left out of the result.
+ */
+public class OffsetFinder {
+    // Static fields
+    public static final List<String> KEYS = Arrays.asList(
+        "dungeonPointerOffset", "pokemonPointerOffset", "itemPointerOffset", "dungeonMainOffset",
+        "dungeonFloorsPointerOffset", "dungeonMapOffset", "pokemonStartersOffset", "pokemonPartnersOffset",
+        "exclusivePokemonOffset", "areasTextOffset", "areasMainOffset", "movesOffset", "moneyOffset"
+    );
+    public static final List<String> GRAPHICS_KEYS = Arrays.asList(
+        "tilesetGraphicsPointerOffset", "tilesetPalettePointerOffset", "itemIconsOffset", "itemPalettesOffset"
+    );
+    
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int MAX_TILESET_SIZE = 0x10000;
+    private static final int LITERAL_DISTANCE = 0x40;
+    private static final int MAX_TEXT = 0x200;
+    private static final int SPECIES = 424;
+    
+    // Fields
+    private final byte[] bytes;
+    private final int size;
+    private final PointerIndex index;
+    private final boolean[] text;
+    private final BitSet referenced;
+    private final int[] sources;
+    private final Map<String, Integer> offsets = new LinkedHashMap();
+    private final Map<String, String> problems = new LinkedHashMap();
+    private boolean isJapanese;
+    
+    /**
+     * Prepares a search over a buffer.
+     * @param buffer the ROM
+     * @param index the pointer index of the ROM
+     */
+    public OffsetFinder(ByteBuffer buffer, PointerIndex index) {
+        this.bytes = buffer.getBuffer();
+        this.size = buffer.size();
+        this.index = index;
+        this.text = new boolean[size >> 2];
+        this.referenced = new BitSet(size >> 2);
+        
+        // Each chunk only marks its own words, so the workers never share an element
+        IntStream.range(0, (size + CHUNK_SIZE - 1) / CHUNK_SIZE).parallel().forEach((int c) -> {
+            for (int pos = c * CHUNK_SIZE ; pos < Math.min((c + 1) * CHUNK_SIZE, size - 3) ; pos += 4) {
+                int target = pointer(pos);
+                text[pos >> 2] = target >= 0 && isText(target);
+            }
+        });
+        
+        // Tables are word aligned, so only aligned targets are kept
+        sources = index.getReferences(0, size);
+        for (int source : sources) {
+            int target = pointer(source);
+            if ((target & 3) == 0)
+                referenced.set(target >> 2);
+        }
+    }
+    
+    /**
+     * Searches all tables.
+     * @return the found offsets by their key in the offset file.
+     */
+    public Map<String, Integer> find() {
+        long start = Diagnostics.begin();
+        
+        findPokemon();
+        findItems();
+        findMoves();
+        findAreas();
+        findDungeons();
+        findStarters();
+        pick("exclusivePokemonOffset", tables(0x4, 12, (int p) -> {
+            return u16(p) > 0 && u16(p) < SPECIES && bytes[p + 2] + bytes[p + 3] == 1 && (bytes[p + 2] | bytes[p + 3]) == 1;
+        }));
+        pick("moneyOffset", distinct(tables(0x4, 100, (int p) -> {
+            return u32(p) > 0 && u32(p) < 1000000;
+        }), 0x4, 100, 10));
+        
+        Diagnostics.end("OffsetFinder.find", start);
+        return offsets;
+    }
+    
+    /**
+     * Searches the tileset graphics and palettes. The graphics table is an
+     * array of pointers to LZ77 compressed tiles, and the palette table is
+     * the array of palette pointers that the same code loads.
+     * @param tilesets the number of tilesets the floor layouts use
+     * @return the found offsets by their key in the offset file.
+     */
+    public Map<String, Integer> findTilesets(int tilesets) {
+        long start = Diagnostics.begin();
+        List<Integer> graphics = tables(0x4, tilesets, (int p) -> {
+            return isCompressedTiles(pointer(p));
+        });
+        pick("tilesetGraphicsPointerOffset", graphics);
+        if (graphics.size() == 1) {
+            pick("tilesetPalettePointerOffset", loadedWith(graphics.get(0), tables(0x4, tilesets, (int p) -> {
+                return isPalette(pointer(p));
+            })));
+        }
+        else
+            problems.put("tilesetPalettePointerOffset", "the tileset graphics were not found");
+        Diagnostics.end("OffsetFinder.findTilesets", start);
+        return offsets;
+    }
+    
+    /**
+     * Searches the item icons and palettes. The palettes are recognized by
+     * their colors, the icons by being loaded by the same code.
+     * @param icons the number of icons the items use
+     * @param palettes the number of palettes the items use
+     * @return the found offsets by their key in the offset file.
+     */
+    public Map<String, Integer> findItemGraphics(int icons, int palettes) {
+        long start = Diagnostics.begin();
+        List<Integer> colors = distinct(tables(Tiles.PALETTE_SIZE, palettes, this::isPalette), Tiles.PALETTE_SIZE, palettes, (palettes + 1) / 2);
+        pick("itemPalettesOffset", colors);
+        if (colors.size() == 1) {
+            pick("itemIconsOffset", loadedWith(colors.get(0), tables(4 * Tiles.TILE_SIZE, icons, (int p) -> {
+                return !isFill(p, 4 * Tiles.TILE_SIZE);
+            })));
+        }
+        else
+            problems.put("itemIconsOffset", "the item palettes were not found");
+        Diagnostics.end("OffsetFinder.findItemGraphics", start);
+        return offsets;
+    }
+    
+    /**
+     * Returns the offsets found by the last call to {@link #find()}.
+     * @return the found offsets by their key in the offset file.
+     */
+    public Map<String, Integer> getOffsets() {
+        return offsets;
+    }
+    
+    /**
+     * Returns whether the move table has the layout of the Japanese builds.
+     * @return {@code true} if the Japanese move table was found.
+     */
+    public boolean isJapanese() {
+        return isJapanese;
+    }
+    
+    /**
+     * Returns why offsets are missing from the result of {@link #find()}.
+     * @return the reasons by key.
+     */
+    public Map<String, String> getProblems() {
+        return problems;
+    }
+    
+    /**
+     * Writes the found offsets as a section of the offset file. Missing
+     * offsets are listed as comments.
+     * @param romId the ROM ID that names the section
+     * @param description the description of the ROM
+     * @return the section.
+     */
+    public String toIni(String romId, String description) {
+        StringBuilder sb = new StringBuilder();
+        sb.append('[').append(romId).append("]\n");
+        sb.append("description = ").append(description).append('\n');
+        for (String key : KEYS) {
+            if (offsets.containsKey(key))
+                sb.append(key).append(" = ").append(String.format("0x%08X", offsets.get(key))).append('\n');
+            else
+                sb.append("; ").append(key).append(": ").append(problems.getOrDefault(key, "not searched")).append('\n');
+        }
+        for (String key : GRAPHICS_KEYS) {
+            if (offsets.containsKey(key))
+                sb.append(key).append(" = ").append(String.format("0x%08X", offsets.get(key))).append('\n');
+            else if (problems.containsKey(key))
+                sb.append("; ").append(key).append(": ").append(problems.get(key)).append('\n');
+        }
+        if (isJapanese)
+            sb.append("isJapanese = true\n");
+        return sb.toString();
+    }
+    
+    private void findPokemon() {
+        List<Integer> tables = tables(Pokemon.SIZE, SPECIES, (int p) -> {
+            return text[p >> 2] && isTextOrNull(p + 0x4) && (bytes[p + 0x11] & 0xFF) < 0x20 && (bytes[p + 0x12] & 0xFF) < 0x20;
+        });
+        pickSlot("pokemonPointerOffset", tables);
+    }
+    
+    private void findItems() {
+        List<Integer> tables = tables(Item.SIZE, 240, (int p) -> {
+            return text[p >> 2] && isTextOrNull(p + 0x10) && u32(p + 0x4) >>> 20 == 0 && u32(p + 0x8) >>> 20 == 0 && (bytes[p + 0xC] & 0xFF) < 0x20 && (bytes[p + 0xD] & 0xFF) < 0x40;
+        });
+        pickSlot("itemPointerOffset", tables);
+    }
+    
+    private void findMoves() {
+        List<Integer> moves = tables(Move.SIZE, 413, (int p) -> {
+            return text[p >> 2] && isTextOrNull(p + 0x18) && isTextOrNull(p + 0x1C) && u16(p + 0x6) < 0x20;
+        });
+        if (moves.isEmpty()) {
+            moves = tables(Move.SIZE_JAP, 413, (int p) -> {
+                return text[p >> 2] && isTextOrNull(p + 0x18) && isTextOrNull(p + 0x1C) && isTextOrNull(p + 0x20) && isTextOrNull(p + 0x24) && u16(p + 0x6) < 0x20;
+            });
+            isJapanese = !moves.isEmpty();
+        }
+        pick("movesOffset", moves);
+    }
+    
+    private void findAreas() {
+        // Arrays of string pointers are common, but few have exactly one entry per area
+        pick("areasTextOffset", exact(tables(0x4, 58, (int p) -> {
+            return text[p >> 2];
+        }), 0x4, 58, (int p) -> {
+            return text[p >> 2];
+        }));
+        
+        IntPredicate area = (int p) -> {
+            return u16(p) <= 0xFF && u16(p + 0x2) <= 0xFF && u32(p + 0x4) >= 0 && u32(p + 0x4) <= 100000 && u32(p + 0x4) % 10 == 0;
+        };
+        pick("areasMainOffset", distinct(tables(Area.SIZE, 58, area), Area.SIZE, 58, 10));
+    }
+    
+    private void findDungeons() {
+        pick("dungeonMainOffset", tables(Dungeon.SIZE, 98, (int p) -> {
+            return (bytes[p + 0x2] | bytes[p + 0x6] | bytes[p + 0x7] | bytes[p + 0x8] | bytes[p + 0x9] | bytes[p + 0xA]) >>> 1 == 0
+                    && bytes[p + 0x5] >= 1 && bytes[p + 0x5] <= 4 && (bytes[p + 0xB] & 0xFF) < 0x20;
+        }));
+        pick("dungeonMapOffset", distinct(tables(0x4, 64, (int p) -> {
+            return u16(p) < 480 && u16(p + 0x2) < 320;
+        }), 0x4, 64, 32));
+        
+        // The trap lists lead to the header of the dungeon data, which leads to the floor counts
+        List<Integer> headers = new ArrayList();
+        for (int traps : tables(0x4, 148, (int p) -> { return isTrapList(pointer(p)); })) {
+            for (int source : index.getReferences(traps)) {
+                int header = source - 0x10;
+                if (header >= 0 && pointer(header) >= 0 && pointer(header + 0x4) >= 0 && pointer(header + 0x8) >= 0 && isSpawnList(pointer(pointer(header + 0xC))))
+                    headers.add(header);
+            }
+        }
+        pickSlot("dungeonPointerOffset", headers);
+        if (headers.size() == 1)
+            findFloorCounts(pointer(headers.get(0)));
+        else
+            problems.put("dungeonFloorsPointerOffset", "the dungeon data was not found");
+    }
+    
+    private void findFloorCounts(int floors) {
+        // The floors of consecutive dungeons are stored back to back, so a count never exceeds the gap
+        int[] starts = new int[64];
+        for (int i = 0 ; i < 64 ; i++)
+            starts[i] = pointer(floors + i * 0x4);
+        int[] sorted = starts.clone();
+        Arrays.sort(sorted);
+        
+        List<Integer> candidates = new ArrayList();
+        int last = -1;
+        for (int source : sources) {
+            int target = pointer(source);
+            if (target == last || target + 64 > size)
+                continue;
+            last = target;
+            
+            int fits = 0;
+            for (int i = 0 ; i < 64 ; i++) {
+                int count = bytes[target + i] & 0xFF;
+                if (count < 1 || count > 99) {
+                    fits = -1;
+                    break;
+                }
+                int next = Arrays.binarySearch(sorted, starts[i]);
+                while (next < 63 && sorted[next] == starts[i])
+                    next++;
+                if (starts[i] < 0 || sorted[next] <= starts[i] || count * Floor.SIZE <= sorted[next] - starts[i])
+                    fits++;
+            }
+            if (fits >= 60)
+                candidates.add(target);
+        }
+        pickSlot("dungeonFloorsPointerOffset", candidates, 0);
+    }
+    
+    private void findStarters() {
+        // The partners are a subset of the starters, which is rare for two short species lists
+        List<Integer> starters = new ArrayList(), partners = new ArrayList();
+        int run = 0;
+        for (int pos = 0 ; pos <= size - 2 ; pos += 2) {
+            if (u16(pos) > 0 && u16(pos) < SPECIES) {
+                run++;
+                continue;
+            }
+            if (run >= 27 && run <= 40)
+                starters.add(pos - run * 2);
+            if (run >= 11 && run <= 20)
+                partners.add(pos - run * 2);
+            run = 0;
+        }
+        
+        List<int[]> pairs = new ArrayList();
+        for (int s : starters) {
+            BitSet species = new BitSet(SPECIES);
+            for (int i = 0 ; i < 27 ; i++)
+                species.set(u16(s + i * 2));
+            if (species.cardinality() != 27)
+                continue;
+            for (int p : partners) {
+                BitSet set = new BitSet(SPECIES);
+                for (int i = 0 ; i < 11 ; i++)
+                    set.set(u16(p + i * 2));
+                int distinct = set.cardinality();
+                set.andNot(species);
+                if (distinct == 11 && set.isEmpty())
+                    pairs.add(new int[] { s, p });
+            }
+        }
+        
+        if (pairs.size() == 1) {
+            offsets.put("pokemonStartersOffset", pairs.get(0)[0]);
+            offsets.put("pokemonPartnersOffset", pairs.get(0)[1]);
+        }
+        else {
+            String problem = pairs.isEmpty() ? "not found" : pairs.size() + " candidates";
+            problems.put("pokemonStartersOffset", problem);
+            problems.put("pokemonPartnersOffset", problem);
+        }
+    }
+    
+    private List<Integer> tables(int stride, int count, IntPredicate record) {
+        // Padding passes as records too often, so only offsets that are referenced can start a table
+        List<Integer> ret = new ArrayList();
+        for (int word = referenced.nextSetBit(0) ; word >= 0 ; word = referenced.nextSetBit(word + 1)) {
+            int pos = word << 2;
+            if (pos + count * stride > size)
+                break;
+            
+            int valid = 0;
+            while (valid < count && record.test(pos + valid * stride))
+                valid++;
+            if (valid == count)
+                ret.add(pos);
+        }
+        return ret;
+    }
+    
+    private List<Integer> exact(List<Integer> tables, int stride, int count, IntPredicate record) {
+        // Prefers tables that end right after the expected number of records
+        List<Integer> ret = new ArrayList();
+        for (int table : tables) {
+            int end = table + count * stride;
+            if (end + stride > size || !record.test(end))
+                ret.add(table);
+        }
+        return ret.isEmpty() ? tables : ret;
+    }
+    
+    private List<Integer> distinct(List<Integer> tables, int stride, int count, int min) {
+        // Tables of mostly equal values are padding rather than data
+        List<Integer> ret = new ArrayList();
+        for (int table : tables) {
+            long[] values = new long[count];
+            for (int i = 0 ; i < count ; i++)
+                values[i] = u32(table + i * stride) & 0xFFFFFFFFL | (stride > 4 ? (long) u32(table + i * stride + 4) << 32 : 0);
+            Arrays.sort(values);
+            
+            int found = 1;
+            for (int i = 1 ; i < count ; i++) {
+                if (values[i] != values[i - 1])
+                    found++;
+            }
+            if (found >= min)
+                ret.add(table);
+        }
+        return ret;
+    }
+    
+    private void pick(String key, List<Integer> candidates) {
+        if (candidates.size() == 1)
+            offsets.put(key, candidates.get(0));
+        else
+            problems.put(key, candidates.isEmpty() ? "not found" : candidates.size() + " candidates");
+    }
+    
+    private void pickSlot(String key, List<Integer> tables) {
+        pickSlot(key, tables, 0x4);
+    }
+    
+    private void pickSlot(String key, List<Integer> tables, int skip) {
+        // The offset file names the word before the pointer to some tables; unreferenced ones have no slot
+        List<Integer> slots = new ArrayList();
+        for (int table : tables) {
+            int[] sources = index.getReferences(table);
+            if (sources.length > 0 && sources[0] >= skip)
+                slots.add(sources[0] - skip);
+        }
+        pick(key, slots);
+    }
+    
+    private boolean isTrapList(int offset) {
+        if (offset < 0 || offset + 40 > size)
+            return false;
+        int max = 0;
+        for (int i = 0 ; i < 20 ; i++) {
+            int value = u16(offset + i * 2);
+            if (value == 0)
+                continue;
+            if (value < max)
+                return false;
+            max = value;
+        }
+        return max == 10000;
+    }
+    
+    private boolean isSpawnList(int offset) {
+        int max = 0;
+        for (int pos = offset ; offset >= 0 && pos + 8 <= size && pos < offset + 0x200 ; pos += 8) {
+            if (u32(pos) == 0 && u32(pos + 4) == 0)
+                return max == 10000;
+            int value = u16(pos + 2);
+            if (value == 0)
+                continue;
+            if (value < max)
+                return false;
+            max = value;
+        }
+        return false;
+    }
+    
+    private List<Integer> loadedWith(int table, List<Integer> candidates) {
+        // Code loads related tables from one literal pool, so their pointers are close together
+        int[] anchors = index.getReferences(table);
+        List<Integer> ret = new ArrayList();
+        for (int candidate : candidates) {
+            boolean near = false;
+            for (int source : index.getReferences(candidate)) {
+                for (int anchor : anchors)
+                    near |= Math.abs(source - anchor) <= LITERAL_DISTANCE;
+            }
+            if (near && candidate != table)
+                ret.add(candidate);
+        }
+        return ret;
+    }
+    
+    private boolean isCompressedTiles(int offset) {
+        if (offset < 0 || offset + 4 > size || (bytes[offset] & 0xFF) != Lz77.TYPE)
+            return false;
+        int length = u32(offset) >>> 8;
+        return length > 0 && length <= MAX_TILESET_SIZE && length % Tiles.TILE_SIZE == 0;
+    }
+    
+    private boolean isPalette(int offset) {
+        // Colors are 15 bit, and a palette that is mostly one color is rather padding
+        if (offset < 0 || offset + Tiles.PALETTE_SIZE > size)
+            return false;
+        int first = u16(offset), other = 0;
+        for (int pos = offset ; pos < offset + Tiles.PALETTE_SIZE ; pos += 2) {
+            if ((bytes[pos + 1] & 0x80) != 0)
+                return false;
+            if (u16(pos) != first)
+                other++;
+        }
+        return other >= 2;
+    }
+    
+    private boolean isFill(int offset, int length) {
+        for (int pos = offset + 1 ; pos < offset + length ; pos++) {
+            if (bytes[pos] != bytes[offset])
+                return false;
+        }
+        return true;
+    }
+    
+    private boolean isText(int offset) {
+        int end = Math.min(offset + MAX_TEXT, size);
+        for (int pos = offset ; pos < end ; pos++) {
+            int b = bytes[pos] & 0xFF;
+            if (b == 0)
+                return pos > offset;
+            if (b < 0x20 && b != '\n')
+                return false;
+        }
+        return false;
+    }
+    
+    private boolean isTextOrNull(int pos) {
+        return text[pos >> 2] || u32(pos) == 0;
+    }
+    
+    private int pointer(int pos) {
+        if (pos < 0 || pos + 4 > size)
+            return -1;
+        int word = u32(pos);
+        int hi = word >>> 24;
+        return (hi == 0x08 || hi == 0x09) && BitConverter.pointerToOffset(word) < size ? BitConverter.pointerToOffset(word) : -1;
+    }
+    
+    private int u16(int pos) {
+        return (bytes[pos] & 0xFF) | (bytes[pos + 1] & 0xFF) << 8;
+    }
+    
+    private int u32(int pos) {
+        return (bytes[pos] & 0xFF) | (bytes[pos + 1] & 0xFF) << 8 | (bytes[pos + 2] & 0xFF) << 16 | (bytes[pos + 3] & 0xFF) << 24;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2.game;
+
+import com.aurum.mystery2.BitConverter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.ini4j.Ini;
+import org.ini4j.Profile.Section;
+
+/**
+ * The offsets of the data tables in one ROM build. The known builds are
+ * compiled in. The offset file only overrides them or adds new builds, and it
+ * is read again whenever it changes. Profiles are immutable and shared by all
+ * ROMs with the same ID. An offset of 0 means that it is unknown.
+ */
+public final class OffsetProfile {
+    // Static fields
+    public static final List<String> KEYS;
+    public static File overrideFile = new File("B24_offsets.ini");
+    
+    private static final Map<String, OffsetProfile> builtIn = new HashMap();
+    private static final Map<String, OffsetProfile> cache = new HashMap();
+    private static final Map<String, OffsetProfile> detected = new HashMap();
+    private static Map<String, Section> overrides = Collections.emptyMap();
+    private static long overrideModified, overrideLength;
+    
+    static {
+        List<String> keys = new ArrayList(OffsetFinder.KEYS);
+        keys.addAll(OffsetFinder.GRAPHICS_KEYS);
+        KEYS = Collections.unmodifiableList(keys);
+        
+        define("B24E01", "Pok\u00E9mon Mystery Dungeon: Red Rescue Team (US)", false, new int[] {
+            0x004A2BF4, 0x00357B88, 0x00306570, 0x00109D30,
+            0x000902BC, 0x000D3F14, 0x000F278E, 0x000F4264,
+            0x0010AD0C, 0x001139D0, 0x0010AA90, 0x003679A0,
+            0x0010A3F0
+        });
+        define("B24P01", "Pok\u00E9mon Mystery Dungeon: Red Rescue Team (EU)", false, new int[] {
+            0x007343A4, 0x005FAC6C, 0x005B0940, 0x00271D98,
+            0x000961A4, 0x001ADD6C, 0x001B683A, 0x001B68B0,
+            0x00272D74, 0x00000000, 0x00272AF8, 0x0060AA84,
+            0x00272458
+        });
+        define("B24J01", "Pok\u00E9mon Fushigi no Dungeon: Aka no Kyuujoutai (JP)", true, new int[] {
+            0x004C9EAC, 0x00355130, 0x00306670, 0x0010CC78,
+            0x0008FD88, 0x000D4540, 0x000F4C14, 0x000F64E4,
+            0x0010DC4C, 0x00116F00, 0x0010D9D0, 0x003653D4,
+            0x0010D330
+        });
+        define("B9JE01", "Pok\u00E9mon Mystery Dungeon: Red Rescue Team (Demo Version)", false, new int[] {
+            0x004A2BF4, 0x00357B88, 0x00306570, 0x0010A95C,
+            0x00090020, 0x000D4B30, 0x000F33A2, 0x000F4E78,
+            0x0010B938, 0x001145FC, 0x0010B6BC, 0x003679A0,
+            0x0010B01C
+        });
+    }
+    
+    // Fields
+    public final String romId, description;
+    public final boolean isJapanese;
+    public final int dungeonPointerOffset, pokemonPointerOffset, itemPointerOffset;
+    public final int dungeonMainOffset, dungeonFloorsPointerOffset, dungeonMapOffset;
+    public final int pokemonStartersOffset, pokemonPartnersOffset, movesOffset, moneyOffset;
+    public final int areasTextOffset, areasMainOffset, exclusivePokemonOffset;
+    public final int tilesetGraphicsPointerOffset, tilesetPalettePointerOffset, itemIconsOffset, itemPalettesOffset;
+    
+    private final int[] offsets;
+    private final boolean[] searched;
+    
+    private OffsetProfile(String romId, String description, boolean isJapanese, int[] offsets) {
+        this(romId, description, isJapanese, offsets, new boolean[KEYS.size()]);
+    }
+    
+    private OffsetProfile(String romId, String description, boolean isJapanese, int[] offsets, boolean[] searched) {
+        this.romId = romId;
+        this.description = description;
+        this.isJapanese = isJapanese;
+        this.offsets = Arrays.copyOf(offsets, KEYS.size());
+        this.searched = searched;
+        
+        dungeonPointerOffset = get("dungeonPointerOffset");
+        pokemonPointerOffset = get("pokemonPointerOffset");
+        itemPointerOffset = get("itemPointerOffset");
+        dungeonMainOffset = get("dungeonMainOffset");
+        dungeonFloorsPointerOffset = get("dungeonFloorsPointerOffset");
+        dungeonMapOffset = get("dungeonMapOffset");
+        pokemonStartersOffset = get("pokemonStartersOffset");
+        pokemonPartnersOffset = get("pokemonPartnersOffset");
+        movesOffset = get("movesOffset");
+        moneyOffset = get("moneyOffset");
+        areasTextOffset = get("areasTextOffset");
+        areasMainOffset = get("areasMainOffset");
+        exclusivePokemonOffset = get("exclusivePokemonOffset");
+        tilesetGraphicsPointerOffset = get("tilesetGraphicsPointerOffset");
+        tilesetPalettePointerOffset = get("tilesetPalettePointerOffset");
+        itemIconsOffset = get("itemIconsOffset");
+        itemPalettesOffset = get("itemPalettesOffset");
+    }
+    
+    @Override
+    public String toString() {
+        return description + " (" + romId + ')';
+    }
+    
+    /**
+     * Returns an offset by its key in the offset file.
+     * @param key the key
+     * @return the offset, or 0 if it is unknown.
+     */
+    public int get(String key) {
+        int index = KEYS.indexOf(key);
+        return index >= 0 ? offsets[index] : 0x00000000;
+    }
+    
+    /**
+     * Returns whether an offset was found by searching the ROM instead of
+     * coming from the compiled profiles or the offset file.
+     * @param key the key
+     * @return {@code true} if the offset was searched.
+     */
+    public boolean isSearched(String key) {
+        int index = KEYS.indexOf(key);
+        return index >= 0 && searched[index];
+    }
+    
+    /**
+     * Returns the keys of the tables that every ROM needs but this profile
+     * does not know.
+     * @return the missing keys.
+     */
+    public List<String> getMissing() {
+        List<String> ret = new ArrayList();
+        for (String key : OffsetFinder.KEYS) {
+            if (get(key) == 0x00000000)
+                ret.add(key);
+        }
+        return ret;
+    }
+    
+    /**
+     * Returns a copy of this profile where the unknown offsets are taken from
+     * a map. These offsets are marked as searched.
+     * @param found the offsets by key
+     * @return the completed profile.
+     */
+    public OffsetProfile complete(Map<String, Integer> found) {
+        int[] ret = offsets.clone();
+        boolean[] guessed = searched.clone();
+        for (int i = 0 ; i < ret.length ; i++) {
+            Integer offset = found.get(KEYS.get(i));
+            if (ret[i] == 0x00000000 && offset != null) {
+                ret[i] = offset;
+                guessed[i] = true;
+            }
+        }
+        return new OffsetProfile(romId, description, isJapanese, ret, guessed);
+    }
+    
+    /**
+     * Creates a profile for a ROM that is neither compiled in nor in the
+     * offset file.
+     * @param romId the ROM ID
+     * @param description the description of the ROM
+     * @param isJapanese whether the ROM uses the Japanese record layouts
+     * @return the profile, with all offsets unknown.
+     */
+    public static OffsetProfile unknown(String romId, String description, boolean isJapanese) {
+        return new OffsetProfile(romId, description, isJapanese, new int[0]);
+    }
+    
+    /**
+     * Returns the profile of a ROM build, with the offset file applied.
+     * @param romId the ROM ID
+     * @return the profile, or {@code null} if the build is unknown.
+     */
+    public static synchronized OffsetProfile forRomId(String romId) {
+        reloadOverrides();
+        if (cache.containsKey(romId))
+            return cache.get(romId);
+        
+        OffsetProfile base = builtIn.get(romId);
+        Section section = overrides.get(romId);
+        OffsetProfile ret = section != null ? override(base, romId, section) : base;
+        cache.put(romId, ret);
+        return ret;
+    }
+    
+    /**
+     * Returns the profile that was completed with searched offsets for a ROM,
+     * so the search only runs once for the same ROM contents. Hacks often
+     * keep the ID of the game they are based on, so the size and checksum of
+     * the ROM are part of the key.
+     * @param romId the ROM ID
+     * @param size the size of the ROM
+     * @param checksum the CRC32 of the ROM
+     * @return the completed profile, or {@code null} if none was stored.
+     */
+    public static synchronized OffsetProfile getDetected(String romId, int size, long checksum) {
+        reloadOverrides();
+        return detected.get(detectedKey(romId, size, checksum));
+    }
+    
+    /**
+     * Stores a profile that was completed with searched offsets. It is
+     * forgotten when the offset file changes.
+     * @param profile the completed profile
+     * @param size the size of the ROM
+     * @param checksum the CRC32 of the ROM
+     */
+    public static synchronized void putDetected(OffsetProfile profile, int size, long checksum) {
+        detected.put(detectedKey(profile.romId, size, checksum), profile);
+    }
+    
+    private static String detectedKey(String romId, int size, long checksum) {
+        return String.format("%s/%08X/%08X", romId, size, checksum);
+    }
+    
+    private static void define(String romId, String description, boolean isJapanese, int[] offsets) {
+        builtIn.put(romId, new OffsetProfile(romId, description, isJapanese, offsets));
+    }
+    
+    private static void reloadOverrides() {
+        // Only the file's time stamp is checked per call, so opening many ROMs stays cheap
+        long modified = overrideFile.lastModified();
+        long length = overrideFile.length();
+        if (modified == overrideModified && length == overrideLength)
+            return;
+        overrideModified = modified;
+        overrideLength = length;
+        cache.clear();
+        detected.clear();
+        
+        Map<String, Section> ret = new HashMap();
+        if (overrideFile.isFile()) {
+            try {
+                Ini ini = new Ini(overrideFile);
+                for (String name : ini.keySet())
+                    ret.put(name, ini.get(name));
+            }
+            catch (IOException ex) {
+                System.err.println(ex);
+            }
+        }
+        overrides = ret;
+    }
+    
+    private static OffsetProfile override(OffsetProfile base, String romId, Section section) {
+        int[] offsets = base != null ? base.offsets.clone() : new int[KEYS.size()];
+        for (int i = 0 ; i < offsets.length ; i++) {
+            String value = section.get(KEYS.get(i));
+            if (value == null)
+                continue;
+            try {
+                offsets[i] = BitConverter.stringToInt(value);
+            }
+            catch (NumberFormatException ex) {
+                System.err.println(ex);
+            }
+        }
+        
+        String description = section.containsKey("description") ? section.get("description") : base != null ? base.description : "Unknown game";
+        boolean isJapanese = section.containsKey("isJapanese") ? Boolean.parseBoolean(section.get("isJapanese")) : base != null && base.isJapanese;
+        return new OffsetProfile(romId, description, isJapanese, offsets);
+    }
+}
\ No newline at end of file
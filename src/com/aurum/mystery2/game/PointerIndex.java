@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2.game;
+
+import com.aurum.mystery2.BitConverter;
+import com.aurum.mystery2.ByteBuffer;
+import com.aurum.mystery2.Diagnostics;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * An index of every aligned word in a ROM that looks like a pointer into the
+ * ROM. Each entry packs the target offset and the offset of the word itself
+ * into a long, sorted by target, so all references to an offset or range are
+ * found by binary search. Writes to the buffer mark the written words dirty,
+ * and only those words are scanned again before the next query.
+ * <p>
+ * The index is created from a copy of the buffer, which is only scanned by
+ * {@link #scan()} or the first query. The scan may therefore run on another
+ * thread while the buffer is used and written, as long as the queries run on
+ * the thread that owns the buffer.
+ */
+public class PointerIndex implements ByteBuffer.WriteListener {
+    // Fields
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final long[] EMPTY = new long[0];
+    
+    private final ByteBuffer buffer;
+    private final TreeMap<Integer, Integer> dirty = new TreeMap();
+    private long[] entries;
+    private int indexedSize;
+    private byte[] snapshot;
+    
+    /**
+     * Copies a buffer for the first scan and keeps the index in sync with its
+     * writes from then on.
+     * @param buffer the buffer to index
+     */
+    public PointerIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        snapshot = copyBuffer();
+        indexedSize = snapshot.length;
+        buffer.setWriteListener(this);
+    }
+    
+    /**
+     * Scans the copy of the buffer if that was not done yet. This does not
+     * touch the buffer itself, so it can run on any thread.
+     */
+    public void scan() {
+        byte[] bytes;
+        synchronized (this) {
+            if (entries != null)
+                return;
+            bytes = snapshot;
+        }
+        
+        // Writes in the meantime only mark words dirty, so the lock is not held here
+        long start = Diagnostics.begin();
+        long[] found = scanAll(bytes);
+        Diagnostics.end("PointerIndex.scan", start);
+        synchronized (this) {
+            if (entries == null) {
+                entries = found;
+                snapshot = null;
+            }
+        }
+    }
+    
+    /**
+     * Returns the offsets of all words that point to an offset.
+     * @param offset the referenced offset
+     * @return the offsets of the pointers, in ascending order.
+     */
+    public int[] getReferences(int offset) {
+        return getReferences(offset, offset + 1);
+    }
+    
+    /**
+     * Returns the offsets of all words that point into a range, ordered by the
+     * offset they point to.
+     * @param start the first offset of the range
+     * @param end the offset after the range
+     * @return the offsets of the pointers.
+     */
+    public synchronized int[] getReferences(int start, int end) {
+        update();
+        int from = search(entries, (long) start << 32);
+        int to = search(entries, (long) end << 32);
+        
+        int[] ret = new int[Math.max(to - from, 0)];
+        for (int i = 0 ; i < ret.length ; i++)
+            ret[i] = (int) entries[from + i];
+        return ret;
+    }
+    
+    /**
+     * Returns the offset a word in the index points to.
+     * @param source the offset of the word
+     * @return the referenced offset, or -1 if the word is no pointer.
+     */
+    public synchronized int getTarget(int source) {
+        update();
+        if ((source & 3) != 0)
+            return -1;
+        int word = readWord(source);
+        return isPointer(word, buffer.size()) ? BitConverter.pointerToOffset(word) : -1;
+    }
+    
+    /**
+     * Returns the number of pointers in the index.
+     * @return the number of pointers.
+     */
+    public synchronized int size() {
+        update();
+        return entries.length;
+    }
+    
+    @Override
+    public synchronized void written(int pos, int len) {
+        // Merge with overlapping and adjacent ranges, aligned to whole words
+        int start = pos & ~3;
+        int end = (int) Math.min(((long) pos + len + 3) & ~3L, Integer.MAX_VALUE);
+        
+        Map.Entry<Integer, Integer> prev = dirty.floorEntry(start);
+        if (prev != null && prev.getValue() >= start) {
+            start = prev.getKey();
+            end = Math.max(end, prev.getValue());
+        }
+        Map.Entry<Integer, Integer> next;
+        while ((next = dirty.ceilingEntry(start)) != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            dirty.remove(next.getKey());
+        }
+        dirty.put(start, end);
+    }
+    
+    private void update() {
+        scan();
+        int size = buffer.size();
+        if (dirty.isEmpty() && size == indexedSize)
+            return;
+        long start = Diagnostics.begin();
+        
+        long words = 0;
+        for (Map.Entry<Integer, Integer> range : dirty.entrySet())
+            words += range.getValue() - range.getKey();
+        
+        // Rescanning everything is cheaper than filtering most of the index, and
+        // a resized buffer changes which words count as pointers
+        if (words >= size / 16 || size != indexedSize) {
+            dirty.clear();
+            byte[] bytes = copyBuffer();
+            indexedSize = bytes.length;
+            entries = scanAll(bytes);
+            Diagnostics.end("PointerIndex.scan", start);
+            return;
+        }
+        
+        // Scan the dirty words again
+        long[] added = new long[(int) (words >> 2)];
+        int count = 0;
+        for (Map.Entry<Integer, Integer> range : dirty.entrySet()) {
+            for (int source = range.getKey() ; source < Math.min(range.getValue(), size - 3) ; source += 4) {
+                int word = readWord(source);
+                if (isPointer(word, size))
+                    added[count++] = (long) BitConverter.pointerToOffset(word) << 32 | source;
+            }
+        }
+        added = Arrays.copyOf(added, count);
+        Arrays.sort(added);
+        
+        // Merge the new pointers with the old ones outside the dirty ranges
+        long[] merged = new long[entries.length + count];
+        int n = 0, a = 0;
+        for (long entry : entries) {
+            if (isDirty((int) entry))
+                continue;
+            while (a < count && added[a] < entry)
+                merged[n++] = added[a++];
+            merged[n++] = entry;
+        }
+        while (a < count)
+            merged[n++] = added[a++];
+        
+        entries = n == merged.length ? merged : Arrays.copyOf(merged, n);
+        dirty.clear();
+        Diagnostics.end("PointerIndex.update", start);
+    }
+    
+    private boolean isDirty(int source) {
+        Map.Entry<Integer, Integer> range = dirty.floorEntry(source);
+        return range != null && source < range.getValue();
+    }
+    
+    private int readWord(int offset) {
+        int pos = buffer.position();
+        int word = buffer.readIntAt(offset);
+        buffer.seek(pos);
+        return word;
+    }
+    
+    private byte[] copyBuffer() {
+        int pos = buffer.position();
+        byte[] bytes = buffer.readBytesAt(0, buffer.size());
+        buffer.seek(pos);
+        return bytes;
+    }
+    
+    private static long[] scanAll(byte[] bytes) {
+        // The bytes are split into chunks for the workers
+        final int size = bytes.length;
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        
+        long[][] found = IntStream.range(0, chunks).parallel().mapToObj((int c) -> {
+            return scan(bytes, c * CHUNK_SIZE, Math.min((c + 1) * CHUNK_SIZE, size), size);
+        }).toArray(long[][]::new);
+        
+        int total = 0;
+        for (long[] chunk : found)
+            total += chunk.length;
+        long[] ret = new long[total];
+        int n = 0;
+        for (long[] chunk : found) {
+            System.arraycopy(chunk, 0, ret, n, chunk.length);
+            n += chunk.length;
+        }
+        Arrays.parallelSort(ret);
+        return ret;
+    }
+    
+    private static long[] scan(byte[] bytes, int start, int end, int size) {
+        long[] ret = new long[64];
+        int count = 0;
+        
+        for (int i = start ; i + 3 < end ; i += 4) {
+            // Only the high byte is checked first, as most words are no pointers
+            int hi = bytes[i + 3] & 0xFF;
+            if (hi != 0x08 && hi != 0x09)
+                continue;
+            int word = (bytes[i] & 0xFF) | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF) << 16 | hi << 24;
+            if (!isPointer(word, size))
+                continue;
+            
+            if (count == ret.length)
+                ret = Arrays.copyOf(ret, count * 2);
+            ret[count++] = (long) BitConverter.pointerToOffset(word) << 32 | i;
+        }
+        return count > 0 ? Arrays.copyOf(ret, count) : EMPTY;
+    }
+    
+    private static boolean isPointer(int word, int size) {
+        int hi = word >>> 24;
+        return (hi == 0x08 || hi == 0x09) && BitConverter.pointerToOffset(word) < size;
+    }
+    
+    private static int search(long[] entries, long key) {
+        // Returns the index of the first entry that is not smaller than the key
+        int lo = 0, hi = entries.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (entries[mid] < key)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2.game;
+
+/**
+ * A range of the ROM that holds a known record.
+ */
+public class Region {
+    // Fields
+    public final int start, end;
+    public final String name;
+    public final Class<?> type;
+    public final int index;
+    
+    /**
+     * Creates a region.
+     * @param start the first offset
+     * @param end the offset after the region
+     * @param name the readable name of the table
+     * @param type the class of the records in the table
+     * @param index the index of the record in its list
+     */
+    public Region(int start, int end, String name, Class<?> type, int index) {
+        this.start = start;
+        this.end = end;
+        this.name = name;
+        this.type = type;
+        this.index = index;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s #%d (0x%08X-0x%08X)", name, index, start, end - 1);
+    }
+}
@@ -18,20 +18,38 @@
 package com.aurum.mystery2.game;
 
 import com.aurum.mystery2.BitConverter;
+import com.aurum.mystery2.Diagnostics;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.zip.CRC32;
 import com.aurum.mystery2.ByteBuffer;
 import com.aurum.mystery2.ByteOrder;
-import org.ini4j.Ini;
-import org.ini4j.Profile.Section;
+import com.aurum.mystery2.OverlayBuffer;
+import com.aurum.mystery2.TextCodec;
+import com.aurum.mystery2.compression.Lz77;
+import com.aurum.mystery2.graphics.RenderCache;
+import com.aurum.mystery2.graphics.Tiles;
+import java.awt.image.BufferedImage;
+import com.aurum.mystery2.patch.PatchApplier;
+import com.aurum.mystery2.patch.PatchWriter;
 
-public class RomFile {
+public class RomFile implements Cloneable {
     // Static fields
     public static RomFile current;
+    public static final int TILESET_WIDTH = 9, TILESET_HEIGHT = 15;
+    public static final long RENDER_BUDGET = 16 << 20;
     
     // Information about the game
     private String romId, romName, romDescription;
@@ -40,6 +58,14 @@ public class RomFile {
     // IO stuff
     private File file;
     private ByteBuffer buffer;
+    private PointerIndex pointerIndex;
+    private FreeSpace freeSpace;
+    private RenderCache renderCache;
+    
+    // The file that holds the same bytes as the buffer's base
+    private File origin;
+    private long originModified, originLength, originVersion;
+    private static final Map<File, Long> fileVersions = new HashMap();
     
     // Parsed data
     public List<Pokemon> pokemon;
@@ -60,6 +86,9 @@ public class RomFile {
     private int dungeonMainOffset, dungeonFloorsPointerOffset, dungeonMapOffset;
     private int pokemonStartersOffset, pokemonPartnersOffset, movesOffset, moneyOffset;
     private int areasTextOffset, areasMainOffset, exclusivePokemonOffset;
+    private boolean areasTextSearched;
+    private int tilesetGraphicsPointerOffset, tilesetPalettePointerOffset, itemIconsOffset, itemPalettesOffset;
+    private boolean tilesetsSearched, itemGraphicsSearched;
     
     private int dungeonDataFloorsOffset, dungeonDataLayoutsOffset, dungeonDataItemsOffset, dungeonDataPokemonOffset, dungeonDataTrapsOffset;
     private int pokemonDataOffset, itemDataOffset, dungeonFloorsOffset;
@@ -105,47 +134,187 @@ public class RomFile {
         return isJapanese;
     }
     
+    /**
+     * Creates a copy of this ROM that records its changes on top of this ROM's
+     * bytes. The copy has deep copies of all loaded data, and its buffer only
+     * holds the pages it writes to, so it can be modified and saved on another
+     * thread. This ROM must not be saved while the copy is in use, because
+     * saving writes into the shared bytes; use {@link #snapshot()} first if
+     * that can happen.
+     * @return the copy.
+     */
+    public RomFile copy() {
+        RomFile copy = duplicate();
+        if (buffer instanceof OverlayBuffer)
+            copy.buffer = new OverlayBuffer((OverlayBuffer) buffer);
+        else if (buffer != null)
+            copy.buffer = new OverlayBuffer(buffer.getBuffer(), buffer.getEndianness());
+        if (buffer != null)
+            copy.buffer.setTextCodec(buffer.getTextCodec());
+        return copy;
+    }
+    
+    /**
+     * Creates a fully independent copy of this ROM with its own buffer.
+     * @return the copy.
+     */
+    public RomFile snapshot() {
+        RomFile copy = duplicate();
+        if (buffer instanceof OverlayBuffer) {
+            // The merged bytes no longer match the file the base was read from, and are shared until the next write
+            copy.buffer = new ByteBuffer(buffer.getBuffer().clone(), buffer.getEndianness());
+            copy.origin = null;
+        }
+        else if (buffer != null) {
+            // The origin is still valid only if nothing was written since it was read or saved
+            copy.buffer = new ByteBuffer(buffer.getBuffer().clone(), buffer.getEndianness());
+            if (!isOriginValid())
+                copy.origin = null;
+        }
+        if (buffer != null)
+            copy.buffer.setTextCodec(buffer.getTextCodec());
+        return copy;
+    }
+    
+    private RomFile duplicate() {
+        RomFile copy;
+        try {
+            copy = (RomFile) super.clone();
+        }
+        catch (CloneNotSupportedException ex) {
+            return null;
+        }
+        
+        copy.pokemon = copyAll(pokemon, (Pokemon p) -> (Pokemon) p.clone());
+        copy.exclusivePokemon = copyAll(exclusivePokemon, (ExclusivePokemon p) -> (ExclusivePokemon) p.clone());
+        copy.items = copyAll(items, (Item i) -> (Item) i.clone());
+        copy.moves = copyAll(moves, (Move m) -> (Move) m.clone());
+        copy.areas = copyAll(areas, (Area a) -> (Area) a.clone());
+        copy.dungeons = copyAll(dungeons, (Dungeon d) -> (Dungeon) d.clone());
+        copy.dungeonLayouts = copyAll(dungeonLayouts, (DungeonLayout l) -> (DungeonLayout) l.clone());
+        copy.dungeonPokemon = copyAll(dungeonPokemon, (DungeonPokemon p) -> (DungeonPokemon) p.clone());
+        copy.dungeonItems = copyAll(dungeonItems, (DungeonItems i) -> (DungeonItems) i.clone());
+        copy.dungeonTraps = copyAll(dungeonTraps, (DungeonTraps t) -> (DungeonTraps) t.clone());
+        copy.starters = starters != null ? starters.clone() : null;
+        copy.partners = partners != null ? partners.clone() : null;
+        copy.moneyfactors = moneyfactors != null ? moneyfactors.clone() : null;
+        copy.pointerIndex = null;
+        copy.freeSpace = null;
+        copy.renderCache = null;
+        return copy;
+    }
+    
+    private static <T> List<T> copyAll(List<T> list, Function<T, T> copier) {
+        if (list == null)
+            return null;
+        List<T> ret = new ArrayList(list.size());
+        for (T element : list)
+            ret.add(copier.apply(element));
+        return ret;
+    }
+    
     public void load() throws IOException {
+        long start = Diagnostics.begin();
+        
         // load data into buffer
         buffer = new ByteBuffer((int) file.length(), ByteOrder.LITTLE_ENDIAN);
+        pointerIndex = null;
+        freeSpace = null;
+        renderCache = null;
         
         try (FileInputStream in = new FileInputStream(file)) {
             in.read(buffer.getBuffer(), 0, in.available());
         }
+        setOrigin(file);
+        
+        readHeader();
+        Diagnostics.end("RomFile.load", start);
+    }
+    
+    /**
+     * Loads the ROM from a file with a stack of patches applied in the given
+     * order. The patched ROM is saved to this ROM's file.
+     * @param source the original ROM file
+     * @param patches the patches
+     * @throws IOException if a file could not be read or a patch does not
+     * apply.
+     */
+    public void load(File source, List<File> patches) throws IOException {
+        long start = Diagnostics.begin();
+        buffer = PatchApplier.apply(source, patches);
+        pointerIndex = null;
+        freeSpace = null;
+        renderCache = null;
+        origin = null;
         
+        readHeader();
+        Diagnostics.end("RomFile.loadPatched", start);
+    }
+    
+    private void readHeader() throws IOException {
         // find ROM ID and name
         buffer.seek(0xA0);
         romName = buffer.readString(0xC);
         romId = buffer.readString(0x6);
+        buffer.setTextCodec(TextCodec.forRomId(romId));
         
-        // get offsets and additional information from INI file
-        File ini = new File("B24_offsets.ini");
+        // get offsets and additional information from the compiled profiles and the INI file
+        OffsetProfile profile = OffsetProfile.forRomId(romId);
+        isLoaded = profile != null;
         
-        if (ini.isFile() && ini.exists()) {
-            Section s = new Ini(ini).get(romId);
-            
-            romDescription = s.get("description");
-            dungeonPointerOffset = BitConverter.stringToInt(s.get("dungeonPointerOffset"));
-            pokemonPointerOffset = BitConverter.stringToInt(s.get("pokemonPointerOffset"));
-            itemPointerOffset = BitConverter.stringToInt(s.get("itemPointerOffset"));
-            dungeonMainOffset = BitConverter.stringToInt(s.get("dungeonMainOffset"));
-            dungeonFloorsPointerOffset = BitConverter.stringToInt(s.get("dungeonFloorsPointerOffset"));
-            dungeonMapOffset = BitConverter.stringToInt(s.get("dungeonMapOffset"));
-            pokemonStartersOffset = BitConverter.stringToInt(s.get("pokemonStartersOffset"));
-            pokemonPartnersOffset = BitConverter.stringToInt(s.get("pokemonPartnersOffset"));
-            movesOffset = BitConverter.stringToInt(s.get("movesOffset"));
-            moneyOffset = BitConverter.stringToInt(s.get("moneyOffset"));
-            areasTextOffset = BitConverter.stringToInt(s.get("areasTextOffset"));
-            areasMainOffset = BitConverter.stringToInt(s.get("areasMainOffset"));
-            exclusivePokemonOffset = BitConverter.stringToInt(s.get("exclusivePokemonOffset"));
-            isJapanese = Boolean.parseBoolean(s.get("isJapanese"));
-            isLoaded = true;
-        }
-        else {
-            romDescription = "Unknown game";
-            isJapanese = false;
-            isLoaded = false;
+        // Offsets the profile does not know are searched in the ROM, once per ROM contents
+        if (profile == null || !profile.getMissing().isEmpty()) {
+            CRC32 crc = new CRC32();
+            crc.update(buffer.getBuffer(), 0, buffer.size());
+            OffsetProfile completed = OffsetProfile.getDetected(romId, buffer.size(), crc.getValue());
+            if (completed == null) {
+                OffsetFinder finder = new OffsetFinder(buffer, getPointerIndex());
+                Map<String, Integer> found = finder.find();
+                completed = (profile != null ? profile : OffsetProfile.unknown(romId, "Unknown game (detected offsets)", finder.isJapanese())).complete(found);
+                OffsetProfile.putDetected(completed, buffer.size(), crc.getValue());
+            }
+            if (profile == null)
+                isLoaded = completed.getMissing().isEmpty();
+            profile = completed;
         }
+        
+        romDescription = profile.description;
+        isJapanese = profile.isJapanese;
+        dungeonPointerOffset = profile.dungeonPointerOffset;
+        pokemonPointerOffset = profile.pokemonPointerOffset;
+        itemPointerOffset = profile.itemPointerOffset;
+        dungeonMainOffset = profile.dungeonMainOffset;
+        dungeonFloorsPointerOffset = profile.dungeonFloorsPointerOffset;
+        dungeonMapOffset = profile.dungeonMapOffset;
+        pokemonStartersOffset = profile.pokemonStartersOffset;
+        pokemonPartnersOffset = profile.pokemonPartnersOffset;
+        movesOffset = profile.movesOffset;
+        moneyOffset = profile.moneyOffset;
+        areasTextOffset = profile.areasTextOffset;
+        areasTextSearched = profile.isSearched("areasTextOffset");
+        areasMainOffset = profile.areasMainOffset;
+        exclusivePokemonOffset = profile.exclusivePokemonOffset;
+        tilesetGraphicsPointerOffset = profile.tilesetGraphicsPointerOffset;
+        tilesetPalettePointerOffset = profile.tilesetPalettePointerOffset;
+        itemIconsOffset = profile.itemIconsOffset;
+        itemPalettesOffset = profile.itemPalettesOffset;
+        tilesetsSearched = false;
+        itemGraphicsSearched = false;
+    }
+    
+    /**
+     * Searches the offsets of all tables in this ROM, regardless of the offset
+     * file.
+     * @return the offsets as a section for the offset file.
+     */
+    public String detectOffsets() {
+        OffsetFinder finder = new OffsetFinder(buffer, getPointerIndex());
+        finder.find();
+        if (dungeonLayouts != null)
+            finder.findTilesets(getTilesetCount());
+        if (items != null)
+            finder.findItemGraphics(getItemIconCount(), getItemPaletteCount());
+        return finder.toIni(romId, romName.trim() + " (detected)");
     }
     
     public void save() throws IOException {
@@ -153,7 +322,442 @@ public class RomFile {
         if (!isLoaded)
             return;
         
-        // storage of data
+        long start = Diagnostics.begin();
+        
+        storeAll();
+        
+        // create file if it does not exist
+        if (!(file.exists() && file.isFile())) {
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+        }
+        
+        // finally, write bytes to file
+        boolean fromOrigin = isOriginValid() && !origin.equals(file.getAbsoluteFile());
+        bumpFileVersion(file);
+        
+        if (buffer instanceof OverlayBuffer) {
+            // Unchanged spans are copied straight from the original file, if it still holds them
+            try (FileChannel source = fromOrigin ? FileChannel.open(origin.toPath(), StandardOpenOption.READ) : null;
+                    FileChannel target = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ((OverlayBuffer) buffer).writeTo(source, target);
+            }
+        }
+        else {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(buffer.getBuffer());
+                out.flush();
+            }
+            setOrigin(file);
+        }
+        
+        Diagnostics.end("RomFile.save", start);
+    }
+    
+    /**
+     * Writes a patch that turns an original ROM file into this ROM, including
+     * all changes that were not saved yet. The format is chosen by the
+     * extension of the patch file.
+     * @param original the original ROM file
+     * @param patch the patch file
+     * @throws IOException if reading or writing failed.
+     */
+    public void exportPatch(File original, File patch) throws IOException {
+        if (!isLoaded)
+            return;
+        PatchWriter.Format format = PatchWriter.Format.forFile(patch);
+        if (format == null)
+            throw new IOException("unknown patch format: " + patch.getName());
+        
+        long start = Diagnostics.begin();
+        storeAll();
+        
+        // Only the written pages can differ if the original holds the overlay's base
+        BitSet changed = null;
+        if (buffer instanceof OverlayBuffer && isOriginValid() && origin.equals(original.getAbsoluteFile())) {
+            changed = new BitSet();
+            for (int index : ((OverlayBuffer) buffer).getPageIndexes())
+                changed.set(index);
+        }
+        PatchWriter.write(format, original, buffer, changed, patch);
+        
+        Diagnostics.end("RomFile.exportPatch", start);
+    }
+    
+    /**
+     * Returns the bytes of this ROM. Writes to the buffer bypass the parsed
+     * records.
+     * @return the buffer, or {@code null} if nothing was loaded.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+    
+    /**
+     * Returns the ranges of all loaded records, for example to mark them in a
+     * hex view. Tables that were not loaded are left out.
+     * @return the regions, ordered by table.
+     */
+    public List<Region> getRegions() {
+        List<Region> ret = new ArrayList();
+        if (pokemon != null)
+            addRegions(ret, "Pokémon", Pokemon.class, pokemonDataOffset, Pokemon.SIZE, pokemon.size());
+        if (items != null)
+            addRegions(ret, "Items", Item.class, itemDataOffset, Item.SIZE, items.size());
+        if (moves != null)
+            addRegions(ret, "Moves", Move.class, movesOffset, isJapanese ? Move.SIZE_JAP : Move.SIZE, moves.size());
+        if (areas != null) {
+            addRegions(ret, "Areas", Area.class, areasMainOffset, Area.SIZE, areas.size());
+            if (areasTextOffset != 0x00000000)
+                addRegions(ret, "Area names", Area.class, areasTextOffset, 0x4, areas.size());
+        }
+        if (exclusivePokemon != null)
+            addRegions(ret, "Exclusive Pokémon", ExclusivePokemon.class, exclusivePokemonOffset, ExclusivePokemon.SIZE, exclusivePokemon.size());
+        if (starters != null) {
+            addRegions(ret, "Starters", int[].class, pokemonStartersOffset, 0x2, starters.length);
+            addRegions(ret, "Partners", int[].class, pokemonPartnersOffset, 0x2, partners.length);
+        }
+        if (moneyfactors != null)
+            addRegions(ret, "Money", long[].class, moneyOffset, 0x4, moneyfactors.length);
+        if (dungeons != null) {
+            addRegions(ret, "Dungeons", Dungeon.class, dungeonMainOffset, Dungeon.SIZE, dungeons.size());
+            addRegions(ret, "Dungeon map", Dungeon.class, dungeonMapOffset, 0x4, 64);
+            for (int i = 0 ; i < dungeons.size() ; i++) {
+                Dungeon dungeon = dungeons.get(i);
+                if (!dungeon.floors.isEmpty())
+                    ret.add(new Region(dungeon.floorsOffset, dungeon.floorsOffset + dungeon.floors.size() * Floor.SIZE, "Floors", Dungeon.class, i));
+            }
+            addRegions(ret, "Layouts", DungeonLayout.class, dungeonDataLayoutsOffset, DungeonLayout.SIZE, dungeonLayouts.size());
+            for (int i = 0 ; i < dungeonPokemon.size() ; i++)
+                ret.add(new Region(dungeonPokemon.get(i).offset, dungeonPokemon.get(i).offset + dungeonPokemon.get(i).allocated, "Spawn list", DungeonPokemon.class, i));
+            for (int i = 0 ; i < dungeonTraps.size() ; i++)
+                ret.add(new Region(dungeonTraps.get(i).offset, dungeonTraps.get(i).offset + DungeonTraps.SIZE, "Trap list", DungeonTraps.class, i));
+        }
+        return ret;
+    }
+    
+    private static void addRegions(List<Region> regions, String name, Class<?> type, int offset, int size, int count) {
+        for (int i = 0 ; i < count ; i++)
+            regions.add(new Region(offset + i * size, offset + (i + 1) * size, name, type, i));
+    }
+    
+    /**
+     * Returns the index of all pointers in this ROM. The index is built on the
+     * first call and follows all later writes to the ROM.
+     * @return the pointer index, or {@code null} if nothing was loaded.
+     */
+    public synchronized PointerIndex getPointerIndex() {
+        if (pointerIndex == null && buffer != null) {
+            long start = Diagnostics.begin();
+            pointerIndex = new PointerIndex(buffer);
+            Diagnostics.end("RomFile.getPointerIndex", start);
+        }
+        return pointerIndex;
+    }
+    
+    /**
+     * Returns the map of unused space in this ROM. The map is built on the
+     * first call and afterwards only changed by relocations.
+     * @return the free space map, or {@code null} if nothing was loaded.
+     */
+    public synchronized FreeSpace getFreeSpace() {
+        if (freeSpace == null && buffer != null) {
+            long start = Diagnostics.begin();
+            freeSpace = FreeSpace.scan(buffer, getPointerIndex());
+            Diagnostics.end("RomFile.getFreeSpace", start);
+        }
+        return freeSpace;
+    }
+    
+    /**
+     * Renders the preview of a dungeon tileset from the ROM. The tileset
+     * graphics may be LZ77 compressed.
+     * @param tileset the tileset ID
+     * @return the preview, or {@code null} if the tileset offsets are unknown
+     * or do not point to valid graphics.
+     */
+    public BufferedImage getTilesetImage(int tileset) {
+        findTilesets();
+        if (buffer == null || tilesetGraphicsPointerOffset == 0x00000000 || tilesetPalettePointerOffset == 0x00000000)
+            return null;
+        
+        // Searched offsets may be wrong, which shows up as data that does not decode
+        try {
+            int graphic = BitConverter.pointerToOffset(buffer.readIntAt(tilesetGraphicsPointerOffset + tileset * 0x4));
+            int palette = BitConverter.pointerToOffset(buffer.readIntAt(tilesetPalettePointerOffset + tileset * 0x4));
+            return getRenderCache().get(graphic, palette, () -> {
+                long start = Diagnostics.begin();
+                byte[] data = buffer.readUnsignedByteAt(graphic) == Lz77.TYPE ? Lz77.decompressAt(buffer, graphic) : buffer.readBytesAt(graphic, TILESET_WIDTH * TILESET_HEIGHT * Tiles.TILE_SIZE);
+                int height = Math.min(TILESET_HEIGHT, (data.length / Tiles.TILE_SIZE + TILESET_WIDTH - 1) / TILESET_WIDTH);
+                BufferedImage image = Tiles.render(data, 0, TILESET_WIDTH, Math.max(height, 1), Tiles.readPalette(buffer, palette));
+                Diagnostics.end("RomFile.renderTileset", start);
+                return image;
+            });
+        }
+        catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            System.err.println(ex);
+            return null;
+        }
+    }
+    
+    /**
+     * Renders an item icon from the ROM.
+     * @param icon the icon ID
+     * @param palette the palette ID
+     * @return the icon, or {@code null} if the item icon offsets are unknown
+     * or out of range.
+     */
+    public BufferedImage getItemIcon(int icon, int palette) {
+        findItemGraphics();
+        if (buffer == null || itemIconsOffset == 0x00000000 || itemPalettesOffset == 0x00000000)
+            return null;
+        
+        int graphic = itemIconsOffset + icon * 4 * Tiles.TILE_SIZE;
+        int colors = itemPalettesOffset + palette * Tiles.PALETTE_SIZE;
+        if (graphic + 4 * Tiles.TILE_SIZE > buffer.size() || colors + Tiles.PALETTE_SIZE > buffer.size())
+            return null;
+        return getRenderCache().get(graphic, colors, () -> {
+            return Tiles.render(buffer.readBytesAt(graphic, 4 * Tiles.TILE_SIZE), 0, 2, 2, Tiles.readPalette(buffer, colors));
+        });
+    }
+    
+    private synchronized void findTilesets() {
+        // Few offset files know the graphics, so they are searched once a preview needs them
+        if (tilesetsSearched || buffer == null || dungeonLayouts == null || tilesetGraphicsPointerOffset != 0x00000000 && tilesetPalettePointerOffset != 0x00000000)
+            return;
+        tilesetsSearched = true;
+        
+        Map<String, Integer> found = new OffsetFinder(buffer, getPointerIndex()).findTilesets(getTilesetCount());
+        if (tilesetGraphicsPointerOffset == 0x00000000)
+            tilesetGraphicsPointerOffset = found.getOrDefault("tilesetGraphicsPointerOffset", 0x00000000);
+        if (tilesetPalettePointerOffset == 0x00000000)
+            tilesetPalettePointerOffset = found.getOrDefault("tilesetPalettePointerOffset", 0x00000000);
+    }
+    
+    private synchronized void findItemGraphics() {
+        if (itemGraphicsSearched || buffer == null || items == null || itemIconsOffset != 0x00000000 && itemPalettesOffset != 0x00000000)
+            return;
+        itemGraphicsSearched = true;
+        
+        Map<String, Integer> found = new OffsetFinder(buffer, getPointerIndex()).findItemGraphics(getItemIconCount(), getItemPaletteCount());
+        if (itemIconsOffset == 0x00000000)
+            itemIconsOffset = found.getOrDefault("itemIconsOffset", 0x00000000);
+        if (itemPalettesOffset == 0x00000000)
+            itemPalettesOffset = found.getOrDefault("itemPalettesOffset", 0x00000000);
+    }
+    
+    private int getTilesetCount() {
+        int ret = 0;
+        for (DungeonLayout layout : dungeonLayouts)
+            ret = Math.max(ret, layout.tileset + 1);
+        return ret;
+    }
+    
+    private int getItemIconCount() {
+        int ret = 0;
+        for (Item item : items)
+            ret = Math.max(ret, item.icon + 1);
+        return ret;
+    }
+    
+    private int getItemPaletteCount() {
+        int ret = 0;
+        for (Item item : items)
+            ret = Math.max(ret, item.palette + 1);
+        return ret;
+    }
+    
+    private synchronized RenderCache getRenderCache() {
+        if (renderCache == null)
+            renderCache = new RenderCache(RENDER_BUDGET);
+        return renderCache;
+    }
+    
+    /**
+     * Reserves new bytes for a variable-length record that no longer fits into
+     * the bytes it was read from.
+     * @param space the free space to allocate from
+     * @param offset the current offset of the record
+     * @param size the size of the packed record
+     * @return the offset to write the record to.
+     * @throws IOException if there is not enough free space.
+     */
+    private static int placeRelocatable(FreeSpace space, int offset, int size) throws IOException {
+        int moved = space.allocate(size, 4);
+        if (moved < 0)
+            throw new IOException(String.format("not enough free space to move 0x%X bytes from 0x%08X", size, offset));
+        return moved;
+    }
+    
+    /**
+     * Writes a variable-length record to the offset chosen by
+     * {@link #placeRelocatable(FreeSpace, int, int)}. If it was moved, the
+     * pointer at {@code slot} is changed to the new location, and the old bytes
+     * are freed once nothing points into them anymore.
+     * @param slot the offset of the pointer to the record
+     * @param offset the current offset of the record
+     * @param allocated the number of bytes reserved at {@code offset}
+     * @param target the offset to write the record to
+     * @param data the packed record
+     */
+    private void storeRelocatable(int slot, int offset, int allocated, int target, byte[] data) {
+        markChanged();
+        buffer.writeBytesAt(target, data);
+        if (target == offset)
+            return;
+        buffer.writeOffsetAsPointerAt(slot, target);
+        
+        // Other tables may still share the old bytes, or a tail of them
+        if (getPointerIndex().getReferences(offset, offset + allocated).length == 0) {
+            byte[] fill = new byte[allocated];
+            Arrays.fill(fill, (byte) 0xFF);
+            buffer.writeBytesAt(offset, fill);
+            freeSpace.free(offset, allocated);
+        }
+    }
+    
+    /**
+     * Writes every string of the Pokemon, item, move and area tables to a
+     * translation file.
+     * @param f the translation file
+     * @throws IOException if the file could not be written.
+     */
+    public void exportText(File f) throws IOException {
+        if (!isLoaded)
+            return;
+        long start = Diagnostics.begin();
+        loadTextTables();
+        TextDump.write(this, TextDump.getEntries(this), f);
+        Diagnostics.end("RomFile.exportText", start);
+    }
+    
+    /**
+     * Reads a translation file and packs all strings of the Pokemon, item,
+     * move and area tables into free space. The old strings are freed unless
+     * something outside of these tables points to them, and all pointers in
+     * the tables are rewritten. Keys missing from the file keep their text.
+     * @param f the translation file
+     * @throws IOException if the file could not be read or there is not
+     * enough free space.
+     */
+    public void importText(File f) throws IOException {
+        if (!isLoaded)
+            return;
+        long start = Diagnostics.begin();
+        Map<String, String> texts = TextDump.read(f);
+        loadTextTables();
+        List<TextDump.Entry> entries = TextDump.getEntries(this);
+        PointerIndex index = getPointerIndex();
+        
+        // Area names keep their text if their pointers are not written back
+        int areasTextEnd = areasTextOffset + areas.size() * 0x4;
+        if (areasTextSearched) {
+            entries.removeIf((TextDump.Entry entry) -> entry.record instanceof Area);
+            areasTextEnd = areasTextOffset;
+        }
+        
+        // Pointers inside these tables are rewritten anyway
+        int[][] tables = {
+            { pokemonDataOffset, pokemonDataOffset + pokemon.size() * Pokemon.SIZE },
+            { itemDataOffset, itemDataOffset + items.size() * Item.SIZE },
+            { movesOffset, movesOffset + moves.size() * (isJapanese ? Move.SIZE_JAP : Move.SIZE) },
+            { areasTextOffset, areasTextEnd }
+        };
+        
+        // Merge the old strings where they overlap, e.g. when one ends another
+        long[] spans = new long[entries.size()];
+        for (int i = 0 ; i < spans.length ; i++) {
+            int offset = BitConverter.pointerToOffset(entries.get(i).getPointer());
+            spans[i] = (long) offset << 32 | (buffer.indexOf((byte) 0, offset) + 1);
+        }
+        Arrays.sort(spans);
+        
+        // Allocations are tried on a copy, so nothing changes if they fail
+        FreeSpace space = getFreeSpace().copy();
+        TreeMap<Integer, Integer> kept = new TreeMap();
+        List<int[]> freed = new ArrayList();
+        for (int i = 0 ; i < spans.length ; ) {
+            int first = (int) (spans[i] >>> 32), end = (int) spans[i];
+            for (i++ ; i < spans.length && (int) (spans[i] >>> 32) < end ; i++)
+                end = Math.max(end, (int) spans[i]);
+            
+            if (isReferencedOutside(index.getReferences(first, end), tables))
+                kept.put(first, end);
+            else {
+                freed.add(new int[] { first, end });
+                space.free(first, end - first);
+            }
+        }
+        
+        // Unchanged strings that must stay where they are keep their pointer
+        StringPacker packer = new StringPacker();
+        String[] values = new String[entries.size()];
+        int[] handles = new int[entries.size()];
+        for (int i = 0 ; i < handles.length ; i++) {
+            TextDump.Entry entry = entries.get(i);
+            values[i] = texts.containsKey(entry.key) ? texts.get(entry.key) : entry.getText();
+            
+            Map.Entry<Integer, Integer> region = kept.floorEntry(BitConverter.pointerToOffset(entry.getPointer()));
+            if (region != null && BitConverter.pointerToOffset(entry.getPointer()) < region.getValue() && values[i].equals(entry.getText()))
+                handles[i] = -1;
+            else
+                handles[i] = packer.add(encode(entry.key, values[i]));
+        }
+        if (!packer.pack(space))
+            throw new IOException("not enough free space for the text");
+        
+        markChanged();
+        for (int[] region : freed) {
+            byte[] fill = new byte[region[1] - region[0]];
+            Arrays.fill(fill, (byte) 0xFF);
+            buffer.writeBytesAt(region[0], fill);
+        }
+        packer.write(buffer);
+        for (int i = 0 ; i < handles.length ; i++) {
+            if (handles[i] >= 0)
+                entries.get(i).set(values[i], packer.getOffset(handles[i]));
+        }
+        freeSpace = space;
+        
+        storePokemon();
+        storeItems();
+        storeMoves();
+        storeAreas();
+        Diagnostics.end("RomFile.importText", start);
+    }
+    
+    private byte[] encode(String key, String val) throws IOException {
+        try {
+            return buffer.getTextCodec().encode(val);
+        }
+        catch (IllegalArgumentException ex) {
+            throw new IOException(key + ": " + ex.getMessage());
+        }
+    }
+    
+    private void loadTextTables() {
+        if (pokemon == null)
+            loadPokemon();
+        if (items == null)
+            loadItems();
+        if (moves == null)
+            loadMoves();
+        if (areas == null)
+            loadAreas();
+    }
+    
+    private static boolean isReferencedOutside(int[] sources, int[][] tables) {
+        for (int source : sources) {
+            boolean inside = false;
+            for (int[] table : tables)
+                inside |= source >= table[0] && source < table[1];
+            if (!inside)
+                return true;
+        }
+        return false;
+    }
+    
+    private void storeAll() throws IOException {
         storeDungeons();
         storeStarters();
         storePokemon();
@@ -162,21 +766,48 @@ public class RomFile {
         storeAreas();
         storeExclusivePokemon();
         storeMoneyFactors();
-        
-        // create file if it does not exist
-        if (!(file.exists() && file.isFile())) {
-            file.getParentFile().mkdirs();
-            file.createNewFile();
+    }
+    
+    /**
+     * Must be called before anything is written to the buffer directly. A plain
+     * buffer no longer matches the file it was read from afterwards, so saves,
+     * copies and snapshots stop copying bytes from that file. Overlays keep
+     * their base untouched and track the written pages themselves. Rendered
+     * graphics are dropped as well, since the write may have changed them.
+     */
+    private void markChanged() {
+        if (!(buffer instanceof OverlayBuffer))
+            origin = null;
+        renderCache = null;
+    }
+    
+    private void setOrigin(File f) {
+        origin = f.getAbsoluteFile();
+        originModified = origin.lastModified();
+        originLength = origin.length();
+        originVersion = getFileVersion(origin);
+    }
+    
+    private boolean isOriginValid() {
+        // Saves in this process are tracked exactly, other changes by size and time
+        return origin != null && getFileVersion(origin) == originVersion && origin.lastModified() == originModified && origin.length() == originLength;
+    }
+    
+    private static long getFileVersion(File f) {
+        synchronized (fileVersions) {
+            Long version = fileVersions.get(f.getAbsoluteFile());
+            return version != null ? version : 0;
         }
-        
-        // finally, write bytes to file
-        try (FileOutputStream out = new FileOutputStream(file)) {
-            out.write(buffer.getBuffer());
-            out.flush();
+    }
+    
+    private static void bumpFileVersion(File f) {
+        synchronized (fileVersions) {
+            fileVersions.put(f.getAbsoluteFile(), getFileVersion(f) + 1);
         }
     }
     
     public void loadStarters() {
+        long start = Diagnostics.begin();
         starters = new int[27];
         partners = new int[11];
         
@@ -187,12 +818,16 @@ public class RomFile {
         buffer.seek(pokemonPartnersOffset);
         for (int i = 0 ; i < 11 ; i++)
             partners[i] = buffer.readUnsignedShort();
+        
+        Diagnostics.end("RomFile.loadStarters", start);
     }
     
     public void storeStarters() {
         if (starters == null || partners == null)
             return;
         
+        long start = Diagnostics.begin();
+        markChanged();
         buffer.seek(pokemonStartersOffset);
         for (int starter : starters)
             buffer.writeUnsignedShort(starter);
@@ -200,9 +835,12 @@ public class RomFile {
         buffer.seek(pokemonPartnersOffset);
         for (int partner : partners)
             buffer.writeUnsignedShort(partner);
+        
+        Diagnostics.end("RomFile.storeStarters", start);
     }
     
     public void loadPokemon() {
+        long start = Diagnostics.begin();
         pokemon = new ArrayList();
         
         buffer.seek(pokemonPointerOffset);
@@ -211,19 +849,26 @@ public class RomFile {
         
         for (int i = 0 ; i < 424; i++)
             pokemon.add(Pokemon.unpack(buffer));
+        
+        Diagnostics.end("RomFile.loadPokemon", start);
     }
     
     public void storePokemon() {
         if (pokemon == null)
             return;
         
+        long start = Diagnostics.begin();
+        markChanged();
         buffer.seek(pokemonDataOffset);
         
         for (int i = 0 ; i < 424; i++)
             buffer.writeBytes(Pokemon.pack(pokemon.get(i)));
+        
+        Diagnostics.end("RomFile.storePokemon", start);
     }
     
     public void loadItems() {
+        long start = Diagnostics.begin();
         items = new ArrayList();
         
         buffer.seek(itemPointerOffset);
@@ -232,36 +877,50 @@ public class RomFile {
         
         for (int i = 0 ; i < 240 ; i++)
             items.add(Item.unpack(buffer));
+        
+        Diagnostics.end("RomFile.loadItems", start);
     }
     
     public void storeItems() {
         if (items == null)
             return;
         
+        long start = Diagnostics.begin();
+        markChanged();
         buffer.seek(itemDataOffset);
         
         for (int i = 0 ; i < 240 ; i++)
             buffer.writeBytes(Item.pack(items.get(i)));
+        
+        Diagnostics.end("RomFile.storeItems", start);
     }
     
     public void loadMoves() {
+        long start = Diagnostics.begin();
         moves = new ArrayList();
         
         buffer.seek(movesOffset);
         for (int i = 0 ; i < 413 ; i++)
             moves.add(Move.unpack(buffer));
+        
+        Diagnostics.end("RomFile.loadMoves", start);
     }
     
     public void storeMoves() {
         if (moves == null)
             return;
         
+        long start = Diagnostics.begin();
+        markChanged();
         buffer.seek(movesOffset);
         for (int i = 0 ; i < 413 ; i++)
             buffer.writeBytes(Move.pack(moves.get(i)));
+        
+        Diagnostics.end("RomFile.storeMoves", start);
     }
     
     public void loadAreas() {
+        long start = Diagnostics.begin();
         areas = new ArrayList();
         
         for (int i = 0 ; i < 58 ; i++) {
@@ -277,52 +936,79 @@ public class RomFile {
             
             areas.add(area);
         }
+        
+        Diagnostics.end("RomFile.loadAreas", start);
     }
     
     public void storeAreas() {
         if (areas == null)
             return;
         
+        long start = Diagnostics.begin();
+        markChanged();
         buffer.seek(areasMainOffset);
         for (int i = 0 ; i < 58 ; i++)
             buffer.writeBytes(Area.pack(areas.get(i)));
+        
+        // Text data, never written through an offset that was only searched
+        if (areasTextOffset != 0x00000000 && !areasTextSearched) {
+            for (int i = 0 ; i < 58 ; i++)
+                buffer.writeIntAt(areasTextOffset + i * 0x4, areas.get(i).namePointer);
+        }
+        
+        Diagnostics.end("RomFile.storeAreas", start);
     }
     
     public void loadExclusivePokemon() {
+        long start = Diagnostics.begin();
         exclusivePokemon = new ArrayList();
         
         buffer.seek(exclusivePokemonOffset);
         for (int i = 0 ; i < 12 ; i++)
             exclusivePokemon.add(ExclusivePokemon.unpack(buffer));
+        
+        Diagnostics.end("RomFile.loadExclusivePokemon", start);
     }
     
     public void storeExclusivePokemon() {
         if (exclusivePokemon == null)
             return;
         
+        long start = Diagnostics.begin();
+        markChanged();
         buffer.seek(exclusivePokemonOffset);
         for (int i = 0 ; i < 12 ; i++)
             buffer.writeBytes(ExclusivePokemon.pack(exclusivePokemon.get(i)));
+        
+        Diagnostics.end("RomFile.storeExclusivePokemon", start);
     }
     
     public void loadMoneyFactors() {
+        long start = Diagnostics.begin();
         moneyfactors = new long[100];
         
         buffer.seek(moneyOffset);
         for (int i = 0 ; i < 100 ; i++)
             moneyfactors[i] = buffer.readUnsignedInt();
+        
+        Diagnostics.end("RomFile.loadMoneyFactors", start);
     }
     
     public void storeMoneyFactors() {
         if (moneyfactors == null)
             return;
         
+        long start = Diagnostics.begin();
+        markChanged();
         buffer.seek(moneyOffset);
         for (long moneyfactor : moneyfactors)
             buffer.writeUnsignedInt(moneyfactor);
+        
+        Diagnostics.end("RomFile.storeMoneyFactors", start);
     }
     
     public void loadDungeons() {
+        long start = Diagnostics.begin();
         dungeons = new ArrayList();
         dungeonLayouts = new ArrayList();
         dungeonPokemon = new ArrayList();
@@ -393,12 +1079,40 @@ public class RomFile {
             buffer.seek(buffer.readPointerAsOffset());
             dungeonTraps.add(DungeonTraps.unpack(buffer));
         }
+        
+        Diagnostics.end("RomFile.loadDungeons", start);
     }
     
-    public void storeDungeons() {
+    /**
+     * Writes all dungeon tables. Spawn and trap lists that grew are moved to
+     * free space.
+     * @throws IOException if a grown list does not fit into free space. Nothing
+     * is written in that case.
+     */
+    public void storeDungeons() throws IOException {
         if (dungeons == null)
             return;
         
+        long start = Diagnostics.begin();
+        
+        // Grown lists are placed on a copy of the free space first, so nothing is written if one does not fit
+        FreeSpace space = null;
+        byte[][] pokemonData = new byte[839][];
+        int[] pokemonTargets = new int[839];
+        for (int i = 0 ; i < 839 ; i++) {
+            DungeonPokemon dunmons = dungeonPokemon.get(i);
+            pokemonData[i] = DungeonPokemon.pack(dunmons);
+            pokemonTargets[i] = dunmons.offset;
+            if (pokemonData[i].length > dunmons.allocated) {
+                if (space == null)
+                    space = getFreeSpace().copy();
+                pokemonTargets[i] = placeRelocatable(space, dunmons.offset, pokemonData[i].length);
+            }
+        }
+        if (space != null)
+            freeSpace = space;
+        markChanged();
+        
         // General dungeon entries
         for (int i = 0 ; i < 98 ; i++) {
             Dungeon dungeon = dungeons.get(i);
@@ -427,10 +1141,12 @@ public class RomFile {
             buffer.writeBytes(DungeonLayout.pack(layout));
         }
         
-        // Dungeon pokemon entries
+        // Dungeon pokemon entries, moved elsewhere if they grew
         for (int i = 0 ; i < 839 ; i++) {
             DungeonPokemon dunmons = dungeonPokemon.get(i);
-            buffer.writeBytesAt(dunmons.offset, DungeonPokemon.pack(dunmons));
+            storeRelocatable(dungeonDataPokemonOffset + i * 0x4, dunmons.offset, dunmons.allocated, pokemonTargets[i], pokemonData[i]);
+            dunmons.allocated = dunmons.offset == pokemonTargets[i] ? dunmons.allocated : pokemonData[i].length;
+            dunmons.offset = pokemonTargets[i];
         }
         
         // Dungeon items entries
@@ -444,5 +1160,7 @@ public class RomFile {
             DungeonTraps duntraps = dungeonTraps.get(i);
             buffer.writeBytesAt(duntraps.offset, DungeonTraps.pack(duntraps));
         }
+        
+        Diagnostics.end("RomFile.storeDungeons", start);
     }
 }
\ No newline at end of file
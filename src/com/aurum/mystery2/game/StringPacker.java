@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2.game;
+
+import com.aurum.mystery2.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Places zero-terminated strings into free space. Identical strings are
+ * stored once, and a string that is the end of another one points into it
+ * instead of being stored separately.
+ */
+public class StringPacker {
+    // Fields
+    private final Map<String, Integer> unique = new HashMap();
+    private final List<String> keys = new ArrayList();
+    private final List<Integer> indexes = new ArrayList();
+    private int[] offsets, roots;
+    
+    /**
+     * Adds a string to be packed.
+     * @param bytes the encoded string without the terminating zero
+     * @return the handle for {@link #getOffset(int)}.
+     */
+    public int add(byte[] bytes) {
+        // Latin-1 maps every byte to one char, so equal strings have equal keys
+        String key = new String(bytes, StandardCharsets.ISO_8859_1);
+        Integer index = unique.get(key);
+        if (index == null) {
+            unique.put(key, index = keys.size());
+            keys.add(key);
+        }
+        indexes.add(index);
+        return indexes.size() - 1;
+    }
+    
+    /**
+     * Allocates space for all strings, largest first.
+     * @param space the free space to allocate from
+     * @return {@code true} if all strings fit.
+     */
+    public boolean pack(FreeSpace space) {
+        int count = keys.size();
+        
+        // In reverse order a string comes right before the strings it ends
+        String[] reversed = new String[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0 ; i < count ; i++) {
+            reversed[i] = new StringBuilder(keys.get(i)).reverse().toString();
+            order[i] = i;
+        }
+        Arrays.sort(order, (Integer a, Integer b) -> reversed[a].compareTo(reversed[b]));
+        
+        roots = new int[count];
+        int[] delta = new int[count];
+        for (int i = count - 1 ; i >= 0 ; i--) {
+            int index = order[i];
+            roots[index] = index;
+            if (i + 1 < count && reversed[order[i + 1]].startsWith(reversed[index])) {
+                int root = roots[order[i + 1]];
+                roots[index] = root;
+                delta[index] = keys.get(root).length() - keys.get(index).length();
+            }
+        }
+        
+        List<Integer> sorted = new ArrayList();
+        for (int i = 0 ; i < count ; i++) {
+            if (roots[i] == i)
+                sorted.add(i);
+        }
+        sorted.sort((Integer a, Integer b) -> keys.get(b).length() - keys.get(a).length());
+        
+        offsets = new int[count];
+        for (int index : sorted) {
+            offsets[index] = space.allocate(keys.get(index).length() + 1, 1);
+            if (offsets[index] < 0)
+                return false;
+        }
+        for (int i = 0 ; i < count ; i++)
+            offsets[i] = offsets[roots[i]] + delta[i];
+        return true;
+    }
+    
+    /**
+     * Writes the packed strings to a buffer.
+     * @param buffer the buffer
+     */
+    public void write(ByteBuffer buffer) {
+        for (int i = 0 ; i < keys.size() ; i++) {
+            if (roots[i] != i)
+                continue;
+            byte[] bytes = keys.get(i).getBytes(StandardCharsets.ISO_8859_1);
+            buffer.writeBytesAt(offsets[i], Arrays.copyOf(bytes, bytes.length + 1));
+        }
+    }
+    
+    /**
+     * Returns the offset a string was packed to.
+     * @param handle the value returned by {@link #add(byte[])}
+     * @return the offset of the string.
+     */
+    public int getOffset(int handle) {
+        return offsets[indexes.get(handle)];
+    }
+    
+    /**
+     * Returns the number of bytes the packed strings occupy.
+     * @return the packed size.
+     */
+    public int getPackedSize() {
+        int size = 0;
+        for (int i = 0 ; i < keys.size() ; i++) {
+            if (roots[i] == i)
+                size += keys.get(i).length() + 1;
+        }
+        return size;
+    }
+}
\ No newline at end of file
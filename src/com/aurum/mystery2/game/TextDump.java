@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2.game;
+
+import com.aurum.mystery2.BitConverter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes translation files. Each line holds the key of a string, an
+ * equals sign and the text, with backslash escapes for line breaks and tabs.
+ * Keys are made of the table, the index and the field, e.g.
+ * {@code items.12.desc}.
+ */
+public class TextDump {
+    /**
+     * A string field of a record together with the pointer field next to it.
+     */
+    public static class Entry {
+        public final String key;
+        public final Object record;
+        private final Field text, pointer;
+        
+        private Entry(String key, Object record, Field text, Field pointer) {
+            this.key = key;
+            this.record = record;
+            this.text = text;
+            this.pointer = pointer;
+        }
+        
+        public String getText() {
+            try {
+                return (String) text.get(record);
+            }
+            catch (IllegalAccessException ex) {
+                return null;
+            }
+        }
+        
+        public int getPointer() {
+            try {
+                return pointer.getInt(record);
+            }
+            catch (IllegalAccessException ex) {
+                return 0;
+            }
+        }
+        
+        public void set(String val, int offset) {
+            try {
+                text.set(record, val);
+                pointer.setInt(record, BitConverter.offsetToPointer(offset));
+            }
+            catch (IllegalAccessException ex) {
+                System.err.println(ex);
+            }
+        }
+    }
+    
+    // Static fields
+    private static final String[][] TABLES = {
+        { "pokemon", "species", "category" },
+        { "items", "name", "desc" },
+        { "moves", "name", "desc", "log", "japUnk1", "japUnk2", "japNext" },
+        { "areas", "name" }
+    };
+    
+    /**
+     * Returns all strings of the loaded tables that a pointer refers to.
+     * @param rom the ROM
+     * @return the entries in file order.
+     */
+    public static List<Entry> getEntries(RomFile rom) {
+        List<Entry> ret = new ArrayList();
+        try {
+            for (String[] table : TABLES) {
+                List records = (List) RomFile.class.getField(table[0]).get(rom);
+                if (records == null)
+                    continue;
+                
+                for (int i = 0 ; i < records.size() ; i++) {
+                    Object record = records.get(i);
+                    for (int f = 1 ; f < table.length ; f++) {
+                        Field text = record.getClass().getField(table[f]);
+                        Field pointer = record.getClass().getField(table[f] + "Pointer");
+                        Entry entry = new Entry(table[0] + '.' + i + '.' + table[f], record, text, pointer);
+                        if (entry.getPointer() != 0 && entry.getText() != null)
+                            ret.add(entry);
+                    }
+                }
+            }
+        }
+        catch (NoSuchFieldException | IllegalAccessException ex) {
+            System.err.println(ex);
+        }
+        return ret;
+    }
+    
+    /**
+     * Writes the strings of all entries to a translation file.
+     * @param rom the ROM
+     * @param entries the entries
+     * @param file the translation file
+     * @throws IOException if the file could not be written.
+     */
+    public static void write(RomFile rom, List<Entry> entries, File file) throws IOException {
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.write("# " + rom.getRomName() + " (" + rom.getRomId() + ")");
+            out.newLine();
+            for (Entry entry : entries) {
+                out.write(entry.key);
+                out.write('=');
+                out.write(escape(entry.getText()));
+                out.newLine();
+            }
+        }
+    }
+    
+    /**
+     * Reads a translation file.
+     * @param file the translation file
+     * @return the texts by key.
+     * @throws IOException if the file could not be read or has an invalid
+     * line.
+     */
+    public static Map<String, String> read(File file) throws IOException {
+        Map<String, String> ret = new HashMap();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            for (int number = 1 ; (line = in.readLine()) != null ; number++) {
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                int split = line.indexOf('=');
+                if (split <= 0)
+                    throw new IOException(file.getName() + ":" + number + ": missing key");
+                ret.put(line.substring(0, split).trim(), unescape(line.substring(split + 1)));
+            }
+        }
+        return ret;
+    }
+    
+    private static String escape(String val) {
+        StringBuilder sb = new StringBuilder(val.length());
+        for (char c : val.toCharArray()) {
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    sb.append(c);
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+    
+    private static String unescape(String val) {
+        StringBuilder sb = new StringBuilder(val.length());
+        for (int i = 0 ; i < val.length() ; i++) {
+            char c = val.charAt(i);
+            if (c != '\\' || i + 1 == val.length()) {
+                sb.append(c);
+                continue;
+            }
+            c = val.charAt(++i);
+            sb.append(c == 'n' ? '\n' : c == 'r' ? '\r' : c == 't' ? '\t' : c);
+        }
+        return sb.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2.graphics;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Keeps rendered images by graphic and palette offset. When the images exceed
+ * the memory budget, the least recently used ones are evicted.
+ */
+public class RenderCache {
+    // Fields
+    private final LinkedHashMap<Long, BufferedImage> images = new LinkedHashMap(16, 0.75f, true);
+    private final long budget;
+    private long used;
+    
+    /**
+     * Creates a cache.
+     * @param budget the maximum number of bytes held by the cached pixels
+     */
+    public RenderCache(long budget) {
+        this.budget = budget;
+    }
+    
+    /**
+     * Returns the cached image for a graphic and palette, rendering it first
+     * if it is not cached.
+     * @param graphic the offset of the graphic
+     * @param palette the offset of the palette
+     * @param renderer renders the image if it is not cached
+     * @return the image.
+     */
+    public synchronized BufferedImage get(int graphic, int palette, Supplier<BufferedImage> renderer) {
+        long key = (long) graphic << 32 | (palette & 0xFFFFFFFFL);
+        BufferedImage image = images.get(key);
+        if (image != null)
+            return image;
+        
+        image = renderer.get();
+        images.put(key, image);
+        used += sizeOf(image);
+        
+        // Never evict the image that was just rendered
+        Iterator<Map.Entry<Long, BufferedImage>> it = images.entrySet().iterator();
+        while (used > budget && images.size() > 1) {
+            used -= sizeOf(it.next().getValue());
+            it.remove();
+        }
+        return image;
+    }
+    
+    /**
+     * Removes all images.
+     */
+    public synchronized void clear() {
+        images.clear();
+        used = 0;
+    }
+    
+    /**
+     * Returns the number of bytes held by the cached pixels.
+     * @return the number of bytes.
+     */
+    public synchronized long getUsed() {
+        return used;
+    }
+    
+    /**
+     * Returns the number of cached images.
+     * @return the number of images.
+     */
+    public synchronized int size() {
+        return images.size();
+    }
+    
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2.graphics;
+
+import com.aurum.mystery2.ByteBuffer;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Decodes 4bpp tiles and 16 color palettes of the GBA. A tile is 8x8 pixels
+ * stored as 32 bytes, two pixels per byte with the left pixel in the low
+ * nibble. A palette is 16 BGR555 colors, the first of which is transparent.
+ */
+public class Tiles {
+    // Static fields
+    public static final int TILE_SIZE = 0x20;
+    public static final int PALETTE_SIZE = 0x20;
+    
+    /**
+     * Reads a 16 color palette and converts it to ARGB.
+     * @param buffer the buffer
+     * @param offset the offset of the palette
+     * @return the 16 ARGB colors.
+     */
+    public static int[] readPalette(ByteBuffer buffer, int offset) {
+        int[] ret = new int[16];
+        for (int i = 0 ; i < 16 ; i++) {
+            int color = buffer.readUnsignedShortAt(offset + i * 2);
+            int r = color & 0x1F, g = (color >> 5) & 0x1F, b = (color >> 10) & 0x1F;
+            
+            // Repeat the top bits so that 0x1F becomes 0xFF instead of 0xF8
+            ret[i] = (i == 0 ? 0 : 0xFF000000) | (r << 19 | (r >> 2) << 16) | (g << 11 | (g >> 2) << 8) | (b << 3 | b >> 2);
+        }
+        return ret;
+    }
+    
+    /**
+     * Renders consecutive tiles row by row into a new image.
+     * @param data the tile data
+     * @param offset the offset of the first tile in {@code data}
+     * @param width the width in tiles
+     * @param height the height in tiles
+     * @param palette the ARGB palette
+     * @return the image.
+     */
+    public static BufferedImage render(byte[] data, int offset, int width, int height, int[] palette) {
+        BufferedImage image = new BufferedImage(width * 8, height * 8, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int stride = width * 8;
+        
+        for (int tile = 0 ; tile < width * height ; tile++) {
+            int src = offset + tile * TILE_SIZE;
+            if (src + TILE_SIZE > data.length)
+                break;
+            
+            int dst = (tile / width) * 8 * stride + (tile % width) * 8;
+            for (int y = 0 ; y < 8 ; y++, dst += stride) {
+                for (int x = 0 ; x < 8 ; x += 2) {
+                    int pair = data[src++];
+                    pixels[dst + x] = palette[pair & 0xF];
+                    pixels[dst + x + 1] = palette[(pair >> 4) & 0xF];
+                }
+            }
+        }
+        return image;
+    }
+}
\ No newline at end of file
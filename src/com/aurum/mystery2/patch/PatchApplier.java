@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.patch;
+
+import com.aurum.mystery2.ByteBuffer;
+import com.aurum.mystery2.ByteOrder;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Applies IPS, UPS and BPS patches. The source ROM is streamed into the array
+ * that becomes the target, and checksums are verified while the data passes
+ * through, so no patch needs a second pass over the ROM.
+ */
+public class PatchApplier {
+    /**
+     * The outcome of applying one patch in a batch.
+     */
+    public static class Result {
+        public final File patch, output;
+        public final IOException error;
+        
+        private Result(File patch, File output, IOException error) {
+            this.patch = patch;
+            this.output = output;
+            this.error = error;
+        }
+    }
+    
+    /**
+     * A ROM image together with its checksum, if known.
+     */
+    private static class Image {
+        final byte[] bytes;
+        long crc;
+        
+        Image(byte[] bytes, long crc) {
+            this.bytes = bytes;
+            this.crc = crc;
+        }
+        
+        long getCrc() {
+            if (crc < 0) {
+                CRC32 checksum = new CRC32();
+                checksum.update(bytes, 0, bytes.length);
+                crc = checksum.getValue();
+            }
+            return crc;
+        }
+    }
+    
+    private static final int IPS_EOF = 0x454F46;
+    
+    /**
+     * Applies a stack of patches to a ROM file, in the given order.
+     * @param source the original ROM file
+     * @param patches the patches
+     * @return the patched ROM.
+     * @throws IOException if a file could not be read, a patch is malformed or
+     * a checksum does not match.
+     */
+    public static ByteBuffer apply(File source, List<File> patches) throws IOException {
+        Image image = read(source);
+        for (File patch : patches)
+            image = apply(image, patch, true);
+        return new ByteBuffer(image.bytes, ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Applies each patch on its own to the same ROM file and saves the
+     * results to a folder. The source is read only once and the patches are
+     * applied concurrently. Failed patches are reported in the results.
+     * @param source the original ROM file
+     * @param patches the patches
+     * @param folder the output folder
+     * @return the results, in the order of the patches.
+     * @throws IOException if the source could not be read.
+     */
+    public static List<Result> applyEach(File source, List<File> patches, File folder) throws IOException {
+        final Image image = read(source);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(patches.size(), Runtime.getRuntime().availableProcessors())));
+        List<Future<Result>> futures = new ArrayList();
+        
+        try {
+            for (File patch : patches) {
+                futures.add(pool.submit(() -> {
+                    String name = patch.getName();
+                    File output = new File(folder, (name.lastIndexOf('.') > 0 ? name.substring(0, name.lastIndexOf('.')) : name) + ".gba");
+                    try {
+                        // The shared source is never modified
+                        Image result = apply(image, patch, false);
+                        folder.mkdirs();
+                        try (FileOutputStream out = new FileOutputStream(output)) {
+                            out.write(result.bytes);
+                        }
+                        return new Result(patch, output, null);
+                    }
+                    catch (IOException ex) {
+                        return new Result(patch, null, ex);
+                    }
+                }));
+            }
+            
+            List<Result> results = new ArrayList();
+            for (Future<Result> future : futures)
+                results.add(future.get());
+            return results;
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+        catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    private static Image read(File source) throws IOException {
+        long length = source.length();
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("file too large: " + source);
+        
+        // The checksum is computed while the file streams into the array
+        byte[] bytes = new byte[(int) length];
+        CRC32 crc = new CRC32();
+        try (InputStream in = new FileInputStream(source)) {
+            int pos = 0;
+            while (pos < bytes.length) {
+                int count = in.read(bytes, pos, Math.min(1 << 16, bytes.length - pos));
+                if (count < 0)
+                    throw new IOException("unexpected end of file: " + source);
+                crc.update(bytes, pos, count);
+                pos += count;
+            }
+        }
+        return new Image(bytes, crc.getValue());
+    }
+    
+    private static Image apply(Image source, File file, boolean inPlace) throws IOException {
+        byte[] patch = Files.readAllBytes(file.toPath());
+        String magic = patch.length >= 4 ? new String(patch, 0, 4, "ASCII") : "";
+        
+        try {
+            if (magic.equals("PATC"))
+                return applyIps(source, patch, inPlace);
+            else if (magic.equals("UPS1"))
+                return applyUps(source, patch, inPlace);
+            else if (magic.equals("BPS1"))
+                return applyBps(source, patch);
+        }
+        catch (IndexOutOfBoundsException | NegativeArraySizeException ex) {
+            throw new IOException("malformed patch: " + file);
+        }
+        throw new IOException("unknown patch format: " + file);
+    }
+    
+    // IPS
+    
+    private static Image applyIps(Image source, byte[] patch, boolean inPlace) throws IOException {
+        if (patch.length < 8 || !new String(patch, 0, 5, "ASCII").equals("PATCH"))
+            throw new IOException("malformed IPS header");
+        
+        byte[] out = inPlace ? source.bytes : source.bytes.clone();
+        int i = 5;
+        while (true) {
+            int offset = readBigEndian(patch, i, 3);
+            if (offset == IPS_EOF)
+                break;
+            int size = readBigEndian(patch, i + 3, 2);
+            i += 5;
+            
+            // Records with a size of zero repeat a single byte
+            int count = size != 0 ? size : readBigEndian(patch, i, 2);
+            if (offset + count > out.length)
+                out = Arrays.copyOf(out, offset + count);
+            if (size != 0) {
+                System.arraycopy(patch, i, out, offset, size);
+                i += size;
+            }
+            else {
+                Arrays.fill(out, offset, offset + count, patch[i + 2]);
+                i += 3;
+            }
+        }
+        
+        // Truncation extension
+        i += 3;
+        if (i + 3 <= patch.length)
+            out = Arrays.copyOf(out, readBigEndian(patch, i, 3));
+        
+        return new Image(out, -1);
+    }
+    
+    // UPS
+    
+    private static Image applyUps(Image source, byte[] patch, boolean inPlace) throws IOException {
+        int[] pos = { 4 };
+        long sourceSize = readNumber(patch, pos), targetSize = readNumber(patch, pos);
+        int end = patch.length - 12;
+        verifyPatch(patch);
+        if (source.bytes.length != sourceSize || source.getCrc() != readLittleEndian(patch, end))
+            throw new IOException("the patch does not match the source ROM");
+        
+        byte[] out = inPlace && targetSize == source.bytes.length ? source.bytes : Arrays.copyOf(source.bytes, (int) targetSize);
+        CRC32 crc = new CRC32();
+        int offset = 0, checked = 0;
+        
+        while (pos[0] < end) {
+            offset += readNumber(patch, pos);
+            while (true) {
+                int x = patch[pos[0]++] & 0xFF;
+                if (offset < out.length)
+                    out[offset] ^= x;
+                offset++;
+                if (x == 0)
+                    break;
+            }
+            
+            // Hunks only move forward, so everything before the current one is final
+            int done = Math.min(offset, out.length);
+            crc.update(out, checked, done - checked);
+            checked = done;
+        }
+        crc.update(out, checked, out.length - checked);
+        
+        if (crc.getValue() != readLittleEndian(patch, end + 4))
+            throw new IOException("target checksum mismatch");
+        return new Image(out, crc.getValue());
+    }
+    
+    // BPS
+    
+    private static Image applyBps(Image source, byte[] patch) throws IOException {
+        int[] pos = { 4 };
+        long sourceSize = readNumber(patch, pos), targetSize = readNumber(patch, pos);
+        long metadata = readNumber(patch, pos);
+        pos[0] += metadata;
+        int end = patch.length - 12;
+        verifyPatch(patch);
+        if (source.bytes.length != sourceSize || source.getCrc() != readLittleEndian(patch, end))
+            throw new IOException("the patch does not match the source ROM");
+        
+        byte[] src = source.bytes, out = new byte[(int) targetSize];
+        CRC32 crc = new CRC32();
+        int output = 0, sourceRelative = 0, targetRelative = 0;
+        
+        while (pos[0] < end) {
+            long data = readNumber(patch, pos);
+            int length = (int) (data >> 2) + 1;
+            switch ((int) (data & 3)) {
+                case 0: // SourceRead
+                    System.arraycopy(src, output, out, output, length);
+                    break;
+                case 1: // TargetRead
+                    System.arraycopy(patch, pos[0], out, output, length);
+                    pos[0] += length;
+                    break;
+                case 2: // SourceCopy
+                    sourceRelative += readOffset(patch, pos);
+                    System.arraycopy(src, sourceRelative, out, output, length);
+                    sourceRelative += length;
+                    break;
+                default: // TargetCopy, which may overlap its own output
+                    targetRelative += readOffset(patch, pos);
+                    for (int i = 0 ; i < length ; i++)
+                        out[output + i] = out[targetRelative++];
+                    break;
+            }
+            crc.update(out, output, length);
+            output += length;
+        }
+        
+        if (output != out.length || crc.getValue() != readLittleEndian(patch, end + 4))
+            throw new IOException("target checksum mismatch");
+        return new Image(out, crc.getValue());
+    }
+    
+    // Helpers
+    
+    private static void verifyPatch(byte[] patch) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(patch, 0, patch.length - 4);
+        if (crc.getValue() != readLittleEndian(patch, patch.length - 4))
+            throw new IOException("patch checksum mismatch");
+    }
+    
+    private static long readNumber(byte[] patch, int[] pos) {
+        // The variable length encoding shared by UPS and BPS
+        long data = 0, shift = 1;
+        while (true) {
+            int x = patch[pos[0]++] & 0xFF;
+            data += (x & 0x7F) * shift;
+            if ((x & 0x80) != 0)
+                return data;
+            shift <<= 7;
+            data += shift;
+        }
+    }
+    
+    private static int readOffset(byte[] patch, int[] pos) {
+        long data = readNumber(patch, pos);
+        return (int) ((data & 1) != 0 ? -(data >> 1) : data >> 1);
+    }
+    
+    private static int readBigEndian(byte[] bytes, int pos, int count) {
+        int value = 0;
+        for (int i = 0 ; i < count ; i++)
+            value = value << 8 | (bytes[pos + i] & 0xFF);
+        return value;
+    }
+    
+    private static long readLittleEndian(byte[] bytes, int pos) {
+        long value = 0;
+        for (int i = 3 ; i >= 0 ; i--)
+            value = value << 8 | (bytes[pos + i] & 0xFF);
+        return value;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.patch;
+
+import com.aurum.mystery2.ByteBuffer;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes the differences between an original ROM file and an edited buffer as
+ * an IPS, UPS or BPS patch. Both sides are streamed block by block in a single
+ * pass, and blocks that are known or found to be equal are skipped quickly.
+ */
+public class PatchWriter {
+    public static enum Format {
+        IPS, UPS, BPS;
+        
+        /**
+         * Returns the format that matches the extension of a file.
+         * @param file the patch file
+         * @return the format or {@code null}.
+         */
+        public static Format forFile(File file) {
+            String name = file.getName().toLowerCase();
+            for (Format format : values()) {
+                if (name.endsWith('.' + format.name().toLowerCase()))
+                    return format;
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * The size of the compared blocks. It matches the page size of overlay
+     * buffers so that their written pages can be used as a hint.
+     */
+    public static final int BLOCK_SIZE = 0x1000;
+    
+    private static final int IPS_MAX_OFFSET = 0xFFFFFF, IPS_MAX_RECORD = 0xFFFF, IPS_EOF = 0x454F46;
+    
+    /**
+     * Writes a patch that turns {@code original} into the content of
+     * {@code target}.
+     * @param format the patch format
+     * @param original the original ROM file
+     * @param target the edited buffer
+     * @param changed the blocks that may differ, or {@code null} to compare all
+     * @param patch the patch file
+     * @throws IOException if reading or writing failed, or the format cannot
+     * express the changes.
+     */
+    public static void write(Format format, File original, ByteBuffer target, BitSet changed, File patch) throws IOException {
+        long sourceSize = original.length();
+        int targetSize = target.size();
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(original), 1 << 16));
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(patch), 1 << 16)) {
+            Encoder encoder;
+            switch (format) {
+                case IPS: encoder = new IpsEncoder(out, sourceSize, targetSize); break;
+                case UPS: encoder = new UpsEncoder(out, sourceSize, targetSize); break;
+                default: encoder = new BpsEncoder(out, sourceSize, targetSize); break;
+            }
+            
+            long length = Math.max(sourceSize, targetSize);
+            byte[] src = new byte[BLOCK_SIZE];
+            for (long offset = 0 ; offset < length ; offset += BLOCK_SIZE) {
+                int len = (int) Math.min(BLOCK_SIZE, length - offset);
+                
+                // Bytes past the end of either side are zero
+                int srcLen = (int) Math.max(0, Math.min(len, sourceSize - offset));
+                in.readFully(src, 0, srcLen);
+                Arrays.fill(src, srcLen, len, (byte) 0);
+                byte[] dst = offset < targetSize ? target.readBytesAt((int) offset, (int) Math.min(len, targetSize - offset)) : new byte[0];
+                if (dst.length < len)
+                    dst = Arrays.copyOf(dst, len);
+                
+                encoder.crc(src, srcLen, dst, (int) Math.max(0, Math.min(len, targetSize - offset)));
+                
+                // Blocks that reach past the end of either side always need a closer look
+                boolean inside = offset + len <= Math.min(sourceSize, targetSize);
+                boolean differs = !inside || (changed == null || changed.get((int) (offset / BLOCK_SIZE))) && !Arrays.equals(src, dst);
+                if (differs)
+                    encoder.diff(offset, src, dst, len);
+                else
+                    encoder.equal(offset, dst, len);
+            }
+            
+            encoder.finish();
+        }
+    }
+    
+    // Encoders
+    
+    private static abstract class Encoder {
+        protected final OutputStream out;
+        protected final long sourceSize, targetSize;
+        protected final CRC32 sourceCrc = new CRC32(), targetCrc = new CRC32();
+        
+        protected Encoder(OutputStream out, long sourceSize, long targetSize) {
+            this.out = out;
+            this.sourceSize = sourceSize;
+            this.targetSize = targetSize;
+        }
+        
+        void crc(byte[] src, int srcLen, byte[] dst, int dstLen) {
+            sourceCrc.update(src, 0, srcLen);
+            targetCrc.update(dst, 0, dstLen);
+        }
+        
+        void diff(long offset, byte[] src, byte[] dst, int len) throws IOException {
+            for (int i = 0 ; i < len ; i++)
+                next(offset + i, src[i], dst[i]);
+        }
+        
+        abstract void equal(long offset, byte[] dst, int len) throws IOException;
+        abstract void next(long offset, byte src, byte dst) throws IOException;
+        abstract void finish() throws IOException;
+        
+        protected void writeNumber(OutputStream os, long value) throws IOException {
+            // The variable length encoding shared by UPS and BPS
+            while (true) {
+                int x = (int) (value & 0x7F);
+                value >>>= 7;
+                if (value == 0) {
+                    os.write(0x80 | x);
+                    return;
+                }
+                os.write(x);
+                value--;
+            }
+        }
+        
+        protected static void writeInt(OutputStream os, long value) throws IOException {
+            for (int i = 0 ; i < 4 ; i++)
+                os.write((int) (value >>> (i * 8)));
+        }
+    }
+    
+    private static class IpsEncoder extends Encoder {
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        private long recordOffset = -1;
+        private byte previous;
+        
+        IpsEncoder(OutputStream out, long sourceSize, long targetSize) throws IOException {
+            super(out, sourceSize, targetSize);
+            if (targetSize > IPS_MAX_OFFSET + 1)
+                throw new IOException("IPS patches cannot address more than 16 MiB");
+            out.write("PATCH".getBytes("ASCII"));
+        }
+        
+        @Override
+        void equal(long offset, byte[] dst, int len) throws IOException {
+            flush();
+            previous = dst[len - 1];
+        }
+        
+        @Override
+        void next(long offset, byte src, byte dst) throws IOException {
+            if (offset >= targetSize)
+                return;
+            
+            // Bytes past the end of the original must be written to grow the file
+            if (src != dst || offset >= sourceSize) {
+                if (recordOffset < 0) {
+                    recordOffset = offset;
+                    // This offset would be read as the end of the patch
+                    if (offset == IPS_EOF) {
+                        recordOffset--;
+                        record.write(previous);
+                    }
+                }
+                record.write(dst);
+                if (record.size() == IPS_MAX_RECORD)
+                    flush();
+            }
+            else
+                flush();
+            previous = dst;
+        }
+        
+        private void flush() throws IOException {
+            if (recordOffset < 0)
+                return;
+            
+            out.write((int) (recordOffset >> 16));
+            out.write((int) (recordOffset >> 8));
+            out.write((int) recordOffset);
+            out.write(record.size() >> 8);
+            out.write(record.size());
+            record.writeTo(out);
+            record.reset();
+            recordOffset = -1;
+        }
+        
+        @Override
+        void finish() throws IOException {
+            flush();
+            out.write("EOF".getBytes("ASCII"));
+            
+            // Truncation extension
+            if (targetSize < sourceSize) {
+                out.write((int) (targetSize >> 16));
+                out.write((int) (targetSize >> 8));
+                out.write((int) targetSize);
+            }
+        }
+    }
+    
+    private static class UpsEncoder extends Encoder {
+        private final CheckedOutputStream checked;
+        private long position;
+        private boolean inHunk;
+        
+        UpsEncoder(OutputStream out, long sourceSize, long targetSize) throws IOException {
+            super(new CheckedOutputStream(out, new CRC32()), sourceSize, targetSize);
+            checked = (CheckedOutputStream) this.out;
+            this.out.write("UPS1".getBytes("ASCII"));
+            writeNumber(this.out, sourceSize);
+            writeNumber(this.out, targetSize);
+        }
+        
+        @Override
+        void equal(long offset, byte[] dst, int len) throws IOException {
+            if (inHunk) {
+                out.write(0);
+                inHunk = false;
+                position = offset + 1;
+            }
+        }
+        
+        @Override
+        void next(long offset, byte src, byte dst) throws IOException {
+            int x = (src ^ dst) & 0xFF;
+            if (inHunk) {
+                out.write(x);
+                if (x == 0) {
+                    inHunk = false;
+                    position = offset + 1;
+                }
+            }
+            else if (x != 0) {
+                writeNumber(out, offset - position);
+                out.write(x);
+                inHunk = true;
+            }
+        }
+        
+        @Override
+        void finish() throws IOException {
+            if (inHunk)
+                out.write(0);
+            writeInt(out, sourceCrc.getValue());
+            writeInt(out, targetCrc.getValue());
+            writeInt(out, checked.getChecksum().getValue());
+        }
+    }
+    
+    private static class BpsEncoder extends Encoder {
+        private static final int SOURCE_READ = 0, TARGET_READ = 1;
+        
+        private final CheckedOutputStream checked;
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private int action = -1;
+        private long length;
+        
+        BpsEncoder(OutputStream out, long sourceSize, long targetSize) throws IOException {
+            super(new CheckedOutputStream(out, new CRC32()), sourceSize, targetSize);
+            checked = (CheckedOutputStream) this.out;
+            this.out.write("BPS1".getBytes("ASCII"));
+            writeNumber(this.out, sourceSize);
+            writeNumber(this.out, targetSize);
+            writeNumber(this.out, 0);
+        }
+        
+        @Override
+        void equal(long offset, byte[] dst, int len) throws IOException {
+            append(SOURCE_READ, len);
+        }
+        
+        @Override
+        void next(long offset, byte src, byte dst) throws IOException {
+            if (offset >= targetSize)
+                return;
+            if (src == dst && offset < sourceSize)
+                append(SOURCE_READ, 1);
+            else {
+                append(TARGET_READ, 1);
+                data.write(dst);
+            }
+        }
+        
+        private void append(int next, long len) throws IOException {
+            if (action != next)
+                flush();
+            action = next;
+            length += len;
+        }
+        
+        private void flush() throws IOException {
+            if (length > 0) {
+                writeNumber(out, (length - 1) << 2 | action);
+                data.writeTo(out);
+                data.reset();
+            }
+            length = 0;
+        }
+        
+        @Override
+        void finish() throws IOException {
+            flush();
+            writeInt(out, sourceCrc.getValue());
+            writeInt(out, targetCrc.getValue());
+            writeInt(out, checked.getChecksum().getValue());
+        }
+    }
+}
\ No newline at end of file
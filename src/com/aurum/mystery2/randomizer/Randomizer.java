@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.randomizer;
+
+import com.aurum.mystery2.Diagnostics;
+import com.aurum.mystery2.game.DungeonPokemon;
+import com.aurum.mystery2.game.Item;
+import com.aurum.mystery2.game.Move;
+import com.aurum.mystery2.game.RomFile;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+/**
+ * Produces randomized variants of a decoded ROM. The same base, profile and
+ * seed always result in the same bytes, no matter how many variants are
+ * generated at once or in which order they finish.
+ */
+public class Randomizer {
+    /**
+     * The constraints for a randomization run.
+     */
+    public static class Profile {
+        // Dungeon pokemon
+        public boolean shuffleDungeonPokemon = true;
+        public boolean shuffleProbabilities = true;
+        public int levelBand = 3;
+        
+        // Starters and partners
+        public boolean shuffleStarters = true;
+        public boolean startersFromAllSpecies = false;
+        
+        // Items
+        public boolean shufflePrices = true;
+        public int minPricePercent = 50, maxPricePercent = 150;
+        
+        // Moves
+        public boolean shuffleMoves = true;
+        public int powerDelta = 3, accuracyDelta = 10;
+    }
+    
+    // Static fields
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final int MAX_LEVEL = 100, MAX_ACCURACY = 100;
+    
+    private final RomFile base;
+    private final Profile profile;
+    private final int[] speciesPool;
+    
+    /**
+     * Creates a randomizer for the given base ROM. All data that the profile
+     * touches is loaded into the base if necessary, so it is decoded only
+     * once for all variants. The randomizer works on a snapshot, so the base
+     * may be edited and saved while variants are generated.
+     * @param rom the decoded base ROM
+     * @param profile the constraints
+     */
+    public Randomizer(RomFile rom, Profile profile) {
+        if (rom.dungeons == null) rom.loadDungeons();
+        if (rom.starters == null) rom.loadStarters();
+        if (rom.items == null) rom.loadItems();
+        if (rom.moves == null) rom.loadMoves();
+        
+        this.base = rom.snapshot();
+        this.profile = profile;
+        
+        // Species that already appear in dungeons are known to be valid
+        TreeSet<Integer> species = new TreeSet();
+        for (DungeonPokemon table : base.dungeonPokemon) {
+            for (DungeonPokemon.Entry entry : table.entries) {
+                if (entry.species != 0)
+                    species.add(entry.species);
+            }
+        }
+        speciesPool = species.stream().mapToInt(Integer::intValue).toArray();
+    }
+    
+    /**
+     * Returns the seed for one variant of a run.
+     * @param seed the seed of the run
+     * @param variant the variant number
+     * @return the variant seed.
+     */
+    public static long getVariantSeed(long seed, int variant) {
+        return new SplittableRandom(seed + variant * GOLDEN_GAMMA).nextLong();
+    }
+    
+    /**
+     * Creates a randomized copy of the base ROM. The copy only holds the
+     * pages it changed on top of the shared base bytes.
+     * @param seed the variant seed
+     * @return the randomized copy.
+     */
+    public RomFile randomize(long seed) {
+        long start = Diagnostics.begin();
+        RomFile rom = base.copy();
+        
+        // Every section gets its own stream, so disabling one leaves the others unchanged
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom dungeonRandom = root.split(), starterRandom = root.split(), itemRandom = root.split(), moveRandom = root.split();
+        
+        if (profile.shuffleDungeonPokemon || profile.shuffleProbabilities)
+            randomizeDungeonPokemon(rom, dungeonRandom);
+        if (profile.shuffleStarters)
+            randomizeStarters(rom, starterRandom);
+        if (profile.shufflePrices)
+            randomizePrices(rom, itemRandom);
+        if (profile.shuffleMoves)
+            randomizeMoves(rom, moveRandom);
+        
+        Diagnostics.end("Randomizer.randomize", start);
+        return rom;
+    }
+    
+    /**
+     * Generates and saves variants concurrently. Variant {@code i} is saved
+     * to {@code name + i + ".gba"} in the given folder.
+     * @param seed the seed of the run
+     * @param count the number of variants
+     * @param folder the output folder
+     * @param name the file name prefix
+     * @param progress called with each finished variant number, or {@code null}
+     * @return the saved files.
+     * @throws IOException if a variant could not be saved.
+     */
+    public List<File> generate(long seed, int count, File folder, String name, IntConsumer progress) throws IOException {
+        // Variants are small overlays, so the pool only needs to keep the processors busy
+        int threads = Math.max(1, Math.min(count, Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<File>> futures = new ArrayList();
+        
+        try {
+            for (int i = 0 ; i < count ; i++) {
+                final int variant = i;
+                futures.add(pool.submit(() -> {
+                    RomFile rom = randomize(getVariantSeed(seed, variant));
+                    rom.setFile(new File(folder, name + variant + ".gba"));
+                    rom.save();
+                    if (progress != null)
+                        progress.accept(variant);
+                    return rom.getFile();
+                }));
+            }
+            
+            List<File> files = new ArrayList();
+            for (Future<File> future : futures)
+                files.add(future.get());
+            return files;
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+        catch (ExecutionException ex) {
+            throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    // Dungeon pokemon
+    
+    private void randomizeDungeonPokemon(RomFile rom, SplittableRandom random) {
+        for (DungeonPokemon table : rom.dungeonPokemon) {
+            // Tables are written back in place, so their size must never change
+            List<DungeonPokemon.Entry> entries = table.entries;
+            
+            if (profile.shuffleDungeonPokemon) {
+                int[] used = new int[entries.size()];
+                for (int i = 0 ; i < entries.size() ; i++) {
+                    DungeonPokemon.Entry entry = entries.get(i);
+                    if (entry.species == 0)
+                        continue;
+                    
+                    entry.species = pickSpecies(random, used, i);
+                    used[i] = entry.species;
+                    entry.level = clamp(entry.level + nextInt(random, -profile.levelBand, profile.levelBand), 1, MAX_LEVEL);
+                }
+            }
+            
+            if (profile.shuffleProbabilities)
+                redistribute(entries, random);
+        }
+    }
+    
+    private int pickSpecies(SplittableRandom random, int[] used, int count) {
+        // Avoid duplicates within a table, unless the pool is too small for that
+        int species = 0;
+        for (int attempt = 0 ; attempt < 8 ; attempt++) {
+            species = speciesPool[random.nextInt(speciesPool.length)];
+            boolean duplicate = false;
+            for (int i = 0 ; i < count && !duplicate ; i++)
+                duplicate = used[i] == species;
+            if (!duplicate)
+                break;
+        }
+        return species;
+    }
+    
+    private static void redistribute(List<DungeonPokemon.Entry> entries, SplittableRandom random) {
+        int sum = 0, nonzero = 0;
+        for (DungeonPokemon.Entry entry : entries) {
+            sum += entry.probability;
+            if (entry.probability != 0)
+                nonzero++;
+        }
+        if (nonzero < 2 || nonzero > sum)
+            return;
+        
+        // Split the original sum at distinct random points, so every entry keeps a non-zero share
+        TreeSet<Integer> cuts = new TreeSet();
+        while (cuts.size() < nonzero - 1)
+            cuts.add(1 + random.nextInt(sum - 1));
+        
+        int previous = 0;
+        for (DungeonPokemon.Entry entry : entries) {
+            if (entry.probability == 0)
+                continue;
+            Integer cut = cuts.pollFirst();
+            int next = cut != null ? cut : sum;
+            entry.probability = next - previous;
+            previous = next;
+        }
+    }
+    
+    // Starters and partners
+    
+    private void randomizeStarters(RomFile rom, SplittableRandom random) {
+        int[] pool;
+        if (profile.startersFromAllSpecies)
+            pool = speciesPool.clone();
+        else {
+            TreeSet<Integer> species = new TreeSet();
+            for (int starter : rom.starters)
+                species.add(starter);
+            for (int partner : rom.partners)
+                species.add(partner);
+            pool = species.stream().mapToInt(Integer::intValue).toArray();
+        }
+        shuffle(pool, random);
+        
+        // Hand out distinct species as long as the pool lasts
+        int next = 0;
+        for (int i = 0 ; i < rom.starters.length ; i++)
+            rom.starters[i] = pool[next++ % pool.length];
+        for (int i = 0 ; i < rom.partners.length ; i++)
+            rom.partners[i] = pool[next++ % pool.length];
+    }
+    
+    // Items
+    
+    private void randomizePrices(RomFile rom, SplittableRandom random) {
+        for (Item item : rom.items) {
+            if (item.buyPrice == 0)
+                continue;
+            
+            int percent = nextInt(random, profile.minPricePercent, profile.maxPricePercent);
+            long buy = Math.max(1, Math.min(0xFFFFFFFFL, item.buyPrice * percent / 100));
+            item.sellPrice = Math.min(0xFFFFFFFFL, item.sellPrice * buy / item.buyPrice);
+            item.buyPrice = buy;
+        }
+    }
+    
+    // Moves
+    
+    private void randomizeMoves(RomFile rom, SplittableRandom random) {
+        for (Move move : rom.moves) {
+            // Status moves have no power, and accuracies above 100 mean "never misses"
+            if (move.ap > 0)
+                move.ap = (short) clamp(move.ap + nextInt(random, -profile.powerDelta, profile.powerDelta), 1, 255);
+            if (move.accuracy1 > 0 && move.accuracy1 <= MAX_ACCURACY)
+                move.accuracy1 = (byte) clamp(move.accuracy1 + nextInt(random, -profile.accuracyDelta, profile.accuracyDelta), 1, MAX_ACCURACY);
+        }
+    }
+    
+    // Helpers
+    
+    private static int nextInt(SplittableRandom random, int min, int max) {
+        return min >= max ? min : random.nextInt(min, max + 1);
+    }
+    
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+    
+    private static void shuffle(int[] values, SplittableRandom random) {
+        for (int i = values.length - 1 ; i > 0 ; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+}
\ No newline at end of file
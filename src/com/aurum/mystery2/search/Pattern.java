@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2.search;
+
+import com.aurum.mystery2.BitConverter;
+import com.aurum.mystery2.TextCodec;
+
+/**
+ * A byte pattern to search for. Single bytes of a pattern may be wildcards
+ * that match any byte, and a pattern may only match at aligned offsets.
+ */
+public class Pattern {
+    // Fields
+    public final String name;
+    public final int align;
+    
+    final byte[] bytes;
+    final boolean[] wildcards;
+    
+    private Pattern(String name, byte[] bytes, boolean[] wildcards, int align) {
+        if (bytes.length == 0)
+            throw new IllegalArgumentException("empty pattern");
+        boolean fixed = false;
+        for (int i = 0 ; i < bytes.length ; i++)
+            fixed |= wildcards == null || !wildcards[i];
+        if (!fixed)
+            throw new IllegalArgumentException("pattern has only wildcards");
+        this.name = name;
+        this.bytes = bytes;
+        this.wildcards = wildcards;
+        this.align = align;
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+    
+    /**
+     * Returns the number of bytes this pattern matches.
+     * @return the length.
+     */
+    public int length() {
+        return bytes.length;
+    }
+    
+    /**
+     * Returns whether a byte of this pattern matches any byte.
+     * @param index the index of the byte
+     * @return {@code true} if the byte is a wildcard.
+     */
+    public boolean isWildcard(int index) {
+        return wildcards != null && wildcards[index];
+    }
+    
+    /**
+     * Creates a pattern from hex digits, where {@code ??} matches any byte.
+     * Whitespace between the bytes is ignored.
+     * @param hex the hex string, for example {@code "10 27 ?? 00"}
+     * @return the pattern.
+     * @throws IllegalArgumentException if the string is no valid pattern.
+     */
+    public static Pattern hex(String hex) {
+        String digits = hex.replaceAll("\\s+", "");
+        if (digits.length() % 2 != 0)
+            throw new IllegalArgumentException("odd number of hex digits: " + hex);
+        
+        byte[] bytes = new byte[digits.length() / 2];
+        boolean[] wildcards = new boolean[bytes.length];
+        boolean any = false;
+        for (int i = 0 ; i < bytes.length ; i++) {
+            String pair = digits.substring(i * 2, i * 2 + 2);
+            if (pair.equals("??")) {
+                wildcards[i] = any = true;
+                continue;
+            }
+            try {
+                bytes[i] = (byte) Integer.parseInt(pair, 16);
+            }
+            catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("invalid hex byte: " + pair);
+            }
+        }
+        return new Pattern(hex.trim(), bytes, any ? wildcards : null, 1);
+    }
+    
+    /**
+     * Creates a pattern for a little-endian integer.
+     * @param value the value
+     * @param size the size in bytes, 1, 2 or 4
+     * @return the pattern, aligned to its size.
+     */
+    public static Pattern value(long value, int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0 ; i < size ; i++)
+            bytes[i] = (byte) (value >> (i * 8));
+        return new Pattern(String.format("u%d 0x%X", size * 8, value & ((1L << (size * 8)) - 1)), bytes, null, size);
+    }
+    
+    /**
+     * Creates a pattern for pointers to an offset.
+     * @param offset the offset
+     * @return the pattern, aligned to words.
+     */
+    public static Pattern pointer(int offset) {
+        Pattern value = value(BitConverter.offsetToPointer(BitConverter.pointerToOffset(offset)), 4);
+        return new Pattern(String.format("pointer to 0x%08X", BitConverter.pointerToOffset(offset)), value.bytes, null, 4);
+    }
+    
+    /**
+     * Creates a pattern for encoded text.
+     * @param text the text
+     * @param codec the codec of the ROM
+     * @return the pattern.
+     * @throws IllegalArgumentException if the text cannot be encoded.
+     */
+    public static Pattern text(String text, TextCodec codec) {
+        return new Pattern('"' + text + '"', codec.encode(text), null, 1);
+    }
+    
+    /**
+     * Parses a pattern from one line of the search dialog. The line may start
+     * with {@code hex:}, {@code u8:}, {@code u16:}, {@code u32:}, {@code ptr:}
+     * or {@code text:}. Lines without a prefix are hex patterns if they are
+     * valid ones and text otherwise.
+     * @param line the line
+     * @param codec the codec of the ROM
+     * @return the pattern.
+     * @throws IllegalArgumentException if the line is no valid pattern.
+     */
+    public static Pattern parse(String line, TextCodec codec) {
+        int colon = line.indexOf(':');
+        String prefix = colon > 0 ? line.substring(0, colon).trim().toLowerCase() : "";
+        String arg = colon > 0 ? line.substring(colon + 1).trim() : line.trim();
+        
+        try {
+            switch (prefix) {
+                case "hex":
+                    return hex(arg);
+                case "u8":
+                    return value(Long.decode(arg), 1);
+                case "u16":
+                    return value(Long.decode(arg), 2);
+                case "u32":
+                    return value(Long.decode(arg), 4);
+                case "ptr":
+                    return pointer(Long.decode(arg).intValue());
+                case "text":
+                    return text(arg, codec);
+            }
+        }
+        catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("invalid number: " + arg);
+        }
+        
+        try {
+            return hex(line);
+        }
+        catch (IllegalArgumentException ex) {
+            return text(line, codec);
+        }
+    }
+}
\ No newline at end of file
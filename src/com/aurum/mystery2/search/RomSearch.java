@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2.search;
+
+import com.aurum.mystery2.ByteBuffer;
+import com.aurum.mystery2.Diagnostics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Searches a buffer for several patterns at once. Every pattern is anchored at
+ * two of its bytes, and a single table lookup per offset finds all patterns
+ * that may start there. The buffer is split into chunks that are searched in
+ * parallel, and matches are reported as soon as a chunk is done.
+ */
+public class RomSearch {
+    public interface Listener {
+        /**
+         * Called with the matches of one chunk, in ascending order. Chunks may
+         * finish in any order and on any thread.
+         * @param pattern the pattern that matched
+         * @param offsets the offsets of the matches
+         */
+        public void found(Pattern pattern, int[] offsets);
+    }
+    
+    // Static fields
+    public static final int CHUNK_SIZE = 1 << 20;
+    
+    // Fields
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private int limit = Integer.MAX_VALUE;
+    
+    /**
+     * Sets the maximum number of matches to report per pattern and chunk.
+     * @param limit the limit
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+    
+    /**
+     * Stops a running search after the chunks that are in progress.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+    
+    /**
+     * Searches a buffer for patterns.
+     * @param buffer the buffer
+     * @param patterns the patterns
+     * @param listener receives the matches while the search runs
+     * @return the total number of matches.
+     */
+    public int search(ByteBuffer buffer, List<Pattern> patterns, Listener listener) {
+        long start = Diagnostics.begin();
+        final byte[] bytes = buffer.getBuffer();
+        final int size = buffer.size();
+        AtomicInteger total = new AtomicInteger();
+        
+        // Each pass looks for up to 64 patterns, one bit each
+        for (int first = 0 ; first < patterns.size() ; first += 64) {
+            final Pass pass = new Pass(patterns.subList(first, Math.min(first + 64, patterns.size())));
+            IntStream.range(0, (size + CHUNK_SIZE - 1) / CHUNK_SIZE).parallel().forEach((int c) -> {
+                if (cancelled.get())
+                    return;
+                
+                int[][] found = pass.find(bytes, size, c * CHUNK_SIZE, (int) Math.min((long) (c + 1) * CHUNK_SIZE, size), limit);
+                for (int i = 0 ; i < found.length ; i++) {
+                    if (found[i].length > 0) {
+                        total.addAndGet(found[i].length);
+                        listener.found(pass.patterns.get(i), found[i]);
+                    }
+                }
+            });
+        }
+        
+        Diagnostics.end("RomSearch.search", start);
+        return total.get();
+    }
+    
+    /**
+     * Searches a buffer for patterns and collects all matches.
+     * @param buffer the buffer
+     * @param patterns the patterns
+     * @return the offsets of the matches of each pattern, in ascending order.
+     */
+    public static int[][] searchAll(ByteBuffer buffer, List<Pattern> patterns) {
+        List<int[]>[] chunks = new List[patterns.size()];
+        for (int i = 0 ; i < chunks.length ; i++)
+            chunks[i] = new ArrayList();
+        
+        new RomSearch().search(buffer, patterns, (Pattern pattern, int[] offsets) -> {
+            List<int[]> list = chunks[patterns.indexOf(pattern)];
+            synchronized (list) {
+                list.add(offsets);
+            }
+        });
+        
+        int[][] ret = new int[chunks.length][];
+        for (int i = 0 ; i < ret.length ; i++) {
+            ret[i] = chunks[i].stream().flatMapToInt(Arrays::stream).toArray();
+            Arrays.sort(ret[i]);
+        }
+        return ret;
+    }
+    
+    private static class Pass {
+        final List<Pattern> patterns;
+        final long[] table = new long[0x10000];
+        final int[] anchors;
+        final int minAnchor, maxAnchor;
+        
+        Pass(List<Pattern> patterns) {
+            this.patterns = patterns;
+            this.anchors = new int[patterns.size()];
+            
+            int min = Integer.MAX_VALUE, max = 0;
+            for (int i = 0 ; i < anchors.length ; i++) {
+                Pattern pattern = patterns.get(i);
+                int anchor = anchors[i] = anchor(pattern);
+                min = Math.min(min, anchor);
+                max = Math.max(max, anchor);
+                
+                // Anchors without a fixed second byte are entered for every possible second byte
+                int lo = pattern.bytes[anchor] & 0xFF;
+                if (anchor + 1 < pattern.length() && !pattern.isWildcard(anchor + 1))
+                    table[lo | (pattern.bytes[anchor + 1] & 0xFF) << 8] |= 1L << i;
+                else {
+                    for (int hi = 0 ; hi < 0x100 ; hi++)
+                        table[lo | hi << 8] |= 1L << i;
+                }
+            }
+            minAnchor = min;
+            maxAnchor = max;
+        }
+        
+        private static int anchor(Pattern pattern) {
+            // Zeros and 0xFF fill large parts of a ROM, so pairs without them are checked less often
+            int best = -1, bestScore = -1;
+            for (int i = 0 ; i < pattern.length() ; i++) {
+                if (pattern.isWildcard(i))
+                    continue;
+                boolean pair = i + 1 < pattern.length() && !pattern.isWildcard(i + 1);
+                int score = (pair ? 4 : 0) + (isCommon(pattern.bytes[i]) ? 0 : 2) + (pair && !isCommon(pattern.bytes[i + 1]) ? 1 : 0);
+                if (score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            return best;
+        }
+        
+        private static boolean isCommon(byte b) {
+            return b == 0x00 || b == (byte) 0xFF;
+        }
+        
+        int[][] find(byte[] bytes, int size, int from, int to, int limit) {
+            int[][] ret = new int[patterns.size()][16];
+            int[] counts = new int[patterns.size()];
+            
+            // A match belongs to the chunk it starts in, and may reach into the next one
+            int end = (int) Math.min((long) to + maxAnchor, size);
+            for (int pos = from + minAnchor ; pos < end ; pos++) {
+                // The last byte of the buffer has no second byte, which only single byte anchors accept
+                int key = pos + 1 < size ? (bytes[pos] & 0xFF) | (bytes[pos + 1] & 0xFF) << 8 : bytes[pos] & 0xFF;
+                long bits = table[key];
+                if (bits == 0)
+                    continue;
+                
+                do {
+                    int i = Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    int start = pos - anchors[i];
+                    if (start < from || start >= to || counts[i] >= limit || !matches(bytes, size, start, patterns.get(i)))
+                        continue;
+                    if (counts[i] == ret[i].length)
+                        ret[i] = Arrays.copyOf(ret[i], counts[i] * 2);
+                    ret[i][counts[i]++] = start;
+                } while (bits != 0);
+            }
+            
+            for (int i = 0 ; i < ret.length ; i++)
+                ret[i] = Arrays.copyOf(ret[i], counts[i]);
+            return ret;
+        }
+        
+        private static boolean matches(byte[] bytes, int size, int start, Pattern pattern) {
+            if (start % pattern.align != 0 || start + pattern.length() > size)
+                return false;
+            for (int i = 0 ; i < pattern.length() ; i++) {
+                if (bytes[start + i] != pattern.bytes[i] && !pattern.isWildcard(i))
+                    return false;
+            }
+            return true;
+        }
+    }
+}
\ No newline at end of file
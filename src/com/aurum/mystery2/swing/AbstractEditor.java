@@ -17,19 +17,272 @@
 
 package com.aurum.mystery2.swing;
 
+import com.aurum.mystery2.Diagnostics;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Window;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import javax.swing.AbstractButton;
 import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JFrame;
+import javax.swing.JOptionPane;
+import javax.swing.JSlider;
+import javax.swing.JSpinner;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.JTextComponent;
 
 public abstract class AbstractEditor extends JFrame {
+    // Static fields
+    private static final Map<Class<? extends AbstractEditor>, AbstractEditor> editors = new HashMap();
+    private static final List<Window> windows = new ArrayList();
+    private static final List<BiConsumer<AbstractEditor, int[]>> saveListeners = new ArrayList();
+    
+    // Fields
+    private boolean modified, loading;
+    
     public AbstractEditor() {
         initComponents();
         initProperties();
+        initBulkEdit();
+        trackChanges(properties);
+    }
+    
+    /**
+     * Returns the live editor of the given type, creating it on first use,
+     * and brings it to the front. Registered editors are hidden instead of
+     * disposed when closed, so reopening them does not rebuild the UI.
+     * @param <T> the editor type
+     * @param type the editor class
+     * @param factory creates the editor if none is registered yet
+     * @return the registered editor.
+     */
+    public static <T extends AbstractEditor> T open(Class<T> type, Supplier<T> factory) {
+        AbstractEditor editor = editors.get(type);
+        
+        if (editor == null) {
+            editor = factory.get();
+            editor.setDefaultCloseOperation(javax.swing.WindowConstants.HIDE_ON_CLOSE);
+            editors.put(type, editor);
+        }
+        
+        editor.setVisible(true);
+        editor.toFront();
+        return type.cast(editor);
+    }
+    
+    /**
+     * Opens the editor of the given type and selects the entry at {@code index}.
+     * @param <T> the editor type
+     * @param type the editor class
+     * @param factory creates the editor if none is registered yet
+     * @param index the entry index
+     * @return the registered editor.
+     */
+    public static <T extends AbstractEditor> T open(Class<T> type, Supplier<T> factory, int index) {
+        T editor = open(type, factory);
+        editor.select(index);
+        return editor;
+    }
+    
+    /**
+     * Registers a window that is not an editor but holds on to the current
+     * ROM's data as well, so that {@link #closeAll()} disposes it too.
+     * @param <T> the window type
+     * @param window the window
+     * @return the window.
+     */
+    public static <T extends Window> T track(T window) {
+        windows.add(window);
+        window.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent evt) {
+                windows.remove(window);
+            }
+        });
+        return window;
+    }
+    
+    /**
+     * Disposes all registered editors and tracked windows. This has to be
+     * called whenever the current ROM is replaced since they hold on to its
+     * data.
+     */
+    public static void closeAll() {
+        editors.values().forEach((editor) -> { editor.dispose(); });
+        editors.clear();
+        new ArrayList<>(windows).forEach((window) -> { window.dispose(); });
+        windows.clear();
+    }
+    
+    /**
+     * Adds a listener that is called with the editor and the entry indices
+     * whenever an editor stored entries into the current ROM's data. If the
+     * data was changed outside of an editor, both arguments are null and any
+     * entry may have changed.
+     * @param l the listener
+     */
+    public static void addSaveListener(BiConsumer<AbstractEditor, int[]> l) {
+        saveListeners.add(l);
+    }
+    
+    public static void removeSaveListener(BiConsumer<AbstractEditor, int[]> l) {
+        saveListeners.remove(l);
+    }
+    
+    protected void fireSaved(int... indices) {
+        for (BiConsumer<AbstractEditor, int[]> l : new ArrayList<>(saveListeners))
+            l.accept(this, indices);
+    }
+    
+    /**
+     * Notifies the save listeners that the current ROM's data was changed
+     * outside of an editor, e.g. by a table editor or a text import.
+     */
+    public static void fireChanged() {
+        for (BiConsumer<AbstractEditor, int[]> l : new ArrayList<>(saveListeners))
+            l.accept(null, null);
+    }
+    
+    /**
+     * Selects the entry at {@code index} and scrolls it into view.
+     * @param index the entry index
+     */
+    public void select(int index) {
+        if (index < 0 || index >= model.size())
+            return;
+        
+        // The editor may have been hidden with changes to the shown entry, which loading another one discards
+        if (modified && index != list.getSelectedIndex()) {
+            int option = JOptionPane.showConfirmDialog(this, "Save the changes to the current entry first?", getTitle(), JOptionPane.YES_NO_CANCEL_OPTION);
+            if (option == JOptionPane.YES_OPTION)
+                saveEntry();
+            else if (option != JOptionPane.NO_OPTION)
+                return;
+        }
+        
+        list.setSelectedIndex(index);
+        list.ensureIndexIsVisible(index);
     }
     
     protected abstract void initProperties();
     protected abstract void load();
     protected abstract void save();
     protected abstract void warningLabel();
+    
+    /**
+     * Returns the records that are edited by this editor. Editors that return
+     * a list support applying fields of one entry to all selected entries.
+     * @return the records or {@code null} if bulk editing is not supported.
+     */
+    protected List getRecords() {
+        return null;
+    }
+    
+    /**
+     * Returns readable descriptions of everything that references the entry
+     * at {@code index}, for example the floors that use a layout.
+     * @param index the entry index
+     * @return the references.
+     */
+    protected List<String> getReferences(int index) {
+        return Collections.emptyList();
+    }
+    
+    private void initBulkEdit() {
+        if (getRecords() == null)
+            return;
+        
+        bulkButton = new JButton("Apply to selection");
+        bulkButton.addActionListener((java.awt.event.ActionEvent evt) -> {
+            int[] indices = list.getSelectedIndices();
+            if (indices.length < 2) {
+                JOptionPane.showMessageDialog(this, "Select the entries to change first.", getTitle(), JOptionPane.PLAIN_MESSAGE, null);
+                return;
+            }
+            
+            // The shown entry is the source of the values, so store it first
+            save();
+            BulkEditDialog dialog = new BulkEditDialog(this, getRecords(), list.getSelectedIndex(), indices, this::getReferences);
+            dialog.setVisible(true);
+            int[] changed = dialog.getApplied();
+            if (changed.length == 0)
+                return;
+            reload();
+            fireSaved(changed);
+        });
+        toolbar.add(bulkButton);
+    }
+    
+    private void trackChanges(Container container) {
+        // Spinners and combo boxes are containers themselves, but their own events cover their editors
+        for (Component c : container.getComponents()) {
+            if (c instanceof JSpinner)
+                ((JSpinner) c).addChangeListener((javax.swing.event.ChangeEvent evt) -> { changed(c); });
+            else if (c instanceof JSlider)
+                ((JSlider) c).addChangeListener((javax.swing.event.ChangeEvent evt) -> { changed(c); });
+            else if (c instanceof JComboBox)
+                ((JComboBox) c).addActionListener((java.awt.event.ActionEvent evt) -> { changed(c); });
+            else if (c instanceof AbstractButton && !(c instanceof JButton))
+                ((AbstractButton) c).addItemListener((java.awt.event.ItemEvent evt) -> { changed(c); });
+            else if (c instanceof JTextComponent) {
+                ((JTextComponent) c).getDocument().addDocumentListener(new DocumentListener() {
+                    @Override
+                    public void insertUpdate(DocumentEvent evt) {
+                        changed(c);
+                    }
+                    
+                    @Override
+                    public void removeUpdate(DocumentEvent evt) {
+                        changed(c);
+                    }
+                    
+                    @Override
+                    public void changedUpdate(DocumentEvent evt) {}
+                });
+            }
+            else if (c instanceof Container)
+                trackChanges((Container) c);
+        }
+    }
+    
+    private void changed(Component c) {
+        // Read-only fields are only filled in by the editor itself
+        if (!loading && !(c instanceof JTextComponent && !((JTextComponent) c).isEditable()))
+            modified = true;
+    }
+    
+    private void reload() {
+        long start = Diagnostics.begin();
+        loading = true;
+        try {
+            load();
+        }
+        finally {
+            loading = false;
+        }
+        modified = false;
+        Diagnostics.end(getClass().getSimpleName() + ".load", start);
+    }
+    
+    private void saveEntry() {
+        long start = Diagnostics.begin();
+        save();
+        modified = false;
+        Diagnostics.end(getClass().getSimpleName() + ".save", start);
+        if (list.getSelectedIndex() >= 0)
+            fireSaved(list.getSelectedIndex());
+    }
 
     @SuppressWarnings("unchecked")
     // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
@@ -53,7 +306,7 @@ public abstract class AbstractEditor extends JFrame {
         warningLabel.setToolTipText("");
 
         list.setModel(model = new DefaultListModel());
-        list.setSelectionMode(javax.swing.ListSelectionModel.SINGLE_SELECTION);
+        list.setSelectionMode(javax.swing.ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
         list.setMaximumSize(new java.awt.Dimension(275, 535));
         list.setMinimumSize(new java.awt.Dimension(275, 535));
         list.addListSelectionListener(new javax.swing.event.ListSelectionListener() {
@@ -114,14 +367,15 @@ public abstract class AbstractEditor extends JFrame {
     }// </editor-fold>//GEN-END:initComponents
 
     private void saveButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_saveButtonActionPerformed
-        save();
+        saveEntry();
     }//GEN-LAST:event_saveButtonActionPerformed
 
     private void listValueChanged(javax.swing.event.ListSelectionEvent evt) {//GEN-FIRST:event_listValueChanged
-        load();
+        reload();
     }//GEN-LAST:event_listValueChanged
     
     protected DefaultListModel model;
+    protected JButton bulkButton;
     
     // Variables declaration - do not modify//GEN-BEGIN:variables
     protected javax.swing.JList<String> list;
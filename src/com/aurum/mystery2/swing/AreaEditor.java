@@ -4,6 +4,7 @@ import com.aurum.mystery2.BitConverter;
 import com.aurum.mystery2.Lists;
 import com.aurum.mystery2.game.Area;
 import com.aurum.mystery2.game.RomFile;
+import java.util.List;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JLabel;
 import javax.swing.JComboBox;
@@ -85,4 +86,9 @@ public class AreaEditor extends AbstractEditor {
 
     @Override
     protected void warningLabel() {}
+    
+    @Override
+    protected List getRecords() {
+        return RomFile.current.areas;
+    }
 }
\ No newline at end of file
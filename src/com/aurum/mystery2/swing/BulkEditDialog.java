@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.swing;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextArea;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Copies selected fields of one record to a set of other records. All changes
+ * are applied at once when the dialog is confirmed.
+ */
+public class BulkEditDialog extends JDialog {
+    private final List records;
+    private final Object source;
+    private final int[] targets;
+    private final Function<Integer, List<String>> references;
+    private final Field[] fields;
+    private final boolean[] checked;
+    private int[] applied = new int[0];
+    
+    private JTable table;
+    private JTextArea txtPreview;
+    private JButton btnApply, btnCancel;
+    
+    public BulkEditDialog(JFrame owner, List records, int source, int[] targets, Function<Integer, List<String>> references) {
+        super(owner, "Apply fields to selection", true);
+        
+        this.records = records;
+        this.source = records.get(source);
+        this.targets = targets;
+        this.references = references;
+        this.fields = getBulkFields(this.source.getClass());
+        this.checked = new boolean[fields.length];
+        
+        // Initialize the components
+        table = new JTable(new FieldTableModel());
+        table.getColumnModel().getColumn(0).setMaxWidth(50);
+        txtPreview = new JTextArea(6, 40);
+        txtPreview.setEditable(false);
+        txtPreview.setLineWrap(true);
+        txtPreview.setWrapStyleWord(true);
+        btnApply = new JButton("Apply");
+        btnApply.addActionListener((java.awt.event.ActionEvent evt) -> {
+            apply();
+            dispose();
+        });
+        btnCancel = new JButton("Cancel");
+        btnCancel.addActionListener((java.awt.event.ActionEvent evt) -> {
+            dispose();
+        });
+        
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.add(btnApply);
+        buttons.add(btnCancel);
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.add(new JScrollPane(txtPreview), BorderLayout.CENTER);
+        bottom.add(buttons, BorderLayout.SOUTH);
+        
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+        getContentPane().add(bottom, BorderLayout.SOUTH);
+        
+        setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+        setSize(460, 520);
+        setLocationRelativeTo(owner);
+        updatePreview();
+    }
+    
+    private static Field[] getBulkFields(Class<?> type) {
+        // Offsets, pointers and counts describe where data lives and must never be shared
+        List<Field> ret = new ArrayList();
+        for (Field field : RecordTableModel.getFields(type, false)) {
+            String name = field.getName();
+            if (name.equals("offset") || name.endsWith("Offset") || name.endsWith("Pointer") || name.endsWith("Count"))
+                continue;
+            ret.add(field);
+        }
+        return ret.toArray(new Field[ret.size()]);
+    }
+    
+    private static Object get(Field field, Object record) {
+        try {
+            return field.get(record);
+        }
+        catch (IllegalAccessException ex) {
+            return null;
+        }
+    }
+    
+    private boolean differs(Object record) {
+        for (int i = 0 ; i < fields.length ; i++) {
+            if (checked[i] && !Objects.equals(get(fields[i], record), get(fields[i], source)))
+                return true;
+        }
+        return false;
+    }
+    
+    private void updatePreview() {
+        int count = 0;
+        List<String> refs = new ArrayList();
+        
+        for (int index : targets) {
+            if (!differs(records.get(index)))
+                continue;
+            count++;
+            refs.addAll(references.apply(index));
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        sb.append(count).append(" of ").append(targets.length).append(" selected entries will change.");
+        if (!refs.isEmpty()) {
+            sb.append("\nReferenced by (").append(refs.size()).append("): ");
+            sb.append(String.join(", ", refs.subList(0, Math.min(refs.size(), 50))));
+            if (refs.size() > 50)
+                sb.append(", ...");
+        }
+        txtPreview.setText(sb.toString());
+        txtPreview.setCaretPosition(0);
+        btnApply.setEnabled(count > 0);
+    }
+    
+    /**
+     * Returns the indices of the records that were changed when the dialog
+     * was confirmed.
+     * @return the changed indices, empty if the dialog was cancelled.
+     */
+    public int[] getApplied() {
+        return applied;
+    }
+    
+    private void apply() {
+        List<Integer> changed = new ArrayList();
+        for (int index : targets) {
+            Object record = records.get(index);
+            if (!differs(record))
+                continue;
+            changed.add(index);
+            for (int i = 0 ; i < fields.length ; i++) {
+                if (!checked[i])
+                    continue;
+                try {
+                    fields[i].set(record, fields[i].get(source));
+                }
+                catch (IllegalAccessException ex) {
+                    System.err.println(ex);
+                }
+            }
+        }
+        applied = changed.stream().mapToInt(Integer::intValue).toArray();
+    }
+    
+    private class FieldTableModel extends AbstractTableModel {
+        @Override
+        public int getRowCount() {
+            return fields.length;
+        }
+        
+        @Override
+        public int getColumnCount() {
+            return 3;
+        }
+        
+        @Override
+        public String getColumnName(int col) {
+            return col == 0 ? "Apply" : col == 1 ? "Field" : "Value";
+        }
+        
+        @Override
+        public Class<?> getColumnClass(int col) {
+            return col == 0 ? Boolean.class : Object.class;
+        }
+        
+        @Override
+        public boolean isCellEditable(int row, int col) {
+            return col == 0;
+        }
+        
+        @Override
+        public Object getValueAt(int row, int col) {
+            return col == 0 ? checked[row] : col == 1 ? fields[row].getName() : get(fields[row], source);
+        }
+        
+        @Override
+        public void setValueAt(Object value, int row, int col) {
+            checked[row] = (Boolean) value;
+            updatePreview();
+        }
+    }
+}
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.aurum.mystery2.swing;
 
+import com.aurum.mystery2.analysis.RecruitmentEngine;
+
 public class CalcProbability extends javax.swing.JFrame {
     public CalcProbability() {
         initComponents();
@@ -91,20 +93,8 @@ public class CalcProbability extends javax.swing.JFrame {
     }// </editor-fold>//GEN-END:initComponents
 
     private void btnCalcActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnCalcActionPerformed
-        int level = (int) spnLevel.getValue();
-        
-        int levelfactor = 0;
-        if (level >= 30 && level <= 39) levelfactor = 50;
-        else if (level >= 30 && level <= 39) levelfactor = 50;
-        else if (level >= 40 && level <= 49) levelfactor = 75;
-        else if (level >= 50 && level <= 59) levelfactor = 100;
-        else if (level >= 60 && level <= 69) levelfactor = 125;
-        else if (level >= 70 && level <= 79) levelfactor = 150;
-        else if (level >= 80 && level <= 89) levelfactor = 175;
-        else if (level >= 90 && level <= 100) levelfactor = 240;
-        
-        float sum = (levelfactor + (short) spnFactor.getValue() + (chkFriendBow.isSelected() ? 100F : 0F)) / 10F;
-        txtResult.setText(Float.toString(sum) + '%');
+        float chance = RecruitmentEngine.getChance((short) spnFactor.getValue(), (int) spnLevel.getValue(), chkFriendBow.isSelected());
+        txtResult.setText(Float.toString(chance) + '%');
     }//GEN-LAST:event_btnCalcActionPerformed
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
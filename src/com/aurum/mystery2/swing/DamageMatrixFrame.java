@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.swing;
+
+import com.aurum.mystery2.Lists;
+import com.aurum.mystery2.Main;
+import com.aurum.mystery2.analysis.DamageMatrix;
+import com.aurum.mystery2.game.Dungeon;
+import com.aurum.mystery2.game.DungeonPokemon;
+import com.aurum.mystery2.game.Move;
+import com.aurum.mystery2.game.RomFile;
+import java.awt.BorderLayout;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.JToolBar;
+import javax.swing.table.DefaultTableModel;
+
+public class DamageMatrixFrame extends JFrame {
+    private static final String[] MOVE_COLUMNS = { "Move", "Type", "Category", "Accuracy", "Critical", "Mean damage" };
+    private static final String[] THREAT_COLUMNS = { "Floor", "Most threatening", "Level", "Spawn %", "Threat", "Weighted threat" };
+    
+    private final DamageMatrix matrix;
+    private final List<Integer> dungeons = new ArrayList();
+    
+    private JToolBar toolbar;
+    private JButton btnRefresh;
+    private JLabel lblStatus;
+    private JTabbedPane tabs;
+    private JComboBox<String> cmoAttacker, cmoDefender, cmoDungeon;
+    private JTable tblMoves, tblThreats;
+    private DefaultTableModel movesModel, threatsModel;
+    
+    public DamageMatrixFrame() {
+        long start = System.currentTimeMillis();
+        matrix = new DamageMatrix(RomFile.current.pokemon, RomFile.current.moves);
+        
+        setTitle("Damage matrix");
+        setIconImage(Main.icon);
+        setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+        
+        // Initialize the components
+        btnRefresh = new JButton("Refresh");
+        btnRefresh.setToolTipText("Recomputes the moves and species that were edited since the last refresh");
+        btnRefresh.addActionListener((java.awt.event.ActionEvent evt) -> {
+            long time = System.currentTimeMillis();
+            int changed = matrix.refresh();
+            updateMoves();
+            updateThreats();
+            lblStatus.setText(changed + " changed move(s) and species recomputed in " + (System.currentTimeMillis() - time) + " ms");
+        });
+        lblStatus = new JLabel(" ");
+        
+        cmoAttacker = new JComboBox(Lists.pokemon.subList(0, matrix.getPokemonCount()).toArray());
+        cmoAttacker.addActionListener((java.awt.event.ActionEvent evt) -> {
+            updateMoves();
+        });
+        movesModel = createModel(MOVE_COLUMNS);
+        tblMoves = new JTable(movesModel);
+        tblMoves.setAutoCreateRowSorter(true);
+        
+        cmoDefender = new JComboBox(Lists.pokemon.subList(0, matrix.getPokemonCount()).toArray());
+        cmoDefender.addActionListener((java.awt.event.ActionEvent evt) -> {
+            updateThreats();
+        });
+        cmoDungeon = new JComboBox();
+        for (int i = 0 ; i < RomFile.current.dungeons.size() ; i++) {
+            if (RomFile.current.dungeons.get(i).floors.isEmpty())
+                continue;
+            dungeons.add(i);
+            cmoDungeon.addItem(Lists.dungeons.get(i));
+        }
+        cmoDungeon.addActionListener((java.awt.event.ActionEvent evt) -> {
+            updateThreats();
+        });
+        threatsModel = createModel(THREAT_COLUMNS);
+        tblThreats = new JTable(threatsModel);
+        tblThreats.setAutoCreateRowSorter(true);
+        
+        JToolBar movesBar = new JToolBar();
+        movesBar.setFloatable(false);
+        movesBar.add(new JLabel("Attacker "));
+        movesBar.add(cmoAttacker);
+        JPanel pnlMoves = new JPanel(new BorderLayout());
+        pnlMoves.add(movesBar, BorderLayout.NORTH);
+        pnlMoves.add(new JScrollPane(tblMoves), BorderLayout.CENTER);
+        
+        JToolBar threatsBar = new JToolBar();
+        threatsBar.setFloatable(false);
+        threatsBar.add(new JLabel("Player "));
+        threatsBar.add(cmoDefender);
+        threatsBar.addSeparator();
+        threatsBar.add(cmoDungeon);
+        JPanel pnlThreats = new JPanel(new BorderLayout());
+        pnlThreats.add(threatsBar, BorderLayout.NORTH);
+        pnlThreats.add(new JScrollPane(tblThreats), BorderLayout.CENTER);
+        
+        tabs = new JTabbedPane();
+        tabs.addTab("Move ranking", pnlMoves);
+        tabs.addTab("Threats", pnlThreats);
+        
+        toolbar = new JToolBar();
+        toolbar.setFloatable(false);
+        toolbar.setRollover(true);
+        toolbar.add(btnRefresh);
+        
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(toolbar, BorderLayout.NORTH);
+        getContentPane().add(tabs, BorderLayout.CENTER);
+        getContentPane().add(lblStatus, BorderLayout.SOUTH);
+        
+        setSize(800, 600);
+        setLocationRelativeTo(null);
+        updateMoves();
+        updateThreats();
+        lblStatus.setText("Built " + matrix.getPokemonCount() + " x " + matrix.getMoveCount() + " x " + matrix.getPokemonCount() + " matrix in " + (System.currentTimeMillis() - start) + " ms");
+    }
+    
+    private static DefaultTableModel createModel(String[] columns) {
+        return new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int col) {
+                return false;
+            }
+            
+            @Override
+            public Class<?> getColumnClass(int col) {
+                Object value = getRowCount() > 0 ? getValueAt(0, col) : null;
+                return value != null ? value.getClass() : Object.class;
+            }
+        };
+    }
+    
+    private void updateMoves() {
+        movesModel.setRowCount(0);
+        int attacker = cmoAttacker.getSelectedIndex();
+        if (attacker < 0)
+            return;
+        
+        float[] ranking = matrix.rankMoves(attacker);
+        for (int m = 0 ; m < ranking.length ; m++) {
+            Move move = RomFile.current.moves.get(m);
+            int type = matrix.getMoveType(m);
+            movesModel.addRow(new Object[] {
+                move.name, Lists.types.get(type), type == 0 ? "" : DamageMatrix.isPhysical(type) ? "Physical" : "Special",
+                (int) move.accuracy1, (int) move.critical, round(ranking[m])
+            });
+        }
+    }
+    
+    private void updateThreats() {
+        threatsModel.setRowCount(0);
+        int defender = cmoDefender.getSelectedIndex();
+        if (defender < 0 || cmoDungeon.getSelectedIndex() < 0)
+            return;
+        
+        Dungeon dungeon = RomFile.current.dungeons.get(dungeons.get(cmoDungeon.getSelectedIndex()));
+        for (int f = 1 ; f < dungeon.floors.size() ; f++) {
+            int table = dungeon.floors.get(f).pokemon;
+            if (table >= RomFile.current.dungeonPokemon.size())
+                continue;
+            
+            DungeonPokemon.Entry worst = null;
+            float worstThreat = -1, weighted = 0;
+            for (DungeonPokemon.Entry entry : RomFile.current.dungeonPokemon.get(table).entries) {
+                if (entry.probability <= 0 || entry.species >= matrix.getPokemonCount())
+                    continue;
+                float threat = matrix.getThreat(entry.species, defender);
+                weighted += threat * entry.probability / 10000F;
+                if (threat > worstThreat) {
+                    worstThreat = threat;
+                    worst = entry;
+                }
+            }
+            if (worst == null)
+                continue;
+            
+            threatsModel.addRow(new Object[] {
+                f, Lists.pokemon.get(worst.species), worst.level, worst.probability / 100.0, round(worstThreat), round(weighted)
+            });
+        }
+    }
+    
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.swing;
+
+import com.aurum.mystery2.Diagnostics;
+import com.aurum.mystery2.Main;
+import java.awt.BorderLayout;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.JTextArea;
+import javax.swing.JToolBar;
+import javax.swing.Timer;
+import javax.swing.table.DefaultTableModel;
+
+public class DiagnosticsFrame extends JFrame {
+    private static final String[] COLUMNS = { "Operation", "Count", "Average (ms)", "Max (ms)", "Last (ms)" };
+    
+    private static DiagnosticsFrame instance;
+    private final Timer refresher;
+    
+    protected JTabbedPane tabs;
+    protected JToolBar toolbar;
+    private JTable tblTimings;
+    private DefaultTableModel timingsModel;
+    private JTextArea txtStalls;
+    private JButton btnReset;
+    
+    public DiagnosticsFrame() {
+        setTitle("Diagnostics");
+        setIconImage(Main.icon);
+        setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+        
+        // Initialize the components
+        timingsModel = new DefaultTableModel(COLUMNS, 0) {
+            @Override
+            public boolean isCellEditable(int row, int col) {
+                return false;
+            }
+            
+            @Override
+            public Class<?> getColumnClass(int col) {
+                return col == 0 ? String.class : col == 1 ? Long.class : Double.class;
+            }
+        };
+        tblTimings = new JTable(timingsModel);
+        tblTimings.setAutoCreateRowSorter(true);
+        txtStalls = new JTextArea();
+        txtStalls.setEditable(false);
+        btnReset = new JButton("Reset");
+        btnReset.addActionListener((java.awt.event.ActionEvent evt) -> {
+            Diagnostics.reset();
+            refresh();
+        });
+        
+        toolbar = new JToolBar();
+        toolbar.setFloatable(false);
+        toolbar.setRollover(true);
+        toolbar.add(btnReset);
+        
+        tabs = new JTabbedPane();
+        tabs.addTab("Timings", new JScrollPane(tblTimings));
+        tabs.addTab("EDT stalls", new JScrollPane(txtStalls));
+        
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(toolbar, BorderLayout.NORTH);
+        getContentPane().add(tabs, BorderLayout.CENTER);
+        
+        setSize(640, 480);
+        setLocationRelativeTo(null);
+        
+        refresher = new Timer(1000, (java.awt.event.ActionEvent evt) -> {
+            refresh();
+        });
+        refresh();
+    }
+    
+    /**
+     * Shows the diagnostics window, creating it if necessary.
+     * @return the diagnostics window.
+     */
+    public static DiagnosticsFrame open() {
+        if (instance == null || !instance.isDisplayable())
+            instance = new DiagnosticsFrame();
+        instance.setVisible(true);
+        instance.toFront();
+        return instance;
+    }
+    
+    @Override
+    public void setVisible(boolean visible) {
+        super.setVisible(visible);
+        if (visible)
+            refresher.start();
+        else
+            refresher.stop();
+    }
+    
+    @Override
+    public void dispose() {
+        refresher.stop();
+        super.dispose();
+    }
+    
+    protected void refresh() {
+        List<Diagnostics.Timing> timings = Diagnostics.getTimings();
+        timingsModel.setRowCount(timings.size());
+        for (int i = 0 ; i < timings.size() ; i++) {
+            Diagnostics.Timing timing = timings.get(i);
+            timingsModel.setValueAt(timing.name, i, 0);
+            timingsModel.setValueAt(timing.count, i, 1);
+            timingsModel.setValueAt(round(timing.getAverageMillis()), i, 2);
+            timingsModel.setValueAt(round(timing.maxNanos / 1e6), i, 3);
+            timingsModel.setValueAt(round(timing.lastNanos / 1e6), i, 4);
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+        for (Diagnostics.Stall stall : Diagnostics.getStalls()) {
+            sb.append(format.format(new Date(stall.time))).append(": stalled for at least ").append(stall.durationMillis).append(" ms\n");
+            for (StackTraceElement element : stall.stack)
+                sb.append("\tat ").append(element).append('\n');
+            sb.append('\n');
+        }
+        if (!sb.toString().equals(txtStalls.getText())) {
+            txtStalls.setText(sb.toString());
+            txtStalls.setCaretPosition(0);
+        }
+    }
+    
+    private static double round(double millis) {
+        return Math.round(millis * 1000) / 1000.0;
+    }
+}
\ No newline at end of file
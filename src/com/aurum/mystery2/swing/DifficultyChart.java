@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.swing;
+
+import com.aurum.mystery2.analysis.DifficultyCurves;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.util.function.ToDoubleFunction;
+import javax.swing.JPanel;
+
+/**
+ * Line chart of a difficulty curve. The expected enemy level uses the left
+ * axis, the enemy, trap and item densities share the right axis.
+ */
+public class DifficultyChart extends JPanel {
+    private static final Color LEVEL = new Color(200, 40, 40);
+    private static final Color RANGE = new Color(200, 40, 40, 40);
+    private static final Color ENEMIES = new Color(40, 90, 200);
+    private static final Color TRAPS = new Color(120, 60, 160);
+    private static final Color ITEMS = new Color(30, 150, 60);
+    private static final int MARGIN = 36;
+    
+    private DifficultyCurves.Point[] curve = new DifficultyCurves.Point[0];
+    private int highlight = -1;
+    
+    public DifficultyChart() {
+        setBackground(Color.WHITE);
+        setPreferredSize(new Dimension(420, 260));
+    }
+    
+    public void setCurve(DifficultyCurves.Point[] curve) {
+        this.curve = curve != null ? curve : new DifficultyCurves.Point[0];
+        repaint();
+    }
+    
+    /**
+     * Marks a floor, for instance the one being edited.
+     * @param floor the floor number or -1
+     */
+    public void setHighlight(int floor) {
+        highlight = floor;
+        repaint();
+    }
+    
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        FontMetrics fm = g2.getFontMetrics();
+        
+        int w = getWidth() - 2 * MARGIN, h = getHeight() - 2 * MARGIN;
+        if (curve.length == 0 || w <= 0 || h <= 0) {
+            g2.setColor(Color.GRAY);
+            g2.drawString("No floors", MARGIN, MARGIN);
+            return;
+        }
+        
+        double maxLevel = 1, maxDensity = 1;
+        for (DifficultyCurves.Point point : curve) {
+            maxLevel = Math.max(maxLevel, point.maxLevel);
+            maxDensity = Math.max(maxDensity, Math.max(point.enemies, Math.max(point.traps, point.items)));
+        }
+        
+        // Axes and labels
+        g2.setColor(Color.LIGHT_GRAY);
+        g2.drawRect(MARGIN, MARGIN, w, h);
+        g2.setColor(Color.DARK_GRAY);
+        g2.drawString("Lv. " + (int) maxLevel, 2, MARGIN + fm.getAscent());
+        g2.drawString("0", 2, MARGIN + h);
+        String density = Integer.toString((int) maxDensity);
+        g2.drawString(density, getWidth() - MARGIN + 4, MARGIN + fm.getAscent());
+        g2.drawString("1F", MARGIN, MARGIN + h + fm.getHeight());
+        String last = curve[curve.length - 1].floor + "F";
+        g2.drawString(last, MARGIN + w - fm.stringWidth(last), MARGIN + h + fm.getHeight());
+        
+        if (highlight >= 1 && highlight <= curve.length) {
+            g2.setColor(new Color(255, 230, 120));
+            int x = x(highlight - 1, w);
+            g2.fillRect(x - 3, MARGIN + 1, 7, h - 1);
+        }
+        
+        // Level range band
+        g2.setColor(RANGE);
+        for (int i = 0 ; i < curve.length ; i++) {
+            int top = y(curve[i].maxLevel, maxLevel, h), bottom = y(curve[i].minLevel, maxLevel, h);
+            g2.fillRect(x(i, w) - 2, top, 5, Math.max(bottom - top, 1));
+        }
+        
+        g2.setStroke(new BasicStroke(2F));
+        drawSeries(g2, LEVEL, w, h, maxLevel, (DifficultyCurves.Point p) -> p.expectedLevel);
+        g2.setStroke(new BasicStroke(1F));
+        drawSeries(g2, ENEMIES, w, h, maxDensity, (DifficultyCurves.Point p) -> p.enemies);
+        drawSeries(g2, TRAPS, w, h, maxDensity, (DifficultyCurves.Point p) -> p.traps);
+        drawSeries(g2, ITEMS, w, h, maxDensity, (DifficultyCurves.Point p) -> p.items);
+        
+        // Legend
+        int x = MARGIN;
+        String[] names = { "Expected level", "Enemies", "Traps", "Items" };
+        Color[] colors = { LEVEL, ENEMIES, TRAPS, ITEMS };
+        for (int i = 0 ; i < names.length ; i++) {
+            g2.setColor(colors[i]);
+            g2.fillRect(x, MARGIN - fm.getHeight() + 2, 10, 10);
+            g2.setColor(Color.DARK_GRAY);
+            g2.drawString(names[i], x + 14, MARGIN - 4);
+            x += fm.stringWidth(names[i]) + 28;
+        }
+    }
+    
+    private void drawSeries(Graphics2D g2, Color color, int w, int h, double max, ToDoubleFunction<DifficultyCurves.Point> value) {
+        g2.setColor(color);
+        for (int i = 0 ; i < curve.length ; i++) {
+            int x = x(i, w), y = y(value.applyAsDouble(curve[i]), max, h);
+            if (i > 0)
+                g2.drawLine(x(i - 1, w), y(value.applyAsDouble(curve[i - 1]), max, h), x, y);
+            else if (curve.length == 1)
+                g2.fillOval(x - 2, y - 2, 5, 5);
+        }
+    }
+    
+    private int x(int index, int w) {
+        return MARGIN + (curve.length > 1 ? index * w / (curve.length - 1) : w / 2);
+    }
+    
+    private int y(double value, double max, int h) {
+        return MARGIN + h - (int) Math.round(value / max * h);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.swing;
+
+import com.aurum.mystery2.Lists;
+import com.aurum.mystery2.Main;
+import com.aurum.mystery2.analysis.DifficultyCurves;
+import com.aurum.mystery2.game.Dungeon;
+import com.aurum.mystery2.game.RomFile;
+import java.awt.BorderLayout;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.function.BiConsumer;
+import javax.swing.JFrame;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * Shows the difficulty curve of the dungeon that is open in a dungeon editor,
+ * including unsaved floor changes, and an overview of all dungeons.
+ */
+public class DifficultyCurveFrame extends JFrame {
+    private static final String[] FLOOR_COLUMNS = { "Floor", "Expected level", "Min. level", "Max. level", "Species", "Most common", "Share %", "Enemies", "Traps", "Items" };
+    private static final String[] DUNGEON_COLUMNS = { "Dungeon", "Floors", "Peak level", "Largest spike", "Spike floor", "Max. enemies", "Max. traps" };
+    
+    private final DungeonEditor editor;
+    private final DifficultyCurves curves;
+    private final Timer refresher;
+    private final BiConsumer<AbstractEditor, int[]> saveListener;
+    private final ComponentAdapter visibilityListener;
+    private DifficultyCurves.Point[] shown;
+    
+    private DifficultyChart chart;
+    private JTable tblFloors, tblDungeons;
+    private DefaultTableModel floorsModel, dungeonsModel;
+    private JTabbedPane tabs;
+    
+    public DifficultyCurveFrame(DungeonEditor editor) {
+        this.editor = editor;
+        this.curves = new DifficultyCurves(RomFile.current);
+        
+        setTitle("Difficulty curve");
+        setIconImage(Main.icon);
+        setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+        
+        // Initialize the components
+        chart = new DifficultyChart();
+        floorsModel = createModel(FLOOR_COLUMNS);
+        tblFloors = new JTable(floorsModel);
+        dungeonsModel = createModel(DUNGEON_COLUMNS);
+        tblDungeons = new JTable(dungeonsModel);
+        tblDungeons.setAutoCreateRowSorter(true);
+        for (int d = 0 ; d < DifficultyCurves.DUNGEONS && d < RomFile.current.dungeons.size() ; d++) {
+            dungeonsModel.addRow(new Object[DUNGEON_COLUMNS.length]);
+            updateDungeonRow(d);
+        }
+        
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, chart, new JScrollPane(tblFloors));
+        split.setResizeWeight(0.6);
+        tabs = new JTabbedPane();
+        tabs.addTab("Current dungeon", split);
+        tabs.addTab("All dungeons", new JScrollPane(tblDungeons));
+        
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(tabs, BorderLayout.CENTER);
+        setSize(560, 600);
+        
+        // Dock to the right of the editor
+        setLocation(editor.getX() + editor.getWidth(), editor.getY());
+        
+        // Stored entries update the overview, the edited copy is polled since it changes with every input
+        saveListener = (AbstractEditor source, int[] indices) -> {
+            if (source == null)
+                curves.allChanged();
+            for (int index : indices != null ? indices : new int[0]) {
+                if (source instanceof DungeonEditor)
+                    curves.dungeonChanged(index);
+                else if (source instanceof DungeonPokemonEditor)
+                    curves.pokemonChanged(index);
+                else if (source instanceof DungeonLayoutEditor)
+                    curves.layoutChanged(index);
+            }
+            for (int d : curves.refresh())
+                updateDungeonRow(d);
+            refresh();
+        };
+        AbstractEditor.addSaveListener(saveListener);
+        refresher = new Timer(300, (java.awt.event.ActionEvent evt) -> {
+            refresh();
+        });
+        
+        // Only poll while both this frame and the editor can be seen
+        visibilityListener = new ComponentAdapter() {
+            @Override
+            public void componentShown(ComponentEvent evt) { updateRefresher(); }
+            @Override
+            public void componentHidden(ComponentEvent evt) { updateRefresher(); }
+        };
+        addComponentListener(visibilityListener);
+        editor.addComponentListener(visibilityListener);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowIconified(WindowEvent evt) { updateRefresher(); }
+            @Override
+            public void windowDeiconified(WindowEvent evt) { updateRefresher(); }
+        });
+        refresh();
+    }
+    
+    @Override
+    public void dispose() {
+        refresher.stop();
+        editor.removeComponentListener(visibilityListener);
+        AbstractEditor.removeSaveListener(saveListener);
+        super.dispose();
+    }
+    
+    private void updateRefresher() {
+        boolean visible = isVisible() && editor.isVisible() && (getExtendedState() & ICONIFIED) == 0;
+        if (visible && !refresher.isRunning()) {
+            refresh();
+            refresher.start();
+        }
+        else if (!visible)
+            refresher.stop();
+    }
+    
+    private static DefaultTableModel createModel(String[] columns) {
+        return new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int col) {
+                return false;
+            }
+            
+            @Override
+            public Class<?> getColumnClass(int col) {
+                Object value = getRowCount() > 0 ? getValueAt(0, col) : null;
+                return value != null ? value.getClass() : Object.class;
+            }
+        };
+    }
+    
+    private void refresh() {
+        // The edited copy is cheap to evaluate, so unsaved changes show immediately
+        Dungeon dungeon = editor.getEditedDungeon();
+        DifficultyCurves.Point[] curve = dungeon != null ? DifficultyCurves.compute(RomFile.current, dungeon) : null;
+        if (!same(curve, shown)) {
+            shown = curve;
+            chart.setCurve(curve);
+            updateFloors(curve);
+        }
+        chart.setHighlight(editor.getEditedFloor());
+        if (dungeon != null && editor.getEditedIndex() >= 0)
+            setTitle("Difficulty curve - " + Lists.dungeons.get(editor.getEditedIndex()));
+    }
+    
+    private void updateFloors(DifficultyCurves.Point[] curve) {
+        floorsModel.setRowCount(0);
+        if (curve == null)
+            return;
+        for (DifficultyCurves.Point point : curve) {
+            floorsModel.addRow(new Object[] {
+                point.floor, round(point.expectedLevel), point.minLevel, point.maxLevel, point.species,
+                point.species > 0 ? Lists.pokemon.get(point.topSpecies) : "", round(point.topShare * 100),
+                point.enemies, point.traps, point.items
+            });
+        }
+    }
+    
+    private void updateDungeonRow(int d) {
+        DifficultyCurves.Point[] curve = curves.get(d);
+        double peak = 0, spike = 0;
+        int spikeFloor = 0, enemies = 0, traps = 0;
+        for (int i = 0 ; i < curve.length ; i++) {
+            peak = Math.max(peak, curve[i].expectedLevel);
+            enemies = Math.max(enemies, curve[i].enemies);
+            traps = Math.max(traps, curve[i].traps);
+            if (i > 0 && curve[i].expectedLevel - curve[i - 1].expectedLevel > spike) {
+                spike = curve[i].expectedLevel - curve[i - 1].expectedLevel;
+                spikeFloor = curve[i].floor;
+            }
+        }
+        
+        Object[] row = { Lists.dungeons.get(d), curve.length, round(peak), round(spike), spikeFloor, enemies, traps };
+        for (int col = 0 ; col < row.length ; col++)
+            dungeonsModel.setValueAt(row[col], d, col);
+    }
+    
+    private static boolean same(DifficultyCurves.Point[] a, DifficultyCurves.Point[] b) {
+        if (a == null || b == null || a.length != b.length)
+            return a == b;
+        for (int i = 0 ; i < a.length ; i++) {
+            if (a[i].expectedLevel != b[i].expectedLevel || a[i].minLevel != b[i].minLevel || a[i].maxLevel != b[i].maxLevel
+                    || a[i].species != b[i].species || a[i].topSpecies != b[i].topSpecies || a[i].topShare != b[i].topShare
+                    || a[i].enemies != b[i].enemies || a[i].traps != b[i].traps || a[i].items != b[i].items)
+                return false;
+        }
+        return true;
+    }
+    
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
\ No newline at end of file
@@ -23,6 +23,7 @@ import com.aurum.mystery2.game.Dungeon;
 import com.aurum.mystery2.game.Floor;
 import com.aurum.mystery2.game.RomFile;
 import java.awt.Dimension;
+import java.util.List;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.DefaultListModel;
 import javax.swing.ImageIcon;
@@ -59,6 +60,9 @@ public class DungeonEditor extends AbstractEditor {
     private JSpinner spnUnk1, spnUnk3, spnUnkE;
     private JCheckBox chkUnk8, chkUnk9;
     
+    private JButton btnDifficulty;
+    private DifficultyCurveFrame difficultyFrame;
+    
     public DungeonEditor() {
         Lists.dungeons.forEach((dungeon) -> { model.addElement(dungeon); });
         list.setSelectedIndex(0);
@@ -139,19 +143,19 @@ public class DungeonEditor extends AbstractEditor {
         btnFloorLayout.setPreferredSize(new Dimension(20, 20));
         btnFloorLayout.setIcon(icnEditor);
         btnFloorLayout.addActionListener((java.awt.event.ActionEvent evt) -> {
-            new DungeonLayoutEditor((int) spnFloorLayout.getValue()).setVisible(true);
+            AbstractEditor.open(DungeonLayoutEditor.class, DungeonLayoutEditor::new, (int) spnFloorLayout.getValue());
         });
         btnFloorPokemon = new JButton();
         btnFloorPokemon.setPreferredSize(new Dimension(20, 20));
         btnFloorPokemon.setIcon(icnEditor);
         btnFloorPokemon.addActionListener((java.awt.event.ActionEvent evt) -> {
-            new DungeonPokemonEditor((int) spnFloorPokemon.getValue()).setVisible(true);
+            AbstractEditor.open(DungeonPokemonEditor.class, DungeonPokemonEditor::new, (int) spnFloorPokemon.getValue());
         });
         btnFloorTraps = new JButton();
         btnFloorTraps.setPreferredSize(new Dimension(20, 20));
         btnFloorTraps.setIcon(icnEditor);
         btnFloorTraps.addActionListener((java.awt.event.ActionEvent evt) -> {
-            new DungeonTrapsEditor((int) spnFloorTraps.getValue()).setVisible(true);
+            AbstractEditor.open(DungeonTrapsEditor.class, DungeonTrapsEditor::new, (int) spnFloorTraps.getValue());
         });
         btnFloorItems = new JButton();
         btnFloorItems.setPreferredSize(new Dimension(20, 20));
@@ -224,6 +228,15 @@ public class DungeonEditor extends AbstractEditor {
         chkUnk8 = new JCheckBox("bool (0x8) (seen in post-game dungeons)");
         chkUnk9 = new JCheckBox("bool (0x9) (seen in story-game dungeons)");
         
+        btnDifficulty = new JButton("Difficulty curve");
+        btnDifficulty.addActionListener((java.awt.event.ActionEvent evt) -> {
+            if (difficultyFrame == null || !difficultyFrame.isDisplayable())
+                difficultyFrame = new DifficultyCurveFrame(this);
+            difficultyFrame.setVisible(true);
+            difficultyFrame.toFront();
+        });
+        toolbar.add(btnDifficulty);
+        
         // Add the components to the property panel
         properties.addCaption("Floors");
         properties.addComponent(scroll);
@@ -292,6 +305,14 @@ public class DungeonEditor extends AbstractEditor {
         chkUnk9.setSelected(selected.unk9);
     }
 
+    @Override
+    public void dispose() {
+        // The curve window reads this editor's dungeon and the ROM it was opened for
+        if (difficultyFrame != null)
+            difficultyFrame.dispose();
+        super.dispose();
+    }
+
     @Override
     protected void save() {
         if (selected == null || list.getSelectedIndex() < 0)
@@ -324,6 +345,23 @@ public class DungeonEditor extends AbstractEditor {
     @Override
     protected void warningLabel() {}
     
+    @Override
+    protected List getRecords() {
+        return RomFile.current.dungeons;
+    }
+    
+    Dungeon getEditedDungeon() {
+        return selected;
+    }
+    
+    int getEditedIndex() {
+        return list.getSelectedIndex();
+    }
+    
+    int getEditedFloor() {
+        return listFloors.getSelectedIndex() + 1;
+    }
+    
     private void enableFloorComponents() {
         boolean hasFloors = selected.floors.size() > 1 && selectedFloor != null;
         spnFloorLayout.setEnabled(hasFloors);
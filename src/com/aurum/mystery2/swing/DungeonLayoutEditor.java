@@ -17,8 +17,12 @@
 
 package com.aurum.mystery2.swing;
 
+import com.aurum.mystery2.analysis.FloorGenerator;
+import com.aurum.mystery2.Lists;
+import com.aurum.mystery2.game.Dungeon;
 import com.aurum.mystery2.game.DungeonLayout;
 import com.aurum.mystery2.game.RomFile;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
 import javax.swing.DefaultComboBoxModel;
@@ -44,6 +48,7 @@ public class DungeonLayoutEditor extends AbstractEditor {
     private JLabel lblLayout1, lblLayout2, lblTerrain;
     private JSpinner spnLayout1, spnLayout2, spnTiles;
     private JCheckBox chkTerrainPond, chkTerrainTile, chkUnk9, chkUnkB, chkUnkE;
+    private FloorPreviewPanel pnlFloorPreview;
     
     private JLabel lblPokemon, lblItems, lblTraps, lblMoney, lblDensityMonsters, lblDensityShops;
     private JSpinner spnPokemon, spnItems, spnTraps, spnMoney, spnDensityMonsters, spnDensityShops;
@@ -181,7 +186,8 @@ public class DungeonLayoutEditor extends AbstractEditor {
             int tileset = (short) spnTileset.getValue();
             String[] properties = tilesetProperties.get(tileset).split(",");
             
-            lblPreview.setIcon(new ImageIcon(getClass().getResource("/res/tilesets/" + tileset + ".png")));
+            BufferedImage image = RomFile.current.getTilesetImage(tileset);
+            lblPreview.setIcon(image != null ? new ImageIcon(image) : new ImageIcon(getClass().getResource("/res/tilesets/" + tileset + ".png")));
             txtSecretPower.setText(properties[0]);
             txtNaturalPower.setText(properties[1]);
             txtCamouflage.setText(properties[2]);
@@ -200,6 +206,7 @@ public class DungeonLayoutEditor extends AbstractEditor {
         spnTiles.setModel(new javax.swing.SpinnerNumberModel(Short.valueOf((short)0), Short.valueOf((short)0), Short.valueOf((short)255), Short.valueOf((short)1)));
         chkTerrainTile = new JCheckBox("Has terrain tiles");
         chkTerrainPond = new JCheckBox("Has terrain pond");
+        pnlFloorPreview = new FloorPreviewPanel();
         
         lblPokemon = new JLabel("Pokémon");
         lblItems = new JLabel("Items");
@@ -223,6 +230,18 @@ public class DungeonLayoutEditor extends AbstractEditor {
         spnDensityShops = new JSpinner();
         spnDensityShops.setModel(new javax.swing.SpinnerNumberModel(Short.valueOf((short)0), Short.valueOf((short)0), Short.valueOf((short)255), Short.valueOf((short)1)));
         
+        // Sample floors follow the generator settings as they are edited
+        for (JSpinner spinner : new JSpinner[] { spnLayout1, spnLayout2, spnTiles, spnDensityMonsters, spnDensityShops }) {
+            spinner.addChangeListener((javax.swing.event.ChangeEvent evt) -> {
+                updateFloorPreview();
+            });
+        }
+        for (JCheckBox checkbox : new JCheckBox[] { chkTerrainTile, chkTerrainPond }) {
+            checkbox.addItemListener((java.awt.event.ItemEvent evt) -> {
+                updateFloorPreview();
+            });
+        }
+        
         lblUnk5 = new JLabel("byte (0x5)");
         lblUnk18 = new JLabel("int (0x18)");
         spnUnk5 = new JSpinner();
@@ -254,6 +273,7 @@ public class DungeonLayoutEditor extends AbstractEditor {
         properties.addLabeledComponent(lblTerrain, spnTiles);
         properties.addComponent(chkTerrainTile);
         properties.addComponent(chkTerrainPond);
+        properties.addComponent(pnlFloorPreview);
         properties.addSeparator();
         properties.addCaption("Object parameters");
         properties.addLabeledComponent(lblPokemon, spnPokemon);
@@ -307,6 +327,7 @@ public class DungeonLayoutEditor extends AbstractEditor {
         chkUnk9.setSelected(selected.unk9);
         chkUnkB.setSelected(selected.unkB);
         chkUnkE.setSelected(selected.unkE);
+        updateFloorPreview();
     }
 
     @Override
@@ -347,4 +368,27 @@ public class DungeonLayoutEditor extends AbstractEditor {
     
     @Override
     protected void warningLabel() {}
+    
+    @Override
+    protected List getRecords() {
+        return RomFile.current.dungeonLayouts;
+    }
+    
+    @Override
+    protected List<String> getReferences(int index) {
+        List<String> floors = new ArrayList();
+        for (int i = 0 ; i < 64 ; i++) {
+            Dungeon dungeon = RomFile.current.dungeons.get(i);
+            for (int f = 1 ; f < dungeon.floors.size() ; f++) {
+                if (dungeon.floors.get(f).layout == index)
+                    floors.add(Lists.dungeons.get(i) + ' ' + (dungeon.stair == 0 ? "B" : "") + f + 'F');
+            }
+        }
+        return floors;
+    }
+    
+    private void updateFloorPreview() {
+        pnlFloorPreview.setParameters(new FloorGenerator.Parameters((int) spnLayout1.getValue(), (int) spnLayout2.getValue(), (short) spnTiles.getValue(),
+                chkTerrainPond.isSelected(), chkTerrainTile.isSelected(), (short) spnDensityShops.getValue(), (short) spnDensityMonsters.getValue()));
+    }
 }
\ No newline at end of file
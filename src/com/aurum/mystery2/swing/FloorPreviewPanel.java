@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.swing;
+
+import com.aurum.mystery2.analysis.FloorGenerator;
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.BorderFactory;
+import javax.swing.ImageIcon;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Thumbnails of sample floors for a set of generator settings. Floors are
+ * generated on a background thread shortly after the settings stop changing.
+ */
+public class FloorPreviewPanel extends JPanel {
+    private static final int COUNT = 6, SCALE = 2;
+    private static final ExecutorService generator = Executors.newSingleThreadExecutor((Runnable r) -> {
+        Thread t = new Thread(r, "Floor preview generator");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    private final JLabel[] thumbnails = new JLabel[COUNT];
+    private final JLabel lblStatus;
+    private final JButton btnReroll;
+    private final Timer debounce;
+    private FloorGenerator.Parameters params;
+    private long seed;
+    private final AtomicInteger generation = new AtomicInteger();
+    
+    public FloorPreviewPanel() {
+        super(new BorderLayout());
+        
+        JPanel grid = new JPanel(new GridLayout(0, 2, 4, 4));
+        for (int i = 0 ; i < COUNT ; i++) {
+            thumbnails[i] = new JLabel();
+            thumbnails[i].setBorder(BorderFactory.createLineBorder(java.awt.Color.GRAY));
+            thumbnails[i].setIcon(new ImageIcon(new BufferedImage(FloorGenerator.WIDTH * SCALE, FloorGenerator.HEIGHT * SCALE, BufferedImage.TYPE_INT_RGB)));
+            grid.add(thumbnails[i]);
+        }
+        lblStatus = new JLabel(" ");
+        btnReroll = new JButton("Other samples");
+        btnReroll.addActionListener((java.awt.event.ActionEvent evt) -> {
+            seed += COUNT;
+            regenerate();
+        });
+        
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.add(lblStatus, BorderLayout.CENTER);
+        bottom.add(btnReroll, BorderLayout.EAST);
+        add(grid, BorderLayout.CENTER);
+        add(bottom, BorderLayout.SOUTH);
+        
+        debounce = new Timer(150, (java.awt.event.ActionEvent evt) -> {
+            regenerate();
+        });
+        debounce.setRepeats(false);
+    }
+    
+    /**
+     * Shows samples for new generator settings.
+     * @param params the generator settings
+     */
+    public void setParameters(FloorGenerator.Parameters params) {
+        if (params.equals(this.params))
+            return;
+        this.params = params;
+        debounce.restart();
+    }
+    
+    private void regenerate() {
+        if (params == null)
+            return;
+        
+        final FloorGenerator.Parameters current = params;
+        final long base = seed;
+        final int id = generation.incrementAndGet();
+        generator.execute(() -> {
+            // Settings that changed again in the meantime are not worth finishing
+            if (id != generation.get())
+                return;
+            
+            long start = System.nanoTime();
+            BufferedImage[] images = new BufferedImage[COUNT];
+            for (int i = 0 ; i < COUNT ; i++)
+                images[i] = FloorGenerator.getThumbnail(current, base + i, SCALE);
+            long micros = (System.nanoTime() - start) / 1000;
+            
+            SwingUtilities.invokeLater(() -> {
+                if (id != generation.get())
+                    return;
+                for (int i = 0 ; i < COUNT ; i++)
+                    thumbnails[i].setIcon(new ImageIcon(images[i]));
+                lblStatus.setText("Seeds " + base + "-" + (base + COUNT - 1) + " (" + micros / 1000.0 + " ms)");
+            });
+        });
+    }
+}
\ No newline at end of file
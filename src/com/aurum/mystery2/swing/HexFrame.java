@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2.swing;
+
+import com.aurum.mystery2.ByteBuffer;
+import com.aurum.mystery2.Main;
+import com.aurum.mystery2.game.Area;
+import com.aurum.mystery2.game.Dungeon;
+import com.aurum.mystery2.game.DungeonLayout;
+import com.aurum.mystery2.game.DungeonPokemon;
+import com.aurum.mystery2.game.DungeonTraps;
+import com.aurum.mystery2.game.ExclusivePokemon;
+import com.aurum.mystery2.game.Item;
+import com.aurum.mystery2.game.Move;
+import com.aurum.mystery2.game.Pokemon;
+import com.aurum.mystery2.game.Region;
+import com.aurum.mystery2.game.RomFile;
+import java.awt.BorderLayout;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseWheelEvent;
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JScrollBar;
+import javax.swing.JTextField;
+import javax.swing.JToolBar;
+
+public class HexFrame extends JFrame {
+    private static HexFrame instance;
+    private final ByteBuffer buffer;
+    
+    private JToolBar toolbar;
+    private JTextField txtOffset;
+    private JButton btnGoTo;
+    private HexViewer viewer;
+    private JScrollBar scrollBar;
+    private JLabel lblStatus;
+    
+    public HexFrame() {
+        setTitle("Hex viewer");
+        setIconImage(Main.icon);
+        setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+        buffer = RomFile.current.getBuffer();
+        
+        // Initialize the components
+        viewer = new HexViewer(buffer, RomFile.current.getRegions());
+        viewer.setToolTipText("Double-click a colored record to open it in its editor");
+        viewer.setSelectionListener((Integer offset) -> {
+            updateStatus(offset);
+        });
+        viewer.setOpenListener((Region region) -> {
+            openEditor(region);
+        });
+        
+        // The scroll bar works on rows, so the viewer never has to be as tall as the ROM
+        scrollBar = new JScrollBar(JScrollBar.VERTICAL, 0, 1, 0, viewer.getRowCount());
+        scrollBar.addAdjustmentListener((java.awt.event.AdjustmentEvent evt) -> {
+            viewer.setTopRow(evt.getValue());
+        });
+        viewer.addMouseWheelListener((MouseWheelEvent evt) -> {
+            scrollBar.setValue(scrollBar.getValue() + evt.getUnitsToScroll());
+        });
+        viewer.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent evt) {
+                updateScrollBar();
+            }
+        });
+        
+        txtOffset = new JTextField(10);
+        txtOffset.setMaximumSize(txtOffset.getPreferredSize());
+        txtOffset.addActionListener((java.awt.event.ActionEvent evt) -> {
+            goTo();
+        });
+        btnGoTo = new JButton("Go to");
+        btnGoTo.addActionListener((java.awt.event.ActionEvent evt) -> {
+            goTo();
+        });
+        lblStatus = new JLabel(" ");
+        
+        toolbar = new JToolBar();
+        toolbar.setFloatable(false);
+        toolbar.setRollover(true);
+        toolbar.add(new JLabel("Offset: "));
+        toolbar.add(txtOffset);
+        toolbar.add(btnGoTo);
+        
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(toolbar, BorderLayout.NORTH);
+        getContentPane().add(viewer, BorderLayout.CENTER);
+        getContentPane().add(scrollBar, BorderLayout.EAST);
+        getContentPane().add(lblStatus, BorderLayout.SOUTH);
+        
+        pack();
+        setLocationRelativeTo(null);
+    }
+    
+    /**
+     * Shows the hex viewer and selects the byte at {@code offset}, creating the
+     * window if necessary.
+     * @param offset the offset to show
+     * @return the hex viewer window.
+     */
+    public static HexFrame open(int offset) {
+        if (instance == null || !instance.isDisplayable() || instance.buffer != RomFile.current.getBuffer())
+            instance = AbstractEditor.track(new HexFrame());
+        instance.setVisible(true);
+        instance.toFront();
+        instance.goTo(offset);
+        return instance;
+    }
+    
+    /**
+     * Reads the records of the current ROM again if the hex viewer shows it.
+     * This has to be called after saving, since growing records are moved
+     * then.
+     */
+    public static void refresh() {
+        if (instance == null || !instance.isDisplayable() || instance.buffer != RomFile.current.getBuffer())
+            return;
+        instance.viewer.setRegions(RomFile.current.getRegions());
+        if (instance.viewer.getSelected() >= 0)
+            instance.updateStatus(instance.viewer.getSelected());
+    }
+    
+    /**
+     * Selects the byte at {@code offset} and scrolls it into view.
+     * @param offset the offset to show
+     */
+    public void goTo(int offset) {
+        viewer.setSelected(offset);
+        scrollBar.setValue(viewer.getTopRow());
+    }
+    
+    private void goTo() {
+        String text = txtOffset.getText().trim();
+        try {
+            int offset = (int) Long.parseLong(text.startsWith("0x") || text.startsWith("0X") ? text.substring(2) : text, 16);
+            if (offset < 0 || offset >= buffer.size())
+                lblStatus.setText(String.format("Offset is outside the ROM (0x00000000-0x%08X)", buffer.size() - 1));
+            else
+                goTo(offset);
+        }
+        catch (NumberFormatException ex) {
+            lblStatus.setText("Invalid offset \"" + text + "\"");
+        }
+    }
+    
+    private void updateScrollBar() {
+        int visible = viewer.getVisibleRows();
+        scrollBar.setValues(viewer.getTopRow(), visible, 0, viewer.getRowCount() + visible - 1);
+        scrollBar.setBlockIncrement(visible);
+    }
+    
+    private void updateStatus(int offset) {
+        StringBuilder sb = new StringBuilder(String.format("0x%08X: u8 %d", offset, buffer.readUnsignedByteAt(offset)));
+        if (offset + 2 <= buffer.size())
+            sb.append(", u16 ").append(buffer.readUnsignedShortAt(offset));
+        if (offset + 4 <= buffer.size())
+            sb.append(", u32 ").append(buffer.readUnsignedIntAt(offset));
+        
+        Region region = viewer.getRegion(offset);
+        if (region != null)
+            sb.append(" | ").append(region).append(", +0x").append(Integer.toHexString(offset - region.start).toUpperCase());
+        lblStatus.setText(sb.toString());
+    }
+    
+    private void openEditor(Region region) {
+        if (region.type == Pokemon.class)
+            AbstractEditor.open(PokemonEditor.class, PokemonEditor::new, region.index);
+        else if (region.type == Item.class)
+            AbstractEditor.open(ItemEditor.class, ItemEditor::new, region.index);
+        else if (region.type == Move.class)
+            AbstractEditor.open(MoveEditor.class, MoveEditor::new, region.index);
+        else if (region.type == Area.class)
+            AbstractEditor.open(AreaEditor.class, AreaEditor::new, region.index);
+        else if (region.type == ExclusivePokemon.class)
+            AbstractEditor.open(ExclusivePokemonEditor.class, ExclusivePokemonEditor::new, region.index);
+        else if (region.type == Dungeon.class)
+            AbstractEditor.open(DungeonEditor.class, DungeonEditor::new, region.index);
+        else if (region.type == DungeonLayout.class)
+            AbstractEditor.open(DungeonLayoutEditor.class, DungeonLayoutEditor::new, region.index);
+        else if (region.type == DungeonPokemon.class)
+            AbstractEditor.open(DungeonPokemonEditor.class, DungeonPokemonEditor::new, region.index);
+        else if (region.type == DungeonTraps.class)
+            AbstractEditor.open(DungeonTrapsEditor.class, DungeonTrapsEditor::new, region.index);
+        else if (region.type == int[].class)
+            new StarterEditor().setVisible(true);
+        else if (region.type == long[].class)
+            new MoneyEditor().setVisible(true);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2.swing;
+
+import com.aurum.mystery2.ByteBuffer;
+import com.aurum.mystery2.game.Region;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import javax.swing.JComponent;
+
+/**
+ * Shows the bytes of a buffer as hex and text. Only the visible rows are read
+ * and painted, and all characters are copied from a prerendered glyph atlas.
+ * Bytes that belong to known records are colored by table.
+ */
+public class HexViewer extends JComponent {
+    // Static fields
+    public static final int BYTES_PER_ROW = 16;
+    
+    private static final Color[] COLORS = {
+        new Color(0xFFD8A8), new Color(0xB8E0FF), new Color(0xC8F0C0), new Color(0xF0C8F0),
+        new Color(0xFFF0A0), new Color(0xD0D0FF), new Color(0xFFC8C8), new Color(0xC0F0F0),
+        new Color(0xE8D8C0), new Color(0xE0E0E0)
+    };
+    private static final Color SELECTION = new Color(0x3070D0);
+    private static final int FIRST_GLYPH = 0x20, LAST_GLYPH = 0x7E;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    
+    // Fields
+    private final ByteBuffer buffer;
+    private final TreeMap<Integer, Region> regions = new TreeMap();
+    private final Map<String, Color[]> colors = new HashMap();
+    private BufferedImage glyphs, selectedGlyphs;
+    private int glyphWidth, glyphHeight;
+    private int topRow, selected = -1;
+    private Consumer<Integer> selectionListener;
+    private Consumer<Region> openListener;
+    
+    public HexViewer(ByteBuffer buffer, List<Region> regions) {
+        this.buffer = buffer;
+        setRegions(regions);
+        
+        setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        setBackground(Color.WHITE);
+        setOpaque(true);
+        
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent evt) {
+                int offset = getOffsetAt(evt.getX(), evt.getY());
+                if (offset < 0)
+                    return;
+                setSelected(offset);
+                if (evt.getClickCount() == 2 && openListener != null && getRegion(offset) != null)
+                    openListener.accept(getRegion(offset));
+            }
+        };
+        addMouseListener(mouse);
+    }
+    
+    @Override
+    public void setFont(Font font) {
+        super.setFont(font);
+        glyphs = null;
+    }
+    
+    @Override
+    public Dimension getPreferredSize() {
+        prepareGlyphs();
+        return new Dimension(columnX(BYTES_PER_ROW * 4 + 12), glyphHeight * 32);
+    }
+    
+    /**
+     * Sets the listener that is called with the offset of every newly selected
+     * byte.
+     * @param listener the listener or {@code null}
+     */
+    public void setSelectionListener(Consumer<Integer> listener) {
+        selectionListener = listener;
+    }
+    
+    /**
+     * Sets the listener that is called when a byte of a known record is
+     * double-clicked.
+     * @param listener the listener or {@code null}
+     */
+    public void setOpenListener(Consumer<Region> listener) {
+        openListener = listener;
+    }
+    
+    /**
+     * Replaces the known records, for example after records were moved.
+     * @param regions the regions of the records
+     */
+    public void setRegions(List<Region> regions) {
+        this.regions.clear();
+        for (Region region : regions) {
+            this.regions.put(region.start, region);
+            if (!colors.containsKey(region.name)) {
+                // Neighbouring records of a table alternate between two shades
+                Color color = COLORS[colors.size() % COLORS.length];
+                colors.put(region.name, new Color[] { color, new Color(color.getRed() * 7 / 8, color.getGreen() * 7 / 8, color.getBlue() * 7 / 8) });
+            }
+        }
+        repaint();
+    }
+    
+    /**
+     * Returns the record that contains an offset.
+     * @param offset the offset
+     * @return the region of the record, or {@code null} if it is unknown.
+     */
+    public Region getRegion(int offset) {
+        Entry<Integer, Region> entry = regions.floorEntry(offset);
+        return entry != null && offset < entry.getValue().end ? entry.getValue() : null;
+    }
+    
+    public int getRowCount() {
+        return (buffer.size() + BYTES_PER_ROW - 1) / BYTES_PER_ROW;
+    }
+    
+    /**
+     * Returns the number of rows that fit into the component.
+     * @return the number of completely visible rows.
+     */
+    public int getVisibleRows() {
+        prepareGlyphs();
+        return Math.max(getHeight() / glyphHeight, 1);
+    }
+    
+    public int getTopRow() {
+        return topRow;
+    }
+    
+    public void setTopRow(int row) {
+        row = Math.max(0, Math.min(row, getRowCount() - 1));
+        if (row != topRow) {
+            topRow = row;
+            repaint();
+        }
+    }
+    
+    public int getSelected() {
+        return selected;
+    }
+    
+    /**
+     * Selects a byte and scrolls it into view if necessary.
+     * @param offset the offset of the byte
+     */
+    public void setSelected(int offset) {
+        if (offset < 0 || offset >= buffer.size())
+            return;
+        selected = offset;
+        
+        int row = offset / BYTES_PER_ROW;
+        if (row < topRow || row >= topRow + getVisibleRows())
+            setTopRow(row - getVisibleRows() / 3);
+        repaint();
+        
+        if (selectionListener != null)
+            selectionListener.accept(offset);
+    }
+    
+    @Override
+    protected void paintComponent(Graphics g) {
+        prepareGlyphs();
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        
+        // Only the visible rows are read and painted, so the cost does not depend on the ROM size
+        int start = topRow * BYTES_PER_ROW;
+        int rows = Math.min(getHeight() / glyphHeight + 1, getRowCount() - topRow);
+        int pos = buffer.position();
+        byte[] bytes = buffer.readBytesAt(start, Math.max(Math.min(rows * BYTES_PER_ROW, buffer.size() - start), 0));
+        buffer.seek(pos);
+        
+        for (int row = 0 ; row < rows ; row++) {
+            int y = row * glyphHeight;
+            int offset = start + row * BYTES_PER_ROW;
+            for (int digit = 0 ; digit < 8 ; digit++)
+                drawGlyph(g, HEX[(offset >>> (28 - digit * 4)) & 0xF], columnX(digit), y, false);
+            
+            for (int col = 0 ; col < BYTES_PER_ROW && offset + col - start < bytes.length ; col++) {
+                int b = bytes[offset + col - start] & 0xFF;
+                int hexX = hexX(col), textX = textX(col);
+                boolean isSelected = offset + col == selected;
+                
+                Region region = getRegion(offset + col);
+                if (region != null || isSelected) {
+                    g.setColor(isSelected ? SELECTION : colors.get(region.name)[region.index & 1]);
+                    g.fillRect(hexX, y, glyphWidth * 3, glyphHeight);
+                    g.fillRect(textX, y, glyphWidth, glyphHeight);
+                }
+                
+                drawGlyph(g, HEX[b >> 4], hexX, y, isSelected);
+                drawGlyph(g, HEX[b & 0xF], hexX + glyphWidth, y, isSelected);
+                drawGlyph(g, b >= FIRST_GLYPH && b <= LAST_GLYPH ? (char) b : '.', textX, y, isSelected);
+            }
+        }
+    }
+    
+    private void drawGlyph(Graphics g, char c, int x, int y, boolean inverted) {
+        int sx = (c - FIRST_GLYPH) * glyphWidth;
+        g.drawImage(inverted ? selectedGlyphs : glyphs, x, y, x + glyphWidth, y + glyphHeight, sx, 0, sx + glyphWidth, glyphHeight, null);
+    }
+    
+    private void prepareGlyphs() {
+        if (glyphs != null)
+            return;
+        
+        FontMetrics metrics = getFontMetrics(getFont());
+        glyphWidth = metrics.charWidth('0');
+        glyphHeight = metrics.getHeight();
+        glyphs = renderGlyphs(metrics, Color.BLACK);
+        selectedGlyphs = renderGlyphs(metrics, Color.WHITE);
+    }
+    
+    private BufferedImage renderGlyphs(FontMetrics metrics, Color color) {
+        BufferedImage ret = new BufferedImage(glyphWidth * (LAST_GLYPH - FIRST_GLYPH + 1), glyphHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = ret.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(getFont());
+        g.setColor(color);
+        for (int c = FIRST_GLYPH ; c <= LAST_GLYPH ; c++)
+            g.drawString(String.valueOf((char) c), (c - FIRST_GLYPH) * glyphWidth, metrics.getAscent());
+        g.dispose();
+        return ret;
+    }
+    
+    private int getOffsetAt(int x, int y) {
+        prepareGlyphs();
+        int row = topRow + y / glyphHeight;
+        int col;
+        if (x >= hexX(0) && x < hexX(BYTES_PER_ROW))
+            col = (x - hexX(0)) / (glyphWidth * 3);
+        else if (x >= textX(0) && x < textX(BYTES_PER_ROW))
+            col = (x - textX(0)) / glyphWidth;
+        else
+            return -1;
+        
+        int offset = row * BYTES_PER_ROW + col;
+        return offset < buffer.size() ? offset : -1;
+    }
+    
+    private int columnX(int column) {
+        return 4 + column * glyphWidth;
+    }
+    
+    private int hexX(int col) {
+        return columnX(10 + col * 3);
+    }
+    
+    private int textX(int col) {
+        return columnX(11 + BYTES_PER_ROW * 3 + col);
+    }
+}
\ No newline at end of file
@@ -24,6 +24,7 @@ import com.aurum.mystery2.game.Item;
 import com.aurum.mystery2.game.RomFile;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.List;
 import javax.imageio.ImageIO;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.ImageIcon;
@@ -219,7 +220,16 @@ public class ItemEditor extends AbstractEditor {
     @Override
     protected void warningLabel() {}
     
+    @Override
+    protected List getRecords() {
+        return RomFile.current.items;
+    }
+    
     private void updateItemIcon() {
-        lblPreview.setIcon(new ImageIcon(icons.getSubimage(sdrPalette.getValue() * 16, cmoIcon.getSelectedIndex() * 16, 16, 16)));
+        // Prefer the icon in the ROM so that edited graphics show up
+        BufferedImage icon = RomFile.current.getItemIcon(cmoIcon.getSelectedIndex(), sdrPalette.getValue());
+        if (icon == null)
+            icon = icons.getSubimage(sdrPalette.getValue() * 16, cmoIcon.getSelectedIndex() * 16, 16, 16);
+        lblPreview.setIcon(new ImageIcon(icon));
     }
 }
\ No newline at end of file
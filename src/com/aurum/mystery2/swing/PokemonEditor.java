@@ -21,6 +21,7 @@ import com.aurum.mystery2.BitConverter;
 import com.aurum.mystery2.Lists;
 import com.aurum.mystery2.game.Pokemon;
 import com.aurum.mystery2.game.RomFile;
+import java.util.List;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
@@ -375,4 +376,9 @@ public class PokemonEditor extends AbstractEditor {
 
     @Override
     protected void warningLabel() {}
+    
+    @Override
+    protected List getRecords() {
+        return RomFile.current.pokemon;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.swing;
+
+import com.aurum.mystery2.game.RomFile;
+import com.aurum.mystery2.randomizer.Randomizer;
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.prefs.Preferences;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingWorker;
+
+/**
+ * Generates a batch of randomized ROM variants from the current ROM.
+ */
+public class RandomizerDialog extends JDialog {
+    private JPropertyPanel properties;
+    private JTextField txtSeed, txtFolder, txtName;
+    private JSpinner spnCount, spnLevelBand, spnMinPrice, spnMaxPrice, spnPowerDelta, spnAccuracyDelta;
+    private JCheckBox chkDungeonPokemon, chkProbabilities, chkStarters, chkAllSpecies, chkPrices, chkMoves;
+    private JButton btnBrowse, btnGenerate;
+    private JLabel lblStatus;
+    
+    public RandomizerDialog(JFrame owner) {
+        super(owner, "Randomizer", false);
+        Randomizer.Profile defaults = new Randomizer.Profile();
+        
+        // Initialize the components
+        txtSeed = new JTextField(Long.toString(System.currentTimeMillis()));
+        spnCount = new JSpinner(new SpinnerNumberModel(8, 1, 999, 1));
+        String lastdir = Preferences.userRoot().get("mystery_lastDir", null);
+        txtFolder = new JTextField(lastdir != null ? new File(lastdir).getParent() : System.getProperty("user.home"));
+        btnBrowse = new JButton("...");
+        btnBrowse.addActionListener((java.awt.event.ActionEvent evt) -> {
+            JFileChooser fc = new JFileChooser(txtFolder.getText());
+            fc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            if (fc.showSaveDialog(this) == JFileChooser.APPROVE_OPTION)
+                txtFolder.setText(fc.getSelectedFile().getPath());
+        });
+        txtName = new JTextField("variant");
+        
+        chkDungeonPokemon = new JCheckBox("Shuffle dungeon pokemon", defaults.shuffleDungeonPokemon);
+        spnLevelBand = new JSpinner(new SpinnerNumberModel(defaults.levelBand, 0, 99, 1));
+        chkProbabilities = new JCheckBox("Shuffle spawn probabilities", defaults.shuffleProbabilities);
+        chkStarters = new JCheckBox("Shuffle starters and partners", defaults.shuffleStarters);
+        chkAllSpecies = new JCheckBox("Pick from all dungeon species", defaults.startersFromAllSpecies);
+        chkPrices = new JCheckBox("Shuffle item prices", defaults.shufflePrices);
+        spnMinPrice = new JSpinner(new SpinnerNumberModel(defaults.minPricePercent, 1, 1000, 5));
+        spnMaxPrice = new JSpinner(new SpinnerNumberModel(defaults.maxPricePercent, 1, 1000, 5));
+        chkMoves = new JCheckBox("Shuffle move stats", defaults.shuffleMoves);
+        spnPowerDelta = new JSpinner(new SpinnerNumberModel(defaults.powerDelta, 0, 255, 1));
+        spnAccuracyDelta = new JSpinner(new SpinnerNumberModel(defaults.accuracyDelta, 0, 100, 1));
+        
+        btnGenerate = new JButton("Generate");
+        btnGenerate.addActionListener((java.awt.event.ActionEvent evt) -> {
+            generate();
+        });
+        lblStatus = new JLabel(" ");
+        
+        properties = new JPropertyPanel();
+        properties.addCaption("Output");
+        properties.addLabeledComponent(new JLabel("Seed"), txtSeed);
+        properties.addLabeledComponent(new JLabel("Variants"), spnCount);
+        properties.addEditor(new JLabel("Folder"), txtFolder, btnBrowse);
+        properties.addLabeledComponent(new JLabel("File name prefix"), txtName);
+        properties.addCaption("Dungeon pokemon");
+        properties.addComponent(chkDungeonPokemon);
+        properties.addLabeledComponent(new JLabel("Level band (+/-)"), spnLevelBand);
+        properties.addComponent(chkProbabilities);
+        properties.addCaption("Starters");
+        properties.addComponent(chkStarters);
+        properties.addComponent(chkAllSpecies);
+        properties.addCaption("Items");
+        properties.addComponent(chkPrices);
+        properties.addLabeledComponent(new JLabel("Min. price (%)"), spnMinPrice);
+        properties.addLabeledComponent(new JLabel("Max. price (%)"), spnMaxPrice);
+        properties.addCaption("Moves");
+        properties.addComponent(chkMoves);
+        properties.addLabeledComponent(new JLabel("Attack points (+/-)"), spnPowerDelta);
+        properties.addLabeledComponent(new JLabel("Accuracy (+/-)"), spnAccuracyDelta);
+        properties.addTerminator();
+        
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.add(btnGenerate);
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.add(lblStatus, BorderLayout.CENTER);
+        bottom.add(buttons, BorderLayout.EAST);
+        
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(properties, BorderLayout.CENTER);
+        getContentPane().add(bottom, BorderLayout.SOUTH);
+        
+        setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+        pack();
+        setLocationRelativeTo(owner);
+    }
+    
+    private Randomizer.Profile getProfile() {
+        Randomizer.Profile profile = new Randomizer.Profile();
+        profile.shuffleDungeonPokemon = chkDungeonPokemon.isSelected();
+        profile.levelBand = (int) spnLevelBand.getValue();
+        profile.shuffleProbabilities = chkProbabilities.isSelected();
+        profile.shuffleStarters = chkStarters.isSelected();
+        profile.startersFromAllSpecies = chkAllSpecies.isSelected();
+        profile.shufflePrices = chkPrices.isSelected();
+        profile.minPricePercent = Math.min((int) spnMinPrice.getValue(), (int) spnMaxPrice.getValue());
+        profile.maxPricePercent = Math.max((int) spnMinPrice.getValue(), (int) spnMaxPrice.getValue());
+        profile.shuffleMoves = chkMoves.isSelected();
+        profile.powerDelta = (int) spnPowerDelta.getValue();
+        profile.accuracyDelta = (int) spnAccuracyDelta.getValue();
+        return profile;
+    }
+    
+    private void generate() {
+        final long seed;
+        try {
+            seed = Long.parseLong(txtSeed.getText().trim());
+        }
+        catch (NumberFormatException ex) {
+            lblStatus.setText("The seed must be a number.");
+            return;
+        }
+        
+        final Randomizer randomizer = new Randomizer(RomFile.current, getProfile());
+        final int count = (int) spnCount.getValue();
+        final File folder = new File(txtFolder.getText());
+        final String name = txtName.getText();
+        final AtomicInteger done = new AtomicInteger();
+        final long start = System.currentTimeMillis();
+        
+        btnGenerate.setEnabled(false);
+        lblStatus.setText("Generating...");
+        new SwingWorker<List<File>, Integer>() {
+            @Override
+            protected List<File> doInBackground() throws IOException {
+                return randomizer.generate(seed, count, folder, name, (int variant) -> {
+                    publish(done.incrementAndGet());
+                });
+            }
+            
+            @Override
+            protected void process(List<Integer> chunks) {
+                lblStatus.setText(chunks.get(chunks.size() - 1) + " of " + count + " variants saved");
+            }
+            
+            @Override
+            protected void done() {
+                btnGenerate.setEnabled(true);
+                try {
+                    lblStatus.setText(get().size() + " variants saved in " + (System.currentTimeMillis() - start) + " ms");
+                }
+                catch (InterruptedException | ExecutionException ex) {
+                    lblStatus.setText("Failed: " + ex.getCause());
+                    System.err.println(ex);
+                }
+            }
+        }.execute();
+    }
+}
\ No newline at end of file
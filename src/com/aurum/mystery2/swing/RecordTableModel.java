@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.swing;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * A table model that exposes the public fields of a list of records as columns.
+ * Cells are read straight from the records. Edits are collected as pending
+ * changes and written back in one batch by {@link #commit()}.
+ * @param <T> the record type
+ */
+public class RecordTableModel<T> extends AbstractTableModel {
+    private final List<T> records;
+    private final List<String> names;
+    private final Field[] fields;
+    private final Map<Integer, Object[]> pending;
+    
+    public RecordTableModel(Class<T> type, List<T> records, List<String> names) {
+        this.records = records;
+        this.names = names;
+        this.pending = new HashMap();
+        
+        this.fields = getFields(type, true);
+    }
+    
+    /**
+     * Returns the public instance fields of a record type that hold a
+     * primitive value and, if requested, a String.
+     * @param type the record type
+     * @param strings {@code true} if String fields should be included
+     * @return the fields in declaration order.
+     */
+    static Field[] getFields(Class<?> type, boolean strings) {
+        List<Field> columns = new ArrayList();
+        for (Field field : type.getFields()) {
+            int mods = field.getModifiers();
+            if (Modifier.isStatic(mods) || Modifier.isFinal(mods))
+                continue;
+            if (field.getType().isPrimitive() || (strings && field.getType() == String.class))
+                columns.add(field);
+        }
+        return columns.toArray(new Field[columns.size()]);
+    }
+    
+    @Override
+    public int getRowCount() {
+        return records.size();
+    }
+    
+    @Override
+    public int getColumnCount() {
+        return fields.length + 1;
+    }
+    
+    @Override
+    public String getColumnName(int col) {
+        return col == 0 ? "Entry" : fields[col - 1].getName();
+    }
+    
+    @Override
+    public Class<?> getColumnClass(int col) {
+        return col == 0 ? String.class : box(fields[col - 1].getType());
+    }
+    
+    @Override
+    public boolean isCellEditable(int row, int col) {
+        // Strings are only referenced by pointers and cannot be edited here
+        return col > 0 && fields[col - 1].getType() != String.class;
+    }
+    
+    @Override
+    public Object getValueAt(int row, int col) {
+        if (col == 0)
+            return row < names.size() ? names.get(row) : Integer.toString(row);
+        
+        Object[] changes = pending.get(row);
+        if (changes != null && changes[col - 1] != null)
+            return changes[col - 1];
+        
+        try {
+            return fields[col - 1].get(records.get(row));
+        }
+        catch (IllegalAccessException ex) {
+            return null;
+        }
+    }
+    
+    @Override
+    public void setValueAt(Object value, int row, int col) {
+        if (!isCellEditable(row, col) || value == null)
+            return;
+        
+        value = convert(value, fields[col - 1].getType());
+        if (value == null)
+            return;
+        
+        Object[] changes = pending.get(row);
+        if (changes == null)
+            pending.put(row, changes = new Object[fields.length]);
+        changes[col - 1] = value;
+        
+        fireTableCellUpdated(row, col);
+    }
+    
+    /**
+     * Returns the number of records with uncommitted changes.
+     * @return the number of changed records.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+    
+    /**
+     * Writes all pending changes into the records and fires a single change
+     * notification. Values that cannot be written stay pending.
+     * @return the number of changed records.
+     * @throws IllegalStateException if some values could not be written.
+     */
+    public int commit() {
+        int count = 0;
+        List<String> errors = new ArrayList();
+        
+        for (Iterator<Map.Entry<Integer, Object[]>> it = pending.entrySet().iterator() ; it.hasNext() ; ) {
+            Map.Entry<Integer, Object[]> change = it.next();
+            T record = records.get(change.getKey());
+            Object[] values = change.getValue();
+            boolean failed = false;
+            
+            for (int i = 0 ; i < fields.length ; i++) {
+                if (values[i] == null)
+                    continue;
+                try {
+                    fields[i].set(record, values[i]);
+                    values[i] = null;
+                }
+                catch (IllegalAccessException | IllegalArgumentException ex) {
+                    errors.add(getValueAt(change.getKey(), 0) + "." + fields[i].getName() + ": " + ex.getMessage());
+                    failed = true;
+                }
+            }
+            count++;
+            if (!failed)
+                it.remove();
+        }
+        
+        fireTableDataChanged();
+        if (!errors.isEmpty())
+            throw new IllegalStateException(String.join("\n", errors));
+        return count;
+    }
+    
+    /**
+     * Drops all pending changes.
+     */
+    public void revert() {
+        pending.clear();
+        fireTableDataChanged();
+    }
+    
+    private static Class<?> box(Class<?> type) {
+        if (type == boolean.class) return Boolean.class;
+        if (type == byte.class) return Byte.class;
+        if (type == short.class) return Short.class;
+        if (type == int.class) return Integer.class;
+        if (type == long.class) return Long.class;
+        if (type == float.class) return Float.class;
+        if (type == double.class) return Double.class;
+        if (type == char.class) return Character.class;
+        return type;
+    }
+    
+    static Object convert(Object value, Class<?> type) {
+        if (type == boolean.class)
+            return value instanceof Boolean ? value : Boolean.valueOf(value.toString());
+        if (!(value instanceof Number)) {
+            try {
+                value = Long.decode(value.toString().trim());
+            }
+            catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+        
+        Number n = (Number) value;
+        if (type == byte.class) return n.byteValue();
+        if (type == short.class) return n.shortValue();
+        if (type == int.class) return n.intValue();
+        if (type == long.class) return n.longValue();
+        if (type == float.class) return n.floatValue();
+        if (type == double.class) return n.doubleValue();
+        return null;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.swing;
+
+import com.aurum.mystery2.Lists;
+import com.aurum.mystery2.Main;
+import com.aurum.mystery2.analysis.RecruitmentEngine;
+import com.aurum.mystery2.game.Dungeon;
+import com.aurum.mystery2.game.DungeonPokemon;
+import com.aurum.mystery2.game.RomFile;
+import java.awt.BorderLayout;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.prefs.Preferences;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTable;
+import javax.swing.JToolBar;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.table.DefaultTableModel;
+
+public class RecruitmentFrame extends JFrame {
+    private static final String[] COLUMNS = { "Species", "Recruit rate", "Recruit %", "Floors", "Best floor %", "Expected floors" };
+    
+    private final RecruitmentEngine engine;
+    private final List<Integer> dungeons = new ArrayList();
+    
+    private JToolBar toolbar;
+    private JComboBox<String> cmoDungeon;
+    private JSpinner spnLevel;
+    private JCheckBox chkFriendBow;
+    private JButton btnExportSummary, btnExportChances;
+    private JTable table;
+    private DefaultTableModel tableModel;
+    
+    public RecruitmentFrame() {
+        engine = new RecruitmentEngine(RomFile.current);
+        
+        setTitle("Recruitment table");
+        setIconImage(Main.icon);
+        setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+        
+        // Initialize the components
+        cmoDungeon = new JComboBox();
+        for (int i = 0 ; i < RomFile.current.dungeons.size() ; i++) {
+            if (RomFile.current.dungeons.get(i).floors.isEmpty())
+                continue;
+            dungeons.add(i);
+            cmoDungeon.addItem(Lists.dungeons.get(i));
+        }
+        cmoDungeon.addActionListener((java.awt.event.ActionEvent evt) -> {
+            refresh();
+        });
+        spnLevel = new JSpinner(new SpinnerNumberModel(5, 1, RecruitmentEngine.MAX_LEVEL, 1));
+        spnLevel.addChangeListener((javax.swing.event.ChangeEvent evt) -> {
+            refresh();
+        });
+        chkFriendBow = new JCheckBox("Has Friend Bow");
+        chkFriendBow.addActionListener((java.awt.event.ActionEvent evt) -> {
+            refresh();
+        });
+        btnExportSummary = new JButton("Export summary");
+        btnExportSummary.setToolTipText("Exports the expected floors of every species in every dungeon at the current level");
+        btnExportSummary.addActionListener((java.awt.event.ActionEvent evt) -> {
+            export(true);
+        });
+        btnExportChances = new JButton("Export chances");
+        btnExportChances.setToolTipText("Exports the recruitment chance of every floor entry at every player level");
+        btnExportChances.addActionListener((java.awt.event.ActionEvent evt) -> {
+            export(false);
+        });
+        tableModel = new DefaultTableModel(COLUMNS, 0) {
+            @Override
+            public boolean isCellEditable(int row, int col) {
+                return false;
+            }
+            
+            @Override
+            public Class<?> getColumnClass(int col) {
+                return col == 0 ? String.class : col == 1 || col == 3 ? Integer.class : Double.class;
+            }
+        };
+        table = new JTable(tableModel);
+        table.setAutoCreateRowSorter(true);
+        
+        toolbar = new JToolBar();
+        toolbar.setFloatable(false);
+        toolbar.setRollover(true);
+        toolbar.add(cmoDungeon);
+        toolbar.addSeparator();
+        toolbar.add(new JLabel("Player level "));
+        toolbar.add(spnLevel);
+        toolbar.add(chkFriendBow);
+        toolbar.addSeparator();
+        toolbar.add(btnExportSummary);
+        toolbar.add(btnExportChances);
+        
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(toolbar, BorderLayout.NORTH);
+        getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+        
+        setSize(800, 600);
+        setLocationRelativeTo(null);
+        refresh();
+    }
+    
+    private void refresh() {
+        tableModel.setRowCount(0);
+        if (cmoDungeon.getSelectedIndex() < 0)
+            return;
+        
+        Dungeon dungeon = RomFile.current.dungeons.get(dungeons.get(cmoDungeon.getSelectedIndex()));
+        int level = (int) spnLevel.getValue();
+        boolean friendBow = chkFriendBow.isSelected();
+        for (RecruitmentEngine.Summary summary : engine.summarize(dungeon, level, friendBow)) {
+            int recruit = engine.getRecruitRate(summary.species);
+            tableModel.addRow(new Object[] {
+                Lists.pokemon.get(summary.species), recruit,
+                (double) RecruitmentEngine.getChance(recruit, level, friendBow),
+                summary.floors, round(summary.bestFloorChance * 100), round(summary.expectedFloors)
+            });
+        }
+    }
+    
+    private void export(boolean summary) {
+        final JFileChooser fc = new JFileChooser() {{
+            setDialogTitle(summary ? "Export recruitment summary" : "Export recruitment chances");
+            setFileFilter(new FileNameExtensionFilter("CSV files (*.csv)", ".csv", "csv"));
+        }};
+        
+        String lastdir = Preferences.userRoot().get("mystery_lastDir", null);
+        if (lastdir != null)
+            fc.setCurrentDirectory(new File(lastdir).getParentFile());
+        if (fc.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        File file = fc.getSelectedFile();
+        if (!file.getName().contains("."))
+            file = new File(file.getPath() + ".csv");
+        
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            if (summary)
+                writeSummary(out, (int) spnLevel.getValue(), chkFriendBow.isSelected());
+            else
+                writeChances(out);
+        }
+        catch (IOException ex) {
+            System.err.println(ex);
+        }
+    }
+    
+    private void writeSummary(PrintWriter out, int level, boolean friendBow) {
+        out.println("Dungeon,Species,Recruit rate,Recruit %,Floors,Best floor %,Expected floors");
+        for (int index : dungeons) {
+            for (RecruitmentEngine.Summary summary : engine.summarize(RomFile.current.dungeons.get(index), level, friendBow)) {
+                int recruit = engine.getRecruitRate(summary.species);
+                out.println(csv(Lists.dungeons.get(index)) + ',' + csv(Lists.pokemon.get(summary.species)) + ',' + recruit + ','
+                        + RecruitmentEngine.getChance(recruit, level, friendBow) + ',' + summary.floors + ','
+                        + round(summary.bestFloorChance * 100) + ',' + round(summary.expectedFloors));
+            }
+        }
+    }
+    
+    private void writeChances(PrintWriter out) {
+        StringBuilder sb = new StringBuilder("Dungeon,Floor,Species,Level,Spawn %,Friend Bow");
+        for (int level = 1 ; level <= RecruitmentEngine.MAX_LEVEL ; level++)
+            sb.append(",Lv. ").append(level);
+        out.println(sb);
+        
+        for (int index : dungeons) {
+            Dungeon dungeon = RomFile.current.dungeons.get(index);
+            for (int f = 1 ; f < dungeon.floors.size() ; f++) {
+                int table = dungeon.floors.get(f).pokemon;
+                if (table >= RomFile.current.dungeonPokemon.size())
+                    continue;
+                List<DungeonPokemon.Entry> entries = RomFile.current.dungeonPokemon.get(table).entries;
+                
+                for (int bow = 0 ; bow < 2 ; bow++) {
+                    float[] chances = engine.evaluate(entries, bow == 1);
+                    for (int e = 0 ; e < entries.size() ; e++) {
+                        DungeonPokemon.Entry entry = entries.get(e);
+                        sb.setLength(0);
+                        sb.append(csv(Lists.dungeons.get(index))).append(',').append(f).append(',').append(csv(Lists.pokemon.get(entry.species)));
+                        sb.append(',').append(entry.level).append(',').append(entry.probability / 100.0).append(',').append(bow == 1);
+                        for (int level = 0 ; level < RecruitmentEngine.MAX_LEVEL ; level++)
+                            sb.append(',').append(chances[e * RecruitmentEngine.MAX_LEVEL + level]);
+                        out.println(sb);
+                    }
+                }
+            }
+        }
+    }
+    
+    private static String csv(String value) {
+        return value.contains(",") || value.contains("\"") ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+    
+    private static double round(double value) {
+        return Double.isInfinite(value) ? value : Math.round(value * 1000) / 1000.0;
+    }
+}
\ No newline at end of file
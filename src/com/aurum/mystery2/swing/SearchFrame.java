@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.aurum.mystery2.swing;
+
+import com.aurum.mystery2.Main;
+import com.aurum.mystery2.game.RomFile;
+import com.aurum.mystery2.search.Pattern;
+import com.aurum.mystery2.search.RomSearch;
+import java.awt.BorderLayout;
+import java.awt.Font;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTable;
+import javax.swing.JTextArea;
+import javax.swing.JToolBar;
+import javax.swing.SwingWorker;
+import javax.swing.table.DefaultTableModel;
+
+public class SearchFrame extends JFrame {
+    private static final String[] COLUMNS = { "Offset", "Pattern" };
+    private static final int MAX_RESULTS = 100000;
+    
+    private JToolBar toolbar;
+    private JTextArea txtPatterns;
+    private JButton btnSearch, btnCancel;
+    private JTable table;
+    private DefaultTableModel tableModel;
+    private JLabel lblStatus;
+    private SwingWorker<Integer, Object[]> worker;
+    private RomSearch search;
+    
+    public SearchFrame() {
+        setTitle("Search ROM");
+        setIconImage(Main.icon);
+        setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+        
+        // Initialize the components
+        txtPatterns = new JTextArea(5, 40);
+        txtPatterns.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        txtPatterns.setToolTipText("One pattern per line: hex bytes with ?? wildcards, or hex:, u8:, u16:, u32:, ptr: or text: followed by a value");
+        btnSearch = new JButton("Search");
+        btnSearch.addActionListener((java.awt.event.ActionEvent evt) -> {
+            run();
+        });
+        btnCancel = new JButton("Cancel");
+        btnCancel.setEnabled(false);
+        btnCancel.addActionListener((java.awt.event.ActionEvent evt) -> {
+            if (search != null)
+                search.cancel();
+        });
+        tableModel = new DefaultTableModel(COLUMNS, 0) {
+            @Override
+            public boolean isCellEditable(int row, int col) {
+                return false;
+            }
+        };
+        table = new JTable(tableModel);
+        table.setAutoCreateRowSorter(true);
+        table.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        table.setToolTipText("Double-click a match to show it in the hex viewer");
+        table.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent evt) {
+                int row = table.getSelectedRow();
+                if (evt.getClickCount() == 2 && row >= 0)
+                    HexFrame.open(Integer.decode((String) table.getValueAt(row, 0)));
+            }
+        });
+        lblStatus = new JLabel("One pattern per line, e.g. \"10 27 ?? 00\", \"u16: 10000\", \"ptr: 0x357B88\" or \"text: Pikachu\"");
+        
+        toolbar = new JToolBar();
+        toolbar.setFloatable(false);
+        toolbar.setRollover(true);
+        toolbar.add(btnSearch);
+        toolbar.add(btnCancel);
+        
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(txtPatterns), new JScrollPane(table));
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(toolbar, BorderLayout.NORTH);
+        getContentPane().add(split, BorderLayout.CENTER);
+        getContentPane().add(lblStatus, BorderLayout.SOUTH);
+        
+        setSize(560, 600);
+        setLocationRelativeTo(null);
+    }
+    
+    @Override
+    public void dispose() {
+        if (search != null)
+            search.cancel();
+        super.dispose();
+    }
+    
+    private void run() {
+        final List<Pattern> patterns = new ArrayList();
+        for (String line : txtPatterns.getText().split("\n")) {
+            if (line.trim().isEmpty())
+                continue;
+            try {
+                patterns.add(Pattern.parse(line, RomFile.current.getBuffer().getTextCodec()));
+            }
+            catch (IllegalArgumentException ex) {
+                lblStatus.setText("Invalid pattern \"" + line.trim() + "\": " + ex.getMessage());
+                return;
+            }
+        }
+        if (patterns.isEmpty())
+            return;
+        
+        final long started = System.currentTimeMillis();
+        tableModel.setRowCount(0);
+        btnSearch.setEnabled(false);
+        btnCancel.setEnabled(true);
+        lblStatus.setText("Searching...");
+        search = new RomSearch();
+        search.setLimit(MAX_RESULTS);
+        
+        // Matches are shown chunk by chunk while the search runs
+        final RomSearch current = search;
+        worker = new SwingWorker<Integer, Object[]>() {
+            @Override
+            protected Integer doInBackground() {
+                return current.search(RomFile.current.getBuffer(), patterns, (Pattern pattern, int[] offsets) -> {
+                    for (int offset : offsets)
+                        publish(new Object[] { String.format("0x%08X", offset), pattern.name });
+                });
+            }
+            
+            @Override
+            protected void process(List<Object[]> rows) {
+                for (Object[] row : rows) {
+                    if (tableModel.getRowCount() >= MAX_RESULTS) {
+                        current.cancel();
+                        break;
+                    }
+                    tableModel.addRow(row);
+                }
+            }
+            
+            @Override
+            protected void done() {
+                btnSearch.setEnabled(true);
+                btnCancel.setEnabled(false);
+                try {
+                    lblStatus.setText(get() + " match(es) in " + (System.currentTimeMillis() - started) + " ms" + (tableModel.getRowCount() >= MAX_RESULTS ? ", only the first " + MAX_RESULTS + " are shown" : ""));
+                }
+                catch (Exception ex) {
+                    lblStatus.setText(ex.toString());
+                    System.err.println(ex);
+                }
+            }
+        };
+        worker.execute();
+    }
+}
\ No newline at end of file
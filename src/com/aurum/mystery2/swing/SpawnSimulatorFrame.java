@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.swing;
+
+import com.aurum.mystery2.Lists;
+import com.aurum.mystery2.Main;
+import com.aurum.mystery2.analysis.SpawnSimulator;
+import com.aurum.mystery2.game.DungeonPokemon;
+import com.aurum.mystery2.game.DungeonTraps;
+import com.aurum.mystery2.game.RomFile;
+import java.awt.BorderLayout;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.JToolBar;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingWorker;
+import javax.swing.table.DefaultTableModel;
+
+public class SpawnSimulatorFrame extends JFrame {
+    private static final String[] COLUMNS = { "Floor", "Kind", "Name", "Level", "Spawns", "Per floor", "Observed %", "Table %" };
+    
+    private JToolBar toolbar;
+    private JComboBox<String> cmoDungeon;
+    private JSpinner spnSamples;
+    private JTextField txtSeed;
+    private JButton btnRun;
+    private JTable table;
+    private DefaultTableModel tableModel;
+    private JLabel lblStatus;
+    private SwingWorker<List<SpawnSimulator.FloorResult>, Void> worker;
+    private final List<Integer> dungeons = new ArrayList();
+    
+    public SpawnSimulatorFrame() {
+        setTitle("Spawn simulator");
+        setIconImage(Main.icon);
+        setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+        
+        // Initialize the components
+        cmoDungeon = new JComboBox();
+        for (int i = 0 ; i < RomFile.current.dungeons.size() ; i++) {
+            if (RomFile.current.dungeons.get(i).floors.isEmpty())
+                continue;
+            dungeons.add(i);
+            cmoDungeon.addItem(Lists.dungeons.get(i));
+        }
+        spnSamples = new JSpinner(new SpinnerNumberModel(100000, 1, 10000000, 10000));
+        txtSeed = new JTextField("0", 10);
+        txtSeed.setMaximumSize(txtSeed.getPreferredSize());
+        btnRun = new JButton("Run");
+        btnRun.addActionListener((java.awt.event.ActionEvent evt) -> {
+            run();
+        });
+        tableModel = new DefaultTableModel(COLUMNS, 0) {
+            @Override
+            public boolean isCellEditable(int row, int col) {
+                return false;
+            }
+            
+            @Override
+            public Class<?> getColumnClass(int col) {
+                return col == 1 || col == 2 ? String.class : col == 4 ? Long.class : col < 4 ? Integer.class : Double.class;
+            }
+        };
+        table = new JTable(tableModel);
+        table.setAutoCreateRowSorter(true);
+        lblStatus = new JLabel(" ");
+        
+        toolbar = new JToolBar();
+        toolbar.setFloatable(false);
+        toolbar.setRollover(true);
+        toolbar.add(cmoDungeon);
+        toolbar.addSeparator();
+        toolbar.add(new JLabel("Floors per entry "));
+        toolbar.add(spnSamples);
+        toolbar.addSeparator();
+        toolbar.add(new JLabel("Seed "));
+        toolbar.add(txtSeed);
+        toolbar.addSeparator();
+        toolbar.add(btnRun);
+        
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(toolbar, BorderLayout.NORTH);
+        getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+        getContentPane().add(lblStatus, BorderLayout.SOUTH);
+        
+        setSize(800, 600);
+        setLocationRelativeTo(null);
+    }
+    
+    @Override
+    public void dispose() {
+        if (worker != null)
+            worker.cancel(true);
+        super.dispose();
+    }
+    
+    private void run() {
+        long seed;
+        try {
+            seed = Long.parseLong(txtSeed.getText().trim());
+        }
+        catch (NumberFormatException ex) {
+            lblStatus.setText("Invalid seed: " + txtSeed.getText());
+            return;
+        }
+        
+        final int dungeon = dungeons.get(cmoDungeon.getSelectedIndex());
+        final int samples = (int) spnSamples.getValue();
+        final long started = System.currentTimeMillis();
+        btnRun.setEnabled(false);
+        lblStatus.setText("Simulating...");
+        
+        worker = new SwingWorker<List<SpawnSimulator.FloorResult>, Void>() {
+            @Override
+            protected List<SpawnSimulator.FloorResult> doInBackground() throws Exception {
+                return new SpawnSimulator(RomFile.current).simulate(RomFile.current.dungeons.get(dungeon), samples, seed);
+            }
+            
+            @Override
+            protected void done() {
+                btnRun.setEnabled(true);
+                if (isCancelled())
+                    return;
+                try {
+                    List<SpawnSimulator.FloorResult> results = get();
+                    show(results);
+                    
+                    long spawns = 0;
+                    for (SpawnSimulator.FloorResult result : results)
+                        spawns += result.pokemonSpawns + result.trapSpawns;
+                    lblStatus.setText(spawns + " spawns on " + results.size() + " floor(s) in " + (System.currentTimeMillis() - started) + " ms");
+                }
+                catch (Exception ex) {
+                    lblStatus.setText(ex.toString());
+                    System.err.println(ex);
+                }
+            }
+        };
+        worker.execute();
+    }
+    
+    private void show(List<SpawnSimulator.FloorResult> results) {
+        tableModel.setRowCount(0);
+        for (SpawnSimulator.FloorResult result : results) {
+            for (int i = 0 ; i < result.entryCounts.length ; i++) {
+                DungeonPokemon.Entry entry = result.pokemon.entries.get(i);
+                if (entry.probability == 0 && result.entryCounts[i] == 0)
+                    continue;
+                tableModel.addRow(row(result, "Pokémon", Lists.pokemon.get(entry.species), entry.level, result.entryCounts[i], result.pokemonSpawns, entry.probability));
+            }
+            for (int i = 0 ; i < result.trapCounts.length ; i++) {
+                if (result.traps.traps[i] == 0 && result.trapCounts[i] == 0)
+                    continue;
+                tableModel.addRow(row(result, "Trap", DungeonTraps.NAMES[i], 0, result.trapCounts[i], result.trapSpawns, result.traps.traps[i]));
+            }
+        }
+    }
+    
+    private static Object[] row(SpawnSimulator.FloorResult result, String kind, String name, int level, long count, long total, int probability) {
+        return new Object[] {
+            result.floor, kind, name, level, count,
+            round(count / (double) result.samples),
+            round(total > 0 ? count * 100.0 / total : 0),
+            round(probability / 100.0)
+        };
+    }
+    
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
\ No newline at end of file
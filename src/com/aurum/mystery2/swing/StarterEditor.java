@@ -141,6 +141,7 @@ public class StarterEditor extends javax.swing.JFrame {
 
         btnSave = new javax.swing.JButton();
         btnLoad = new javax.swing.JButton();
+        btnOptimize = new javax.swing.JButton();
         jPanel1 = new javax.swing.JPanel();
         lblMale = new javax.swing.JLabel();
         lblFemale = new javax.swing.JLabel();
@@ -214,6 +215,13 @@ public class StarterEditor extends javax.swing.JFrame {
             }
         });
 
+        btnOptimize.setText("Suggest pairs...");
+        btnOptimize.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                btnOptimizeActionPerformed(evt);
+            }
+        });
+
         jPanel1.setBorder(javax.swing.BorderFactory.createTitledBorder("Starters"));
 
         lblMale.setText("Male");
@@ -449,7 +457,9 @@ public class StarterEditor extends javax.swing.JFrame {
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(btnSave, javax.swing.GroupLayout.PREFERRED_SIZE, 100, javax.swing.GroupLayout.PREFERRED_SIZE)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                        .addComponent(btnLoad, javax.swing.GroupLayout.PREFERRED_SIZE, 100, javax.swing.GroupLayout.PREFERRED_SIZE))
+                        .addComponent(btnLoad, javax.swing.GroupLayout.PREFERRED_SIZE, 100, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(btnOptimize))
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(jPanel1, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
@@ -466,7 +476,8 @@ public class StarterEditor extends javax.swing.JFrame {
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(btnSave)
-                    .addComponent(btnLoad))
+                    .addComponent(btnLoad)
+                    .addComponent(btnOptimize))
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
 
@@ -482,10 +493,19 @@ public class StarterEditor extends javax.swing.JFrame {
         load();
     }//GEN-LAST:event_btnLoadActionPerformed
 
+    private void btnOptimizeActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnOptimizeActionPerformed
+        if (RomFile.current.pokemon == null)
+            RomFile.current.loadPokemon();
+        if (RomFile.current.dungeons == null)
+            RomFile.current.loadDungeons();
+        new TeamOptimizerDialog(this).setVisible(true);
+    }//GEN-LAST:event_btnOptimizeActionPerformed
+
     private int[] partners, starters;
     
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton btnLoad;
+    private javax.swing.JButton btnOptimize;
     private javax.swing.JButton btnSave;
     private javax.swing.JComboBox<String> cmoMon1;
     private javax.swing.JComboBox<String> cmoMon10;
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.swing;
+
+import com.aurum.mystery2.Main;
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.JToolBar;
+import javax.swing.RowFilter;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.TableRowSorter;
+
+public class TableEditor extends JFrame {
+    // Static fields
+    private static final Map<String, TableEditor> editors = new HashMap();
+    
+    // Fields
+    private final RecordTableModel model;
+    private final TableRowSorter<RecordTableModel> sorter;
+    
+    private JTable table;
+    private JToolBar toolbar;
+    private JButton btnApply, btnRevert, btnFill;
+    private JTextField txtFilter;
+    private JLabel lblStatus;
+    
+    public TableEditor(String title, RecordTableModel model) {
+        this.model = model;
+        this.sorter = new TableRowSorter(model);
+        
+        setTitle(title);
+        setIconImage(Main.icon);
+        setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+        
+        // Initialize the components
+        table = new JTable(model);
+        table.setRowSorter(sorter);
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        table.setCellSelectionEnabled(true);
+        table.setFillsViewportHeight(true);
+        table.getColumnModel().getColumn(0).setPreferredWidth(140);
+        model.addTableModelListener((javax.swing.event.TableModelEvent evt) -> {
+            updateStatus();
+        });
+        
+        btnApply = new JButton("Apply changes");
+        btnApply.addActionListener((java.awt.event.ActionEvent evt) -> {
+            if (table.isEditing())
+                table.getCellEditor().stopCellEditing();
+            try {
+                model.commit();
+            }
+            catch (IllegalStateException ex) {
+                JOptionPane.showMessageDialog(this, ex.getMessage(), getTitle(), JOptionPane.ERROR_MESSAGE);
+            }
+            AbstractEditor.fireChanged();
+        });
+        btnRevert = new JButton("Revert");
+        btnRevert.addActionListener((java.awt.event.ActionEvent evt) -> {
+            if (table.isEditing())
+                table.getCellEditor().cancelCellEditing();
+            model.revert();
+        });
+        btnFill = new JButton("Fill selection");
+        btnFill.setToolTipText("Copies the value of the focused cell to all selected cells in its column");
+        btnFill.addActionListener((java.awt.event.ActionEvent evt) -> {
+            fillSelection();
+        });
+        txtFilter = new JTextField(16);
+        txtFilter.setMaximumSize(txtFilter.getPreferredSize());
+        txtFilter.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent evt) { updateFilter(); }
+            @Override
+            public void removeUpdate(DocumentEvent evt) { updateFilter(); }
+            @Override
+            public void changedUpdate(DocumentEvent evt) { updateFilter(); }
+        });
+        lblStatus = new JLabel(" ");
+        
+        toolbar = new JToolBar();
+        toolbar.setFloatable(false);
+        toolbar.setRollover(true);
+        toolbar.add(btnApply);
+        toolbar.add(btnRevert);
+        toolbar.add(btnFill);
+        toolbar.addSeparator();
+        toolbar.add(new JLabel("Filter "));
+        toolbar.add(txtFilter);
+        
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(toolbar, BorderLayout.NORTH);
+        getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+        getContentPane().add(lblStatus, BorderLayout.SOUTH);
+        
+        setSize(new Dimension(900, 600));
+        setLocationRelativeTo(null);
+    }
+    
+    /**
+     * Shows the table editor with the given title, creating it if none is
+     * open. The editor is closed together with the other editors when the
+     * current ROM is replaced.
+     * @param title the title, which identifies the table
+     * @param factory creates the model if no editor is open yet
+     * @return the table editor.
+     */
+    public static TableEditor open(String title, Supplier<RecordTableModel> factory) {
+        TableEditor editor = editors.get(title);
+        if (editor == null || !editor.isDisplayable()) {
+            editor = AbstractEditor.track(new TableEditor(title, factory.get()));
+            editors.put(title, editor);
+        }
+        editor.setVisible(true);
+        editor.toFront();
+        return editor;
+    }
+    
+    private void fillSelection() {
+        int leadRow = table.getSelectionModel().getLeadSelectionIndex();
+        int leadCol = table.getColumnModel().getSelectionModel().getLeadSelectionIndex();
+        if (leadRow < 0 || leadCol < 0)
+            return;
+        if (table.isEditing())
+            table.getCellEditor().stopCellEditing();
+        
+        Object value = table.getValueAt(leadRow, leadCol);
+        int col = table.convertColumnIndexToModel(leadCol);
+        for (int row : table.getSelectedRows())
+            model.setValueAt(value, table.convertRowIndexToModel(row), col);
+    }
+    
+    private void updateFilter() {
+        String text = txtFilter.getText().trim();
+        sorter.setRowFilter(text.isEmpty() ? null : RowFilter.regexFilter("(?i)" + Pattern.quote(text), 0));
+    }
+    
+    private void updateStatus() {
+        int pending = model.getPendingCount();
+        lblStatus.setText(pending > 0 ? pending + " record(s) with uncommitted changes" : " ");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 - 2017 Aurum
+ *
+ * Mystery is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Mystery is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.aurum.mystery2.swing;
+
+import com.aurum.mystery2.Lists;
+import com.aurum.mystery2.analysis.TeamOptimizer;
+import com.aurum.mystery2.game.RomFile;
+import java.awt.BorderLayout;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTable;
+import javax.swing.JToolBar;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * Lists the starter and partner pairs with the best type matchup against the
+ * spawns of the first dungeons.
+ */
+public class TeamOptimizerDialog extends JDialog {
+    private static final String[] COLUMNS = { "Starter", "Partner", "Score", "Covered", "Shared weaknesses" };
+    private static final String[] CANDIDATES = { "Current starters and partners", "All species" };
+    
+    private JSpinner spnDungeons, spnCount;
+    private JComboBox<String> cmoCandidates;
+    private JButton btnSearch;
+    private JTable table;
+    private DefaultTableModel tableModel;
+    private JLabel lblStatus;
+    
+    public TeamOptimizerDialog(JFrame owner) {
+        super(owner, "Suggest starter pairs", false);
+        
+        // Initialize the components
+        spnDungeons = new JSpinner(new SpinnerNumberModel(4, 1, 64, 1));
+        spnDungeons.setToolTipText("The number of dungeons to consider, in ROM order");
+        spnCount = new JSpinner(new SpinnerNumberModel(20, 1, 1000, 10));
+        cmoCandidates = new JComboBox(CANDIDATES);
+        btnSearch = new JButton("Search");
+        btnSearch.addActionListener((java.awt.event.ActionEvent evt) -> {
+            search();
+        });
+        tableModel = new DefaultTableModel(COLUMNS, 0) {
+            @Override
+            public boolean isCellEditable(int row, int col) {
+                return false;
+            }
+            
+            @Override
+            public Class<?> getColumnClass(int col) {
+                return col < 2 ? String.class : Integer.class;
+            }
+        };
+        table = new JTable(tableModel);
+        table.setAutoCreateRowSorter(true);
+        lblStatus = new JLabel(" ");
+        
+        JToolBar toolbar = new JToolBar();
+        toolbar.setFloatable(false);
+        toolbar.setRollover(true);
+        toolbar.add(new JLabel("Dungeons "));
+        toolbar.add(spnDungeons);
+        toolbar.addSeparator();
+        toolbar.add(cmoCandidates);
+        toolbar.addSeparator();
+        toolbar.add(new JLabel("Top "));
+        toolbar.add(spnCount);
+        toolbar.addSeparator();
+        toolbar.add(btnSearch);
+        
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(toolbar, BorderLayout.NORTH);
+        getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+        getContentPane().add(lblStatus, BorderLayout.SOUTH);
+        
+        setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+        setSize(640, 480);
+        setLocationRelativeTo(owner);
+    }
+    
+    private void search() {
+        long start = System.currentTimeMillis();
+        RomFile rom = RomFile.current;
+        int[] dungeons = IntStream.range(0, Math.min((int) spnDungeons.getValue(), rom.dungeons.size())).toArray();
+        TeamOptimizer optimizer = new TeamOptimizer(rom, dungeons);
+        
+        int[] starters, partners;
+        if (cmoCandidates.getSelectedIndex() == 0) {
+            starters = valid(Arrays.stream(rom.starters));
+            partners = valid(Arrays.stream(rom.partners));
+        }
+        else
+            starters = partners = valid(IntStream.range(0, rom.pokemon.size()));
+        
+        List<TeamOptimizer.Pair> pairs = optimizer.search(starters, partners, (int) spnCount.getValue());
+        tableModel.setRowCount(0);
+        for (TeamOptimizer.Pair pair : pairs)
+            tableModel.addRow(new Object[] { Lists.pokemon.get(pair.starter), Lists.pokemon.get(pair.partner), pair.score, pair.covered, pair.shared });
+        
+        lblStatus.setText(optimizer.getEnemyCount() + " enemy species, " + starters.length + " x " + partners.length + " candidates, " + (System.currentTimeMillis() - start) + " ms");
+    }
+    
+    private static int[] valid(IntStream species) {
+        // Skip the placeholder entries that have no type
+        return species.distinct().filter((int s) -> s > 0 && s < RomFile.current.pokemon.size() && RomFile.current.pokemon.get(s).type1 != 0).toArray();
+    }
+}
\ No newline at end of file